@@ -0,0 +1,50 @@
+package com.project.authetification.config;
+
+import com.azure.core.credential.TokenCredential;
+import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.azure.monitor.query.MetricsQueryClientBuilder;
+import com.project.authetification.service.AzureMetricsClient;
+import com.project.authetification.service.BatchAzureMetricsClient;
+import com.project.authetification.service.SdkAzureMetricsClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+@Configuration
+public class AzureMonitorConfig {
+
+    /**
+     * Identité Azure (identité managée du Pod ou variables d'env)
+     */
+    @Bean
+    public TokenCredential azureCredential() {
+        return new DefaultAzureCredentialBuilder().build();
+    }
+
+    /**
+     * Mode "single" (défaut) : un appel SDK par VM
+     */
+    @Bean
+    @ConditionalOnProperty(name = "monitoring.azure.query-mode", havingValue = "single", matchIfMissing = true)
+    public AzureMetricsClient sdkAzureMetricsClient(TokenCredential azureCredential) {
+        return new SdkAzureMetricsClient(new MetricsQueryClientBuilder()
+                .credential(azureCredential)
+                .buildClient());
+    }
+
+    /**
+     * Mode "batch" : un appel metrics:getBatch pour plusieurs VMs
+     */
+    @Bean
+    @ConditionalOnProperty(name = "monitoring.azure.query-mode", havingValue = "batch")
+    public AzureMetricsClient batchAzureMetricsClient(
+            RestTemplate restTemplate,
+            TokenCredential azureCredential,
+            @Value("${monitoring.azure.batch.endpoint:https://{region}.metrics.monitor.azure.com}") String endpoint,
+            @Value("${monitoring.azure.batch.auth-enabled:true}") boolean authEnabled,
+            @Value("${monitoring.azure.batch.lookback-minutes:15}") int lookbackMinutes) {
+        return new BatchAzureMetricsClient(restTemplate, authEnabled ? azureCredential : null, endpoint, lookbackMinutes);
+    }
+}
@@ -0,0 +1,35 @@
+package com.project.authetification.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    /**
+     * Scheduler des tâches @Scheduled (collecte, jobs de maintenance...)
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(4);
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * Executor de la collecte des métriques : un thread virtuel par requête Azure.
+     * La concurrence est bornée par MetricsCollector, pas par l'executor.
+     */
+    @Bean(name = "metricsCollectorExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService metricsCollectorExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("metrics-collector-", 0).factory());
+    }
+}
@@ -1,6 +1,7 @@
 package com.project.authetification.config;
 
 import com.project.authetification.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Bean;
@@ -59,6 +60,8 @@ public class SecurityConfig {
 
                 // 4) Autorisations
                 .authorizeHttpRequests(auth -> auth
+                        // Redispatch des réponses asynchrones (SSE, exports en flux) : déjà autorisées
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // Prometheus endpoint ouvert pour monitoring
                         .requestMatchers("/actuator/prometheus").permitAll()
                         // Endpoints publics pour la santé et info
@@ -138,7 +141,7 @@ public class SecurityConfig {
         config.setAllowedMethods(Arrays.asList(
             "GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "HEAD"
         ));
-        config.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        config.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Next-Cursor", "X-Metrics-Resolution"));
         config.setMaxAge(3600L);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
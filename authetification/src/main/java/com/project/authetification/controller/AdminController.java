@@ -1,7 +1,11 @@
 package com.project.authetification.controller;
 
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.AlertRule;
+import com.project.authetification.model.CursorPage;
 import com.project.authetification.model.Demande;
 import com.project.authetification.model.GovernanceRule;
+import com.project.authetification.model.ResourcePool;
 import com.project.authetification.model.MonitoringMetrics;
 import com.project.authetification.model.User;
 import com.project.authetification.model.VM;
@@ -31,6 +35,15 @@ public class AdminController {
         return null;
     }
 
+    // Le curseur de la page suivante est renvoyé dans l'en-tête X-Next-Cursor
+    private static <T> ResponseEntity<List<T>> withNextCursor(CursorPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
     /**
      * Récupère les statistiques du tableau de bord
      */
@@ -104,6 +117,131 @@ public class AdminController {
         }
     }
 
+    /**
+     * Benchmark des règles de gouvernance : évaluations par seconde (règles actives,
+     * ou rules règles synthétiques)
+     */
+    @PostMapping("/governance-rules/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkGovernanceRules(
+            @RequestParam(defaultValue = "1000000") int evaluations,
+            @RequestParam(defaultValue = "0") int rules) {
+        if (evaluations <= 0 || evaluations > 100_000_000 || rules < 0 || rules > 10_000) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(adminService.benchmarkGovernanceRules(evaluations, rules));
+    }
+
+    /**
+     * Migration des quantités normalisées (vcpu, ramMib, disqueGib) des demandes et VMs
+     */
+    @PostMapping("/resources/backfill")
+    public ResponseEntity<Map<String, Object>> backfillResourceQuantities(
+            @RequestParam(defaultValue = "false") boolean force) {
+        return ResponseEntity.ok(adminService.backfillResourceQuantities(force));
+    }
+
+    /**
+     * Récupère les pools de ressources
+     */
+    @GetMapping("/resource-pools")
+    public ResponseEntity<List<ResourcePool>> getAllResourcePools() {
+        return ResponseEntity.ok(adminService.getAllResourcePools());
+    }
+
+    /**
+     * Utilisation des ressources réservées par les demandes validées
+     */
+    @GetMapping("/resource-pools/usage")
+    public ResponseEntity<List<Map<String, Object>>> getResourceUsage() {
+        return ResponseEntity.ok(adminService.getResourceUsage());
+    }
+
+    /**
+     * Crée un pool de ressources
+     */
+    @PostMapping("/resource-pools")
+    public ResponseEntity<ResourcePool> createResourcePool(@RequestBody ResourcePool pool) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(adminService.createResourcePool(pool));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Modifie les capacités d'un pool de ressources
+     */
+    @PutMapping("/resource-pools/{id}")
+    public ResponseEntity<ResourcePool> updateResourcePool(
+            @PathVariable String id,
+            @RequestBody ResourcePool poolDetails) {
+        try {
+            return ResponseEntity.ok(adminService.updateResourcePool(id, poolDetails));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Supprime un pool de ressources
+     */
+    @DeleteMapping("/resource-pools/{id}")
+    public ResponseEntity<Void> deleteResourcePool(@PathVariable String id) {
+        try {
+            adminService.deleteResourcePool(id);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Récupère toutes les règles d'alerte
+     */
+    @GetMapping("/alert-rules")
+    public ResponseEntity<List<AlertRule>> getAllAlertRules() {
+        return ResponseEntity.ok(adminService.getAllAlertRules());
+    }
+
+    /**
+     * Crée une règle d'alerte
+     */
+    @PostMapping("/alert-rules")
+    public ResponseEntity<AlertRule> createAlertRule(@RequestBody AlertRule rule) {
+        try {
+            AlertRule createdRule = adminService.createAlertRule(rule);
+            return ResponseEntity.status(HttpStatus.CREATED).body(createdRule);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Met à jour une règle d'alerte
+     */
+    @PutMapping("/alert-rules/{id}")
+    public ResponseEntity<AlertRule> updateAlertRule(@PathVariable String id, @RequestBody AlertRule ruleDetails) {
+        try {
+            AlertRule updatedRule = adminService.updateAlertRule(id, ruleDetails);
+            return ResponseEntity.ok(updatedRule);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Désactive une règle d'alerte
+     */
+    @PutMapping("/alert-rules/{id}/disable")
+    public ResponseEntity<AlertRule> disableAlertRule(@PathVariable String id) {
+        try {
+            AlertRule rule = adminService.disableAlertRule(id);
+            return ResponseEntity.ok(rule);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
     /**
      * Récupère toutes les demandes
      */
@@ -127,18 +265,118 @@ public class AdminController {
      */
     @GetMapping("/monitoring/metrics/recent")
     public ResponseEntity<List<MonitoringMetrics>> getRecentMonitoringMetrics(
-            @RequestParam(defaultValue = "50") int limit) {
-        List<MonitoringMetrics> metrics = adminService.getRecentMonitoringMetrics(limit);
-        return ResponseEntity.ok(metrics);
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String vmId,
+            @RequestParam(required = false) String source,
+            @RequestParam(required = false) Boolean hasAlerts,
+            @RequestParam(required = false) String cursor) {
+        try {
+            CursorPage<MonitoringMetrics> page = adminService.getRecentMonitoringMetrics(vmId, source, hasAlerts, cursor, limit);
+            return withNextCursor(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
     }
 
     /**
      * Récupère les alertes de monitoring
      */
     @GetMapping("/monitoring/alerts")
-    public ResponseEntity<List<MonitoringMetrics>> getMonitoringAlerts() {
-        List<MonitoringMetrics> alerts = adminService.getMonitoringAlerts();
-        return ResponseEntity.ok(alerts);
+    public ResponseEntity<List<Alert>> getMonitoringAlerts(
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String vmId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return withNextCursor(adminService.getMonitoringAlerts(vmId, status, severity, type, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * État du stockage des métriques
+     */
+    @GetMapping("/monitoring/storage")
+    public ResponseEntity<Map<String, Object>> getMetricsStorageStatus() {
+        return ResponseEntity.ok(adminService.getMetricsStorageStatus());
+    }
+
+    /**
+     * Migre les métriques existantes vers une collection time-series
+     */
+    @PostMapping("/monitoring/storage/migrate")
+    public ResponseEntity<Map<String, Object>> migrateMetricsToTimeSeries() {
+        try {
+            return ResponseEntity.ok(adminService.migrateMetricsToTimeSeries());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Migre les métriques existantes vers le schéma compact (noms courts, catalogue)
+     */
+    @PostMapping("/monitoring/storage/compact")
+    public ResponseEntity<Map<String, Object>> migrateMetricsToCompactSchema() {
+        try {
+            return ResponseEntity.ok(adminService.migrateMetricsToCompactSchema());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Benchmark du schéma : octets par document et débit d'écriture, ancien format et compact
+     */
+    @PostMapping("/monitoring/storage/schema-benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkMetricsSchema(
+            @RequestParam(defaultValue = "10000") int documents) {
+        if (documents <= 0 || documents > 1_000_000) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(adminService.benchmarkMetricsSchema(documents));
+    }
+
+    /**
+     * Benchmark du stockage : latence des requêtes par plage et taille des collections
+     */
+    @PostMapping("/monitoring/storage/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkMetricsStorage(
+            @RequestParam(defaultValue = "100") int queries,
+            @RequestParam(defaultValue = "24") int windowHours) {
+        if (queries <= 0 || queries > 10_000 || windowHours <= 0 || windowHours > 24 * 365) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(adminService.benchmarkMetricsStorage(queries, windowHours));
+    }
+
+    /**
+     * Lance une passe de prévision de capacité sans attendre la tâche planifiée
+     */
+    @PostMapping("/monitoring/forecast/run")
+    public ResponseEntity<Map<String, Object>> runCapacityForecast() {
+        try {
+            return ResponseEntity.ok(adminService.runCapacityForecast());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Benchmark de la prévision : durée de l'ajustement fork/join sur des séries synthétiques
+     */
+    @PostMapping("/monitoring/forecast/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkCapacityForecast(
+            @RequestParam(defaultValue = "10000") int vms,
+            @RequestParam(defaultValue = "30") int days) {
+        // Séries synthétiques en mémoire (~770 octets par VM et par jour) : quelques centaines de Mo au plus
+        if (vms <= 0 || vms > 100_000 || days <= 0 || days > 365 || (long) vms * days > 500_000) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(adminService.benchmarkCapacityForecast(vms, days));
     }
 
     /**
@@ -1,8 +1,14 @@
 package com.project.authetification.controller;
 
+import com.project.authetification.model.DecisionOutcome;
 import com.project.authetification.model.Demande;
+import com.project.authetification.model.DemandeDecision;
+import com.project.authetification.model.ResourceFilter;
 import com.project.authetification.service.CloudTeamService;
+import com.project.authetification.service.GovernanceEngine;
+import com.project.authetification.service.ResourceLedger;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -19,6 +25,9 @@ public class CloudTeamController {
 
     private final CloudTeamService cloudTeamService;
 
+    @Value("${cloud-team.bulk.max-decisions:500}")
+    private int maxDecisions;
+
     private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication != null && authentication.isAuthenticated()) {
@@ -64,11 +73,43 @@ public class CloudTeamController {
 
             Demande demande = cloudTeamService.validerDemande(id, validateurUsername, adresseIp, reseau, datastore);
             return ResponseEntity.ok(demande);
+        } catch (ResourceLedger.InsufficientResourcesException e) {
+            // Datastore, réseau ou quota client plein
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
+    /**
+     * Recherche de demandes par statut et quantités normalisées
+     * (ex. ?status=EN_ATTENTE&minRamMib=16385 : en attente, plus de 16 Go de RAM)
+     */
+    @GetMapping("/demandes/recherche")
+    public ResponseEntity<List<Demande>> rechercherDemandes(
+            ResourceFilter filter,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > 1000) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(cloudTeamService.rechercherDemandes(filter, limit));
+    }
+
+    /**
+     * Vérifie une demande contre les règles de gouvernance sans la valider
+     */
+    @GetMapping("/demandes/{id}/gouvernance")
+    public ResponseEntity<List<GovernanceEngine.Violation>> evaluerGouvernance(
+            @PathVariable String id,
+            @RequestParam(required = false) String reseau,
+            @RequestParam(required = false) String adresseIp) {
+        try {
+            return ResponseEntity.ok(cloudTeamService.evaluerGouvernance(id, reseau, adresseIp));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
     /**
      * Refuse une demande
      */
@@ -94,6 +135,25 @@ public class CloudTeamController {
         }
     }
 
+    /**
+     * Valide et refuse un lot de demandes ; chaque décision réussit ou échoue séparément
+     */
+    @PostMapping("/demandes/decisions")
+    public ResponseEntity<List<DecisionOutcome>> traiterDecisions(@RequestBody List<DemandeDecision> decisions) {
+        String validateurUsername = getCurrentUsername();
+        if (validateurUsername == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (decisions == null || decisions.isEmpty() || decisions.size() > maxDecisions) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        try {
+            return ResponseEntity.ok(cloudTeamService.traiterDecisions(decisions, validateurUsername));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
     /**
      * Demande des modifications à une demande
      */
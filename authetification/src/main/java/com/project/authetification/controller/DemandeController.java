@@ -5,6 +5,7 @@ import com.project.authetification.model.Demande;
 import com.project.authetification.model.DemandeVM; 
 import com.project.authetification.model.DemandeStatus; // Si tu as cet enum
 import com.project.authetification.service.DemandeService;
+import com.project.authetification.service.ResourceQuantities;
 // Import du service Terraform (celui qu'on a validé ensemble)
 import com.project.authetification.service.TerraformService; 
 
@@ -128,8 +129,10 @@ public class DemandeController {
             vmData.setId((long) Math.abs(id.hashCode()));
             
             // Conversion des valeurs (Adapte selon tes types réels dans Demande)
-            vmData.setCpu(parseInteger(demande.getCpu()));
-            vmData.setRam(parseInteger(demande.getRam()));
+            Integer vcpu = ResourceQuantities.vcpu(demande);
+            Long ramMib = ResourceQuantities.ramMib(demande);
+            vmData.setCpu(vcpu != null ? vcpu : 1);
+            vmData.setRam(ramMib != null ? (int) Math.ceil(ramMib / 1024.0) : 1); // Go
             vmData.setOsType(demande.getOs()); // ou demande.getOsType()
             vmData.setStatus(DemandeStatus.APPROVED);
 
@@ -152,14 +155,4 @@ public class DemandeController {
             log.warn("Erreur update status via service: " + e.getMessage());
         }
     }
-
-    private int parseInteger(String value) {
-        try {
-            if (value == null) return 1;
-            // Extrait les chiffres d'une chaine comme "4GB" -> 4
-            return Integer.parseInt(value.replaceAll("[^0-9]", ""));
-        } catch (NumberFormatException e) {
-            return 1; // Valeur par défaut
-        }
-    }
 }
@@ -1,17 +1,39 @@
 package com.project.authetification.controller;
 
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.CapacityForecast;
+import com.project.authetification.model.CursorPage;
 import com.project.authetification.model.MonitoringMetrics;
 import com.project.authetification.model.VM;
+import com.project.authetification.service.CapacityForecastService;
+import com.project.authetification.service.MetricsCollector;
+import com.project.authetification.service.MetricsExportService;
+import com.project.authetification.service.MetricsIngestService;
+import com.project.authetification.service.AlertEngine;
+import com.project.authetification.service.MetricsWriteBehindBuffer;
 import com.project.authetification.service.MonitoringService;
+import com.project.authetification.service.PercentileSketchService;
+import com.project.authetification.service.RemoteWriteService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping("/api/monitoring")
@@ -19,6 +41,24 @@ import java.util.Map;
 public class MonitoringController {
 
     private final MonitoringService monitoringService;
+    private final MetricsExportService metricsExportService;
+    private final MetricsIngestService metricsIngestService;
+    private final RemoteWriteService remoteWriteService;
+    private final PercentileSketchService percentileSketchService;
+    private final CapacityForecastService capacityForecastService;
+
+    private String getCurrentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()) {
+            return authentication.getName();
+        }
+        return null;
+    }
+
+    // File d'écriture des métriques pleine : le client doit réessayer plus tard
+    private static <T> ResponseEntity<T> tooManyRequests() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
 
     /**
      * Collecte les métriques depuis vRops, Prometheus, ou OSS Agents
@@ -37,30 +77,134 @@ public class MonitoringController {
 
             MonitoringMetrics metrics = monitoringService.collectMetrics(vmId, source, metricsData);
             return ResponseEntity.ok(metrics);
+        } catch (MetricsWriteBehindBuffer.OverflowException e) {
+            return tooManyRequests();
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
     /**
-     * Récupère les métriques d'une VM
+     * Ingestion en lot : NDJSON (une métrique par ligne) ou tableau JSON, éventuellement
+     * compressé (Content-Encoding: gzip). Les lignes invalides sont rejetées une à une
+     * sans faire échouer le lot ; le bilan liste les erreurs par ligne.
+     */
+    @PostMapping(path = "/metrics/ingest",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<MetricsIngestService.Report> ingestMetrics(
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            @RequestParam(required = false) String source,
+            HttpServletRequest request) {
+        try {
+            InputStream body = request.getInputStream();
+            if (contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")) {
+                body = new GZIPInputStream(body);
+            }
+            MetricsIngestService.Report report = metricsIngestService.ingest(body, source);
+            if (report.accepted() == 0 && report.rejected() > 0) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(report);
+            }
+            return ResponseEntity.ok(report);
+        } catch (MetricsWriteBehindBuffer.OverflowException e) {
+            return tooManyRequests();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Récepteur Prometheus remote-write (WriteRequest protobuf compressé snappy).
+     * 204 si la requête est traitée ; 400 si le corps est illisible (Prometheus ne
+     * réessaie pas) ; 503 si l'écriture échoue (Prometheus réessaie).
+     */
+    @PostMapping(path = "/remote-write", consumes = "application/x-protobuf")
+    public ResponseEntity<Void> remoteWrite(HttpServletRequest request) {
+        byte[] body;
+        try {
+            body = request.getInputStream().readAllBytes();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        try {
+            remoteWriteService.receive(body);
+            return ResponseEntity.noContent().build();
+        } catch (MetricsWriteBehindBuffer.OverflowException e) {
+            return tooManyRequests();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Récupère les dernières métriques d'une VM (ordre chronologique)
      */
     @GetMapping("/metrics/vm/{vmId}")
-    public ResponseEntity<List<MonitoringMetrics>> getMetricsByVM(@PathVariable String vmId) {
-        List<MonitoringMetrics> metrics = monitoringService.getMetricsByVM(vmId);
+    public ResponseEntity<List<MonitoringMetrics>> getMetricsByVM(
+            @PathVariable String vmId,
+            @RequestParam(defaultValue = "${monitoring.ring.capacity:256}") int limit) {
+        List<MonitoringMetrics> metrics = monitoringService.getMetricsByVM(vmId, limit);
         return ResponseEntity.ok(metrics);
     }
 
     /**
-     * Récupère les métriques d'une VM dans une plage de dates
+     * Récupère les métriques d'une VM dans une plage de dates.
+     * Au-delà du budget de points, la plage est servie depuis les agrégats (1m, 5m, 1h, 1d) ;
+     * la résolution utilisée est renvoyée dans l'en-tête X-Metrics-Resolution.
      */
     @GetMapping("/metrics/vm/{vmId}/range")
-    public ResponseEntity<List<MonitoringMetrics>> getMetricsByVMAndDateRange(
+    public ResponseEntity<List<?>> getMetricsByVMAndDateRange(
             @PathVariable String vmId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
-        List<MonitoringMetrics> metrics = monitoringService.getMetricsByVMAndDateRange(vmId, start, end);
-        return ResponseEntity.ok(metrics);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "500") int maxPoints,
+            @RequestParam(defaultValue = "auto") String resolution) {
+        if (!end.isAfter(start) || maxPoints <= 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        try {
+            String chosen = "auto".equalsIgnoreCase(resolution)
+                    ? monitoringService.chooseResolution(start, end, maxPoints)
+                    : resolution.toLowerCase();
+
+            List<?> metrics = "raw".equals(chosen)
+                    ? monitoringService.getMetricsByVMAndDateRange(vmId, start, end)
+                    : monitoringService.getRollupsByVMAndDateRange(vmId, chosen, start, end);
+            return ResponseEntity.ok().header("X-Metrics-Resolution", chosen).body(metrics);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Export en flux des métriques brutes d'une plage (NDJSON ou CSV), sans limite
+     * de taille : les lignes sont écrites au fil de la lecture du curseur Mongo
+     */
+    @GetMapping("/metrics/vm/{vmId}/range/export")
+    public ResponseEntity<StreamingResponseBody> exportMetricsByVMAndDateRange(
+            @PathVariable String vmId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) List<String> fields) {
+        MetricsExportService.Format exportFormat;
+        List<String> exportFields;
+        try {
+            exportFormat = MetricsExportService.Format.valueOf(format.toUpperCase());
+            exportFields = metricsExportService.resolveFields(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!end.isAfter(start)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        StreamingResponseBody body = out -> metricsExportService.export(vmId, start, end, exportFields, exportFormat, out);
+        MediaType contentType = exportFormat == MetricsExportService.Format.CSV
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
     }
 
     /**
@@ -73,12 +217,57 @@ public class MonitoringController {
     }
 
     /**
-     * Récupère toutes les alertes
+     * Historique des alertes, les plus récentes d'abord (page suivante via X-Next-Cursor)
      */
     @GetMapping("/alerts")
-    public ResponseEntity<List<MonitoringMetrics>> getAllAlerts() {
-        List<MonitoringMetrics> alerts = monitoringService.getAllAlerts();
-        return ResponseEntity.ok(alerts);
+    public ResponseEntity<List<Alert>> getAlerts(
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String vmId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String cursor) {
+        try {
+            CursorPage<Alert> page = monitoringService.getAlertsPage(vmId, status, severity, type, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header("X-Next-Cursor", page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Nombre d'alertes actives (ouvertes / acquittées, par sévérité)
+     */
+    @GetMapping("/alerts/counts")
+    public ResponseEntity<Map<String, Object>> getActiveAlertCounts() {
+        return ResponseEntity.ok(monitoringService.getActiveAlertCounts());
+    }
+
+    /**
+     * Alertes ouvertes ou acquittées, éventuellement pour une seule VM
+     */
+    @GetMapping("/alerts/active")
+    public ResponseEntity<List<Alert>> getActiveAlerts(@RequestParam(required = false) String vmId) {
+        return ResponseEntity.ok(monitoringService.getActiveAlerts(vmId));
+    }
+
+    /**
+     * Acquitte une alerte ouverte
+     */
+    @PostMapping("/alerts/{alertId}/ack")
+    public ResponseEntity<Alert> acknowledgeAlert(@PathVariable String alertId) {
+        try {
+            Alert alert = monitoringService.acknowledgeAlert(alertId, getCurrentUsername());
+            return ResponseEntity.ok(alert);
+        } catch (AlertEngine.AlertStateConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
     }
 
     /**
@@ -86,9 +275,78 @@ public class MonitoringController {
      */
     @GetMapping("/metrics/recent")
     public ResponseEntity<List<MonitoringMetrics>> getRecentMetrics(
-            @RequestParam(defaultValue = "50") int limit) {
-        List<MonitoringMetrics> metrics = monitoringService.getRecentMetrics(limit);
-        return ResponseEntity.ok(metrics);
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String vmId,
+            @RequestParam(required = false) String source,
+            @RequestParam(required = false) Boolean hasAlerts,
+            @RequestParam(required = false) String cursor) {
+        try {
+            CursorPage<MonitoringMetrics> page = monitoringService.getRecentMetricsPage(vmId, source, hasAlerts, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                // Curseur de la page suivante
+                response.header("X-Next-Cursor", page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Flux SSE des nouvelles métriques ("metric") et des changements d'état des
+     * alertes ("alert") pour une VM, une liste de VMs ou toute la flotte
+     */
+    @GetMapping(path = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeLive(@RequestParam(required = false) List<String> vmIds) {
+        try {
+            return ResponseEntity.ok(monitoringService.subscribeLive(vmIds));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Bilan de la dernière passe de collecte automatique
+     */
+    @GetMapping("/collector/last-run")
+    public ResponseEntity<MetricsCollector.RunReport> getLastCollectionReport() {
+        MetricsCollector.RunReport report = monitoringService.getLastCollectionReport();
+        if (report == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Percentiles CPU / RAM / latence d'une VM sur une plage (arrondie à l'heure),
+     * calculés depuis les sketches horaires et journaliers
+     */
+    @GetMapping("/vms/{vmId}/percentiles")
+    public ResponseEntity<Map<String, Object>> getPercentiles(
+            @PathVariable String vmId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "0.5,0.95,0.99") List<Double> quantiles) {
+        if (!end.isAfter(start) || quantiles.stream().anyMatch(q -> q == null || q <= 0 || q > 1)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(percentileSketchService.getPercentiles(vmId, start, end, quantiles));
+    }
+
+    /**
+     * Prévisions de capacité : VMs les plus proches de la saturation d'abord
+     * (maxDays : seulement celles saturées avant ce délai), ou la prévision d'une VM
+     */
+    @GetMapping("/forecast")
+    public ResponseEntity<List<CapacityForecast>> getForecasts(
+            @RequestParam(required = false) String vmId,
+            @RequestParam(required = false) Double maxDays,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > 10000 || (maxDays != null && maxDays < 0)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.ok(capacityForecastService.getForecasts(vmId, maxDays, limit));
     }
 
     /**
@@ -73,8 +73,8 @@ public class SupportSystemController {
             // On utilise le hashCode de l'ID string pour avoir un Long (car Terraform préfère des IDs simples parfois)
             // Ou mieux: Utilise directement l'ID de la demande associée si disponible
             terraformData.setId((long) Math.abs(vm.getId().hashCode())); 
-            terraformData.setCpu(parseInteger(vm.getCpu()));
-            terraformData.setRam(parseInteger(vm.getRam()));
+            terraformData.setCpu(vm.getVcpu() != null ? vm.getVcpu() : 1);
+            terraformData.setRam(vm.getRamMib() != null ? (int) Math.ceil(vm.getRamMib() / 1024.0) : 1); // Go
             terraformData.setOsType(vm.getOs());
             terraformData.setStatus(DemandeStatus.APPROVED);
 
@@ -90,14 +90,4 @@ public class SupportSystemController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
         }
     }
-
-    private int parseInteger(String value) {
-        try {
-            if (value == null) return 1;
-            String numbers = value.replaceAll("[^0-9]", "");
-            return numbers.isEmpty() ? 1 : Integer.parseInt(numbers);
-        } catch (Exception e) {
-            return 1;
-        }
-    }
 }
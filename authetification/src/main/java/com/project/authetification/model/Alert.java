@@ -0,0 +1,38 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Alerte ouverte par AlertEngine. Le document n'est écrit qu'aux changements
+ * d'état : ouverture, acquittement, résolution.
+ */
+@Document(collection = "alerts")
+@Data
+public class Alert {
+
+    @Id
+    private String id;
+
+    private String vmId;
+    private String vmName;
+
+    private String type; // THRESHOLD (règle à seuil), ANOMALY (écart à la normale de la VM) ; null = THRESHOLD
+    private String ruleId;
+    private String ruleName;
+    private String metric;
+    private String severity; // INFO, WARNING, CRITICAL
+
+    private String status; // OPEN, ACKNOWLEDGED, RESOLVED
+    private String message;
+    private Double triggerValue; // Valeur ayant déclenché l'alerte
+    private Double expectedValue; // Moyenne habituelle de la VM (alertes ANOMALY)
+
+    private LocalDateTime openedAt;
+    private LocalDateTime acknowledgedAt;
+    private String acknowledgedBy;
+    private LocalDateTime resolvedAt;
+}
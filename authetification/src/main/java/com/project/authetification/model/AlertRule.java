@@ -0,0 +1,42 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Règle d'alerte évaluée en continu par AlertEngine sur chaque métrique reçue.
+ * Exemple : cpuUsage > 90 pendant 3 métriques consécutives, levée quand
+ * cpuUsage < 80 pendant 2 métriques consécutives.
+ */
+@Document(collection = "alert_rules")
+@Data
+public class AlertRule {
+
+    @Id
+    private String id;
+
+    private String nom;
+    private String description;
+
+    // cpuUsage, ramUsage, diskUsage, networkLatency, networkThroughput, isAvailable (1 ou 0)
+    private String metric;
+    private String operator; // GT, GTE, LT, LTE
+    private Double threshold;
+
+    // Seuil de retour à la normale (hystérésis) ; si absent, le seuil de déclenchement
+    private Double recoveryThreshold;
+
+    // Nombre de métriques consécutives pour ouvrir / résoudre l'alerte
+    private Integer forSamples = 1;
+    private Integer recoverSamples = 1;
+
+    private String severity; // INFO, WARNING, CRITICAL
+
+    // Statut
+    private Boolean isActive;
+    private LocalDateTime dateCreation;
+    private LocalDateTime dateModification;
+}
@@ -0,0 +1,30 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Instantané des moyennes / variances mobiles (EWMA) d'une VM, pour que la détection
+ * d'anomalies reprenne après un redémarrage sans nouvelle période d'apprentissage
+ */
+@Document(collection = "anomaly_baselines")
+@Data
+public class AnomalyBaseline {
+
+    @Id
+    private String vmId;
+
+    private Map<String, Stats> metrics; // Par nom de métrique (cpuUsage, ramUsage...)
+    private LocalDateTime dateModification;
+
+    @Data
+    public static class Stats {
+        private double mean;
+        private double variance;
+        private long count;
+    }
+}
@@ -0,0 +1,58 @@
+package com.project.authetification.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prévision de capacité d'une VM : tendance de chaque métrique (régression linéaire
+ * pondérée sur les agrégats horaires, les heures récentes comptant davantage) et date
+ * à laquelle le seuil de saturation serait atteint
+ */
+@Document(collection = "capacity_forecasts")
+@Data
+public class CapacityForecast {
+
+    @Id
+    private String vmId;
+
+    private String vmName;
+
+    // Plus court délai avant saturation parmi les métriques ; null = pas de saturation prévue
+    private Double daysUntilSaturation;
+    private String saturatingMetric;
+    private LocalDateTime saturationDate;
+
+    private Map<String, Trend> trends = new LinkedHashMap<>(); // cpuUsage, ramUsage, diskUsage
+    private LocalDateTime lastBucket; // Dernier agrégat horaire pris en compte
+    private LocalDateTime dateModification;
+
+    @Data
+    public static class Trend {
+        private Double level; // Valeur estimée à la date du calcul
+        private Double slopePerDay;
+        private Double daysUntilSaturation;
+        private double threshold;
+        private int points;
+
+        // Sommes pondérées de la régression, mises à jour à chaque nouvel agrégat
+        // (t en jours depuis FORECAST_EPOCH, poids divisé par deux à chaque demi-vie)
+        @JsonIgnore
+        private double referenceDay;
+        @JsonIgnore
+        private double weight;
+        @JsonIgnore
+        private double sumT;
+        @JsonIgnore
+        private double sumY;
+        @JsonIgnore
+        private double sumTT;
+        @JsonIgnore
+        private double sumTY;
+    }
+}
@@ -0,0 +1,17 @@
+package com.project.authetification.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page de résultats paginée par curseur (keyset). nextCursor est null sur la dernière page.
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;
+    private String nextCursor;
+}
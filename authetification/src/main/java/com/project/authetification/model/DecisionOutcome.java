@@ -0,0 +1,20 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Résultat d'une décision d'un lot : appliquée (status, workorderId) ou rejetée (error,
+ * violations des règles de gouvernance)
+ */
+@Data
+public class DecisionOutcome {
+    private String demandeId;
+    private String action;
+    private boolean success;
+    private String status;
+    private String workorderId;
+    private String error;
+    private List<String> violations;
+}
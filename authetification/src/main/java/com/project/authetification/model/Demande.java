@@ -31,6 +31,11 @@ public class Demande {
     private String besoinsPareFeu; // Besoins pare-feu
     private String besoinsStockage; // Besoins de stockage particuliers
 
+    // Quantités normalisées, calculées à l'écriture depuis cpu / ram / disque (ResourceQuantities)
+    private Integer vcpu;
+    private Long ramMib;
+    private Long disqueGib;
+
     // Informations ajoutées par l'équipe Cloud (après validation)
     private String adresseIp; // Ajoutée par l'équipe Cloud
     private String reseau; // Configuration réseau
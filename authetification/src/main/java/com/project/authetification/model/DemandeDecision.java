@@ -0,0 +1,24 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+
+/**
+ * Décision de l'équipe Cloud sur une demande, dans un traitement en lot
+ */
+@Data
+public class DemandeDecision {
+
+    public static final String VALIDER = "VALIDER";
+    public static final String REFUSER = "REFUSER";
+
+    private String demandeId;
+    private String action; // VALIDER, REFUSER
+
+    // Validation
+    private String adresseIp;
+    private String reseau;
+    private String datastore;
+
+    // Refus
+    private String justification;
+}
@@ -0,0 +1,45 @@
+package com.project.authetification.model;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position d'un curseur de {@link CursorPage} : date de tri puis _id, encodés en base64 url.
+ */
+public record KeysetCursor(LocalDateTime timestamp, String id) {
+
+    public static String encode(LocalDateTime timestamp, String id) {
+        String raw = timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        String[] position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Curseur invalide: " + cursor, e);
+        }
+        if (position.length != 2) {
+            throw new IllegalArgumentException("Curseur invalide: " + cursor);
+        }
+        try {
+            return new KeysetCursor(LocalDateTime.parse(position[0]), position[1]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur invalide", e);
+        }
+    }
+
+    /**
+     * Éléments strictement après cette position, pour un tri décroissant (field, _id)
+     */
+    public Criteria after(String field) {
+        return new Criteria().orOperator(
+                Criteria.where(field).lt(timestamp),
+                Criteria.where(field).is(timestamp).and("_id").lt(id));
+    }
+}
@@ -0,0 +1,28 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrée du catalogue des métriques supplémentaires : chaque nom reçoit un identifiant
+ * numérique court utilisé comme clé dans MonitoringMetrics (champ "x") et un type fixé
+ * à la première réception
+ */
+@Document(collection = "metric_catalog")
+@Data
+public class MetricDefinition {
+
+    public enum Type {
+        DOUBLE, BOOLEAN, STRING
+    }
+
+    @Id
+    private Integer id;
+
+    private String name;
+    private Type type;
+    private LocalDateTime dateCreation;
+}
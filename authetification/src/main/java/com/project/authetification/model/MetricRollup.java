@@ -0,0 +1,36 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * Agrégat des métriques d'une VM sur un intervalle (une collection par résolution,
+ * cf. RollupResolution)
+ */
+@Data
+public class MetricRollup {
+
+    @Id
+    private String id; // vmId + "|" + début de l'intervalle
+
+    private String vmId;
+    private String resolution; // 1m, 5m, 1h, 1d
+    private LocalDateTime bucketStart;
+
+    private Stats cpuUsage;
+    private Stats ramUsage;
+    private Stats diskUsage;
+    private Stats networkLatency;
+    private Stats networkThroughput;
+
+    @Data
+    public static class Stats {
+        private Double min;
+        private Double max;
+        private Double avg;
+        private long count;
+        private Double last; // Dernière valeur de l'intervalle
+    }
+}
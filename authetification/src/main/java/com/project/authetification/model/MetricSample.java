@@ -0,0 +1,26 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Métrique typée reçue par l'ingestion en lot (une ligne NDJSON ou un élément du tableau JSON)
+ */
+@Data
+public class MetricSample {
+
+    private String vmId;
+    private String source; // vRops, Prometheus, OSS Agents (sinon source par défaut du lot)
+    private LocalDateTime timestamp; // Heure de réception si absent
+
+    private Double cpuUsage;
+    private Double ramUsage;
+    private Double diskUsage;
+    private Double networkLatency;
+    private Double networkThroughput;
+
+    private String vmStatus;
+    private Boolean isAvailable;
+    private Integer uptime;
+}
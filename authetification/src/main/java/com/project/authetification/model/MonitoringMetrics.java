@@ -1,43 +1,80 @@
 package com.project.authetification.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.TypeAlias;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.Map;
 
 @Document(collection = "monitoring_metrics")
+@TypeAlias("metrics") // _class court plutôt que le nom complet de la classe
 @Data
 public class MonitoringMetrics {
-    
+
+    // Noms courts des champs stockés (le nom de la propriété est répété dans chaque document)
+    public static final String SOURCE_FIELD = "src";
+    public static final String CPU_USAGE_FIELD = "cpu";
+    public static final String RAM_USAGE_FIELD = "ram";
+    public static final String DISK_USAGE_FIELD = "disk";
+    public static final String NETWORK_LATENCY_FIELD = "lat";
+    public static final String NETWORK_THROUGHPUT_FIELD = "net";
+    public static final String VM_STATUS_FIELD = "st";
+    public static final String IS_AVAILABLE_FIELD = "up";
+    public static final String UPTIME_FIELD = "upt";
+    public static final String HAS_ALERTS_FIELD = "al";
+    public static final String ALERT_MESSAGE_FIELD = "am";
+    public static final String EXTRA_METRICS_FIELD = "x";
+    public static final String VM_ID_FIELD = "vmId";
+
     @Id
     private String id;
     
-    @DBRef
-    private VM vm; // VM concernée
+    private String vmId; // VM concernée
+    private VmSummary vm; // Résumé de la VM au moment de la mesure (pas de DBRef)
     
     private LocalDateTime timestamp;
+    @Field(SOURCE_FIELD)
     private String source; // vRops, Prometheus, OSS Agents
     
     // Métriques de performance
+    @Field(CPU_USAGE_FIELD)
     private Double cpuUsage; // Pourcentage d'utilisation CPU
+    @Field(RAM_USAGE_FIELD)
     private Double ramUsage; // Pourcentage d'utilisation RAM
+    @Field(DISK_USAGE_FIELD)
     private Double diskUsage; // Pourcentage d'utilisation disque
+    @Field(NETWORK_LATENCY_FIELD)
     private Double networkLatency; // Latence réseau en ms
+    @Field(NETWORK_THROUGHPUT_FIELD)
     private Double networkThroughput; // Débit réseau en MB/s
     
     // Métriques système
+    @Field(VM_STATUS_FIELD)
     private String vmStatus; // État de la VM
+    @Field(IS_AVAILABLE_FIELD)
     private Boolean isAvailable; // Disponibilité
+    @Field(UPTIME_FIELD)
     private Integer uptime; // Temps de fonctionnement en secondes
     
-    // Métriques supplémentaires (format clé-valeur)
+    // Métriques supplémentaires (format clé-valeur), par nom ; non stockées telles quelles
+    @Transient
     private Map<String, Object> additionalMetrics;
+
+    // Forme stockée des métriques supplémentaires : identifiant du catalogue -> valeur typée
+    // (cf. CompactMetricsListener)
+    @JsonIgnore
+    @Field(EXTRA_METRICS_FIELD)
+    private Map<String, Object> extraMetrics;
     
     // Alertes
+    @Field(HAS_ALERTS_FIELD)
     private Boolean hasAlerts;
+    @Field(ALERT_MESSAGE_FIELD)
     private String alertMessage;
 }
 
@@ -0,0 +1,27 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * Distribution des métriques d'une VM sur un intervalle (une collection par résolution,
+ * metrics_sketch_1h et metrics_sketch_1d) : histogrammes HdrHistogram compressés,
+ * fusionnables pour calculer des percentiles sur n'importe quelle plage
+ */
+@Data
+public class PercentileSketch {
+
+    @Id
+    private String id; // vmId + "|" + début de l'intervalle
+
+    private String vmId;
+    private String resolution; // 1h, 1d
+    private LocalDateTime bucketStart;
+    private long version; // Incrémentée à chaque fusion (écritures concurrentes)
+
+    private byte[] cpuUsage;
+    private byte[] ramUsage;
+    private byte[] networkLatency;
+}
@@ -0,0 +1,18 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+
+/**
+ * Filtre sur les quantités normalisées (bornes incluses, null = pas de borne), évalué
+ * par Mongo sur les index status + vcpu / ramMib / disqueGib
+ */
+@Data
+public class ResourceFilter {
+    private String status;
+    private Integer minVcpu;
+    private Integer maxVcpu;
+    private Long minRamMib;
+    private Long maxRamMib;
+    private Long minDisqueGib;
+    private Long maxDisqueGib;
+}
@@ -0,0 +1,35 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Capacité d'une ressource partagée, réservée à la validation des demandes :
+ * datastore (disque), réseau (adresses IP) ou quota d'abonnement d'un client
+ * (name = username ; vCPU et RAM). Une limite nulle = pas de limite
+ */
+@Document(collection = "resource_pools")
+@Data
+public class ResourcePool {
+
+    public static final String TYPE_DATASTORE = "DATASTORE";
+    public static final String TYPE_NETWORK = "NETWORK";
+    public static final String TYPE_SUBSCRIPTION = "SUBSCRIPTION";
+
+    @Id
+    private String id;
+
+    private String type; // DATASTORE, NETWORK, SUBSCRIPTION
+    private String name; // Nom du datastore / du réseau, username du client
+
+    private Long diskGb; // DATASTORE
+    private Long addresses; // NETWORK
+    private Long vcpu; // SUBSCRIPTION
+    private Long ramGb; // SUBSCRIPTION
+
+    private LocalDateTime dateCreation;
+    private LocalDateTime dateModification;
+}
@@ -0,0 +1,50 @@
+package com.project.authetification.model;
+
+import java.time.Duration;
+
+/**
+ * Résolutions des agrégats de métriques. Chaque niveau est calculé à partir du
+ * niveau précédent (1m depuis les métriques brutes, 5m depuis 1m, etc.)
+ */
+public enum RollupResolution {
+    ONE_MINUTE("1m", Duration.ofMinutes(1)),
+    FIVE_MINUTES("5m", Duration.ofMinutes(5)),
+    ONE_HOUR("1h", Duration.ofHours(1)),
+    ONE_DAY("1d", Duration.ofDays(1));
+
+    private final String code;
+    private final Duration duration;
+
+    RollupResolution(String code, Duration duration) {
+        this.code = code;
+        this.duration = duration;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public String getCollectionName() {
+        return "metrics_rollup_" + code;
+    }
+
+    /**
+     * Niveau source de ce niveau (null pour 1m, calculé depuis les métriques brutes)
+     */
+    public RollupResolution getSource() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+
+    public static RollupResolution fromCode(String code) {
+        for (RollupResolution resolution : values()) {
+            if (resolution.code.equalsIgnoreCase(code)) {
+                return resolution;
+            }
+        }
+        throw new IllegalArgumentException("Résolution inconnue: " + code);
+    }
+}
@@ -0,0 +1,22 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position du pipeline d'agrégation pour une résolution : tout ce qui précède
+ * "watermark" a déjà été agrégé et ne sera plus relu
+ */
+@Document(collection = "metrics_rollup_watermarks")
+@Data
+public class RollupWatermark {
+
+    @Id
+    private String resolution; // 1m, 5m, 1h, 1d
+
+    private LocalDateTime watermark;
+    private LocalDateTime dateModification;
+}
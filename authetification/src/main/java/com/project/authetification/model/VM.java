@@ -29,6 +29,11 @@ public class VM {
     private String typeDisque;
     private String os;
     private String versionOs;
+
+    // Quantités normalisées, calculées à l'écriture depuis cpu / ram / disque (ResourceQuantities)
+    private Integer vcpu;
+    private Long ramMib;
+    private Long disqueGib;
     
     // Configuration réseau
     private String adresseIp;
@@ -45,6 +50,7 @@ public class VM {
     // Informations de monitoring
     private Map<String, Object> metrics; // Métriques de performance
     private Boolean monitored = false;
+    private Double daysUntilSaturation; // Prévision de capacité (CapacityForecastService), null = pas de saturation prévue
     
     public enum VMStatus {
         CREATED,
@@ -0,0 +1,23 @@
+package com.project.authetification.model;
+
+import lombok.Data;
+
+/**
+ * Résumé d'une VM recopié dans chaque métrique : les lectures de métriques n'ont
+ * pas à charger la VM (ni, par ricochet, sa demande et ses utilisateurs)
+ */
+@Data
+public class VmSummary {
+
+    private String vmName;
+    private String adresseIp;
+    private String os;
+
+    public static VmSummary of(VM vm) {
+        VmSummary summary = new VmSummary();
+        summary.setVmName(vm.getVmName());
+        summary.setAdresseIp(vm.getAdresseIp());
+        summary.setOs(vm.getOs());
+        return summary;
+    }
+}
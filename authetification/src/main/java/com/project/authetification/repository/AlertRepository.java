@@ -0,0 +1,13 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Alert;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AlertRepository extends MongoRepository<Alert, String>, AlertRepositoryCustom {
+    List<Alert> findByStatusIn(Collection<String> statuses);
+}
@@ -0,0 +1,13 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.CursorPage;
+
+public interface AlertRepositoryCustom {
+
+    /**
+     * Alertes les plus récentes d'abord, paginées par curseur (openedAt, _id).
+     * Les filtres null sont ignorés ; cursor null = première page.
+     */
+    CursorPage<Alert> findRecent(String vmId, String status, String severity, String type, String cursor, int limit);
+}
@@ -0,0 +1,59 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.CursorPage;
+import com.project.authetification.model.KeysetCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class AlertRepositoryImpl implements AlertRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public CursorPage<Alert> findRecent(String vmId, String status, String severity, String type, String cursor,
+                                        int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (vmId != null) {
+            criteria.add(Criteria.where("vmId").is(vmId));
+        }
+        if (status != null) {
+            criteria.add(Criteria.where("status").is(status));
+        }
+        if (severity != null) {
+            criteria.add(Criteria.where("severity").is(severity));
+        }
+        if (type != null) {
+            // Alertes antérieures au champ type : règles à seuil
+            criteria.add("THRESHOLD".equals(type)
+                    ? Criteria.where("type").in(type, null)
+                    : Criteria.where("type").is(type));
+        }
+        if (cursor != null) {
+            // Reprise strictement après la dernière alerte de la page précédente
+            criteria.add(KeysetCursor.decode(cursor).after("openedAt"));
+        }
+
+        Query query = new Query();
+        if (!criteria.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(criteria));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "openedAt", "_id")).limit(limit + 1);
+
+        List<Alert> items = mongoTemplate.find(query, Alert.class);
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            Alert last = items.get(limit - 1);
+            nextCursor = KeysetCursor.encode(last.getOpenedAt(), last.getId());
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+}
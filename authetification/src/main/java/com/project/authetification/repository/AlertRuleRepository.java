@@ -0,0 +1,12 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.AlertRule;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AlertRuleRepository extends MongoRepository<AlertRule, String> {
+    List<AlertRule> findByIsActiveTrue();
+}
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface DemandeRepository extends MongoRepository<Demande, String> {
+public interface DemandeRepository extends MongoRepository<Demande, String>, DemandeRepositoryCustom {
     List<Demande> findByDemandeur_Id(String demandeurId);
     List<Demande> findByStatus(String status);
     List<Demande> findByValidateurCloud_Id(String validateurCloudId);
@@ -0,0 +1,23 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.ResourceFilter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Listes de demandes avec références @DBRef résolues en lot (cf. ReferenceBatchLoader)
+ */
+public interface DemandeRepositoryCustom {
+
+    List<Demande> findAllWithReferences();
+
+    List<Demande> findByStatusWithReferences(String status);
+
+    List<Demande> findByIdsWithReferences(Collection<String> ids);
+
+    List<Demande> findByDemandeurIdWithReferences(String demandeurId);
+
+    List<Demande> findByResourcesWithReferences(ResourceFilter filter, int limit);
+}
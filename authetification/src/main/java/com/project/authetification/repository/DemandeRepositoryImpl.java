@@ -0,0 +1,72 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.ResourceFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class DemandeRepositoryImpl implements DemandeRepositoryCustom {
+
+    private final ReferenceBatchLoader referenceBatchLoader;
+
+    @Override
+    public List<Demande> findAllWithReferences() {
+        return referenceBatchLoader.find(new Query(), Demande.class);
+    }
+
+    @Override
+    public List<Demande> findByStatusWithReferences(String status) {
+        return referenceBatchLoader.find(Query.query(Criteria.where("status").is(status)), Demande.class);
+    }
+
+    @Override
+    public List<Demande> findByIdsWithReferences(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return referenceBatchLoader.find(
+                Query.query(Criteria.where("_id").in(ids.stream().map(ReferenceBatchLoader::storedId).toList())),
+                Demande.class);
+    }
+
+    @Override
+    public List<Demande> findByDemandeurIdWithReferences(String demandeurId) {
+        return referenceBatchLoader.find(
+                Query.query(Criteria.where("demandeur.$id").is(ReferenceBatchLoader.storedId(demandeurId))),
+                Demande.class);
+    }
+
+    @Override
+    public List<Demande> findByResourcesWithReferences(ResourceFilter filter, int limit) {
+        Criteria criteria = new Criteria();
+        if (filter.getStatus() != null) {
+            criteria.and("status").is(filter.getStatus());
+        }
+        range(criteria, "vcpu", filter.getMinVcpu(), filter.getMaxVcpu());
+        range(criteria, "ramMib", filter.getMinRamMib(), filter.getMaxRamMib());
+        range(criteria, "disqueGib", filter.getMinDisqueGib(), filter.getMaxDisqueGib());
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "dateCreation"))
+                .limit(limit);
+        return referenceBatchLoader.find(query, Demande.class);
+    }
+
+    private static void range(Criteria criteria, String field, Number min, Number max) {
+        if (min == null && max == null) {
+            return;
+        }
+        Criteria bound = criteria.and(field);
+        if (min != null) {
+            bound.gte(min);
+        }
+        if (max != null) {
+            bound.lte(max);
+        }
+    }
+}
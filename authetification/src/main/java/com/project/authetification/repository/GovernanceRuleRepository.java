@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface GovernanceRuleRepository extends MongoRepository<GovernanceRule, String> {
+public interface GovernanceRuleRepository extends MongoRepository<GovernanceRule, String>, GovernanceRuleRepositoryCustom {
     List<GovernanceRule> findByIsActiveTrue();
     List<GovernanceRule> findByType(String type);
 }
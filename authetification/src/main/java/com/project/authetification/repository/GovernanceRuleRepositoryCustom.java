@@ -0,0 +1,13 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.GovernanceRule;
+
+import java.util.List;
+
+/**
+ * Listes de règles de gouvernance avec références @DBRef résolues en lot (cf. ReferenceBatchLoader)
+ */
+public interface GovernanceRuleRepositoryCustom {
+
+    List<GovernanceRule> findAllWithReferences();
+}
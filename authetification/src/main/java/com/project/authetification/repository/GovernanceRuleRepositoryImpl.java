@@ -0,0 +1,18 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.GovernanceRule;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class GovernanceRuleRepositoryImpl implements GovernanceRuleRepositoryCustom {
+
+    private final ReferenceBatchLoader referenceBatchLoader;
+
+    @Override
+    public List<GovernanceRule> findAllWithReferences() {
+        return referenceBatchLoader.find(new Query(), GovernanceRule.class);
+    }
+}
@@ -8,10 +8,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface MonitoringMetricsRepository extends MongoRepository<MonitoringMetrics, String> {
-    List<MonitoringMetrics> findByVm_Id(String vmId);
-    List<MonitoringMetrics> findByVm_IdAndTimestampBetween(String vmId, LocalDateTime start, LocalDateTime end);
+public interface MonitoringMetricsRepository extends MongoRepository<MonitoringMetrics, String>, MonitoringMetricsRepositoryCustom {
+    List<MonitoringMetrics> findByVmId(String vmId);
+    List<MonitoringMetrics> findByVmIdAndTimestampBetween(String vmId, LocalDateTime start, LocalDateTime end);
     List<MonitoringMetrics> findBySource(String source);
-    List<MonitoringMetrics> findByHasAlertsTrue();
 }
 
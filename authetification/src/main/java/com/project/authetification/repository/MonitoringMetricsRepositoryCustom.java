@@ -0,0 +1,13 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.CursorPage;
+import com.project.authetification.model.MonitoringMetrics;
+
+public interface MonitoringMetricsRepositoryCustom {
+
+    /**
+     * Métriques les plus récentes d'abord, paginées par curseur (timestamp, _id).
+     * Les filtres null sont ignorés ; cursor null = première page.
+     */
+    CursorPage<MonitoringMetrics> findRecent(String vmId, String source, Boolean hasAlerts, String cursor, int limit);
+}
@@ -0,0 +1,52 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.CursorPage;
+import com.project.authetification.model.KeysetCursor;
+import com.project.authetification.model.MonitoringMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class MonitoringMetricsRepositoryImpl implements MonitoringMetricsRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public CursorPage<MonitoringMetrics> findRecent(String vmId, String source, Boolean hasAlerts, String cursor, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (vmId != null) {
+            criteria.add(Criteria.where("vmId").is(vmId));
+        }
+        if (source != null) {
+            criteria.add(Criteria.where("source").is(source));
+        }
+        if (hasAlerts != null) {
+            criteria.add(Criteria.where("hasAlerts").is(hasAlerts));
+        }
+        if (cursor != null) {
+            // Reprise strictement après le dernier élément de la page précédente
+            criteria.add(KeysetCursor.decode(cursor).after("timestamp"));
+        }
+
+        Query query = new Query();
+        if (!criteria.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(criteria));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "timestamp", "_id")).limit(limit + 1);
+
+        List<MonitoringMetrics> items = mongoTemplate.find(query, MonitoringMetrics.class);
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            MonitoringMetrics last = items.get(limit - 1);
+            nextCursor = KeysetCursor.encode(last.getTimestamp(), last.getId());
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+}
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface NotificationRepository extends MongoRepository<Notification, String> {
+public interface NotificationRepository extends MongoRepository<Notification, String>, NotificationRepositoryCustom {
     List<Notification> findByUser_IdOrderByDateCreationDesc(String userId);
     long countByUser_IdAndIsReadFalse(String userId);
     List<Notification> findByUser_Id(String userId);
@@ -0,0 +1,13 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Notification;
+
+import java.util.List;
+
+/**
+ * Listes de notifications avec références @DBRef résolues en lot (cf. ReferenceBatchLoader)
+ */
+public interface NotificationRepositoryCustom {
+
+    List<Notification> findByUserIdWithReferences(String userId);
+}
@@ -0,0 +1,22 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.Notification;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class NotificationRepositoryImpl implements NotificationRepositoryCustom {
+
+    private final ReferenceBatchLoader referenceBatchLoader;
+
+    @Override
+    public List<Notification> findByUserIdWithReferences(String userId) {
+        Query query = Query.query(Criteria.where("user.$id").is(ReferenceBatchLoader.storedId(userId)))
+                .with(Sort.by(Sort.Direction.DESC, "dateCreation"));
+        return referenceBatchLoader.find(query, Notification.class);
+    }
+}
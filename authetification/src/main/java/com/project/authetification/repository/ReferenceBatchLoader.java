@@ -0,0 +1,157 @@
+package com.project.authetification.repository;
+
+import com.mongodb.DBRef;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mapping.Association;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lecture d'une liste d'entités avec résolution groupée des @DBRef : au lieu d'une
+ * requête par référence et par document, les ids référencés par toute la page sont
+ * rassemblés et chaque collection est lue en une seule requête $in, niveau par niveau
+ * (WorkOrder -> Demande, User, VM -> User, Demande). Les documents référencés sont
+ * substitués aux DBRef avant la conversion, que Spring Data lit alors sans requête.
+ * Une référence vers un document supprimé donne null (ou est retirée d'une liste),
+ * comme la résolution standard. Les modèles ne doivent pas contenir de cycle.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReferenceBatchLoader {
+
+    private final MongoTemplate mongoTemplate;
+
+    // Propriétés @DBRef par entité
+    private final Map<Class<?>, List<MongoPersistentProperty>> dbRefProperties = new ConcurrentHashMap<>();
+
+    /**
+     * Entités correspondant à la requête, références résolues : 1 requête pour la page,
+     * puis 1 par collection référencée et par niveau, quel que soit le nombre de documents
+     */
+    public <T> List<T> find(Query query, Class<T> type) {
+        MongoConverter converter = mongoTemplate.getConverter();
+        List<Document> documents = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(type));
+        if (documents.isEmpty()) {
+            return List.of();
+        }
+
+        // collection -> id -> document déjà lu
+        Map<String, Map<Object, Document>> loaded = new LinkedHashMap<>();
+        Set<Document> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Document, MongoPersistentEntity<?>> level = new IdentityHashMap<>();
+        MongoPersistentEntity<?> rootEntity = converter.getMappingContext().getRequiredPersistentEntity(type);
+        documents.forEach(document -> level.put(document, rootEntity));
+
+        while (!level.isEmpty()) {
+            fetchMissing(level, loaded);
+
+            Map<Document, MongoPersistentEntity<?>> next = new IdentityHashMap<>();
+            level.forEach((document, entity) -> {
+                for (MongoPersistentProperty property : dbRefPropertiesOf(entity)) {
+                    MongoPersistentEntity<?> target = converter.getMappingContext()
+                            .getRequiredPersistentEntity(property.getActualType());
+                    Object value = document.get(property.getFieldName());
+                    if (value instanceof DBRef ref) {
+                        Document resolved = resolve(ref, loaded);
+                        if (resolved == null) {
+                            document.remove(property.getFieldName());
+                        } else {
+                            document.put(property.getFieldName(), resolved);
+                            if (visited.add(resolved)) {
+                                next.put(resolved, target);
+                            }
+                        }
+                    } else if (value instanceof List<?> refs) {
+                        List<Document> resolvedList = new ArrayList<>(refs.size());
+                        for (Object item : refs) {
+                            Document resolved = item instanceof DBRef ref ? resolve(ref, loaded) : null;
+                            if (resolved != null) {
+                                resolvedList.add(resolved);
+                                if (visited.add(resolved)) {
+                                    next.put(resolved, target);
+                                }
+                            }
+                        }
+                        document.put(property.getFieldName(), resolvedList);
+                    }
+                }
+            });
+            level.clear();
+            level.putAll(next);
+        }
+
+        List<T> entities = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            entities.add(converter.read(type, document));
+        }
+        return entities;
+    }
+
+    /**
+     * Id d'entité tel que stocké dans un DBRef (ObjectId si la chaîne en est un)
+     */
+    public static Object storedId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    /**
+     * Lit en une requête $in par collection les documents référencés par ce niveau
+     * et pas encore chargés
+     */
+    private void fetchMissing(Map<Document, MongoPersistentEntity<?>> level, Map<String, Map<Object, Document>> loaded) {
+        Map<String, Set<Object>> missing = new LinkedHashMap<>();
+        level.forEach((document, entity) -> {
+            for (MongoPersistentProperty property : dbRefPropertiesOf(entity)) {
+                Object value = document.get(property.getFieldName());
+                List<?> refs = value instanceof List<?> list ? list : Collections.singletonList(value);
+                for (Object item : refs) {
+                    if (item instanceof DBRef ref
+                            && !loaded.getOrDefault(ref.getCollectionName(), Map.of()).containsKey(ref.getId())) {
+                        missing.computeIfAbsent(ref.getCollectionName(), c -> new LinkedHashSet<>()).add(ref.getId());
+                    }
+                }
+            }
+        });
+
+        missing.forEach((collection, ids) -> {
+            Map<Object, Document> byId = loaded.computeIfAbsent(collection, c -> new LinkedHashMap<>());
+            for (Document document : mongoTemplate.find(
+                    Query.query(Criteria.where("_id").in(ids)), Document.class, collection)) {
+                byId.put(document.get("_id"), document);
+            }
+        });
+    }
+
+    private static Document resolve(DBRef ref, Map<String, Map<Object, Document>> loaded) {
+        return loaded.getOrDefault(ref.getCollectionName(), Map.of()).get(ref.getId());
+    }
+
+    private List<MongoPersistentProperty> dbRefPropertiesOf(MongoPersistentEntity<?> entity) {
+        return dbRefProperties.computeIfAbsent(entity.getType(), type -> {
+            List<MongoPersistentProperty> properties = new ArrayList<>();
+            entity.doWithAssociations((Association<MongoPersistentProperty> association) -> {
+                if (association.getInverse().isDbReference()) {
+                    properties.add(association.getInverse());
+                }
+            });
+            return properties;
+        });
+    }
+}
@@ -0,0 +1,12 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.ResourcePool;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ResourcePoolRepository extends MongoRepository<ResourcePool, String> {
+    Optional<ResourcePool> findByTypeAndName(String type, String name);
+}
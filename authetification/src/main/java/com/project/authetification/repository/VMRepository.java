@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface VMRepository extends MongoRepository<VM, String> {
+public interface VMRepository extends MongoRepository<VM, String>, VMRepositoryCustom {
     List<VM> findByDemande_Id(String demandeId);
     Optional<VM> findByVmId(String vmId);
     List<VM> findByStatus(String status);
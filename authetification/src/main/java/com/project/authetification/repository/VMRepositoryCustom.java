@@ -0,0 +1,26 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.VM;
+
+import java.util.List;
+
+/**
+ * Listes de VMs avec références @DBRef résolues en lot (cf. ReferenceBatchLoader)
+ */
+public interface VMRepositoryCustom {
+
+    List<VM> findAllWithReferences();
+
+    List<VM> findByDemandeIdWithReferences(String demandeId);
+
+    /**
+     * VMs d'un statut, sans tenir compte de la casse
+     */
+    List<VM> findByStatusWithReferences(String status);
+
+    /**
+     * VMs réduites à leurs champs d'identification (id, vmId, vmName, adresseIp, os, status),
+     * sans leur demande : pour les index en mémoire, jamais pour être réenregistrées
+     */
+    List<VM> findAllSummaries();
+}
@@ -0,0 +1,43 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.VM;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+@RequiredArgsConstructor
+public class VMRepositoryImpl implements VMRepositoryCustom {
+
+    private final ReferenceBatchLoader referenceBatchLoader;
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<VM> findAllWithReferences() {
+        return referenceBatchLoader.find(new Query(), VM.class);
+    }
+
+    @Override
+    public List<VM> findByDemandeIdWithReferences(String demandeId) {
+        return referenceBatchLoader.find(
+                Query.query(Criteria.where("demande.$id").is(ReferenceBatchLoader.storedId(demandeId))),
+                VM.class);
+    }
+
+    @Override
+    public List<VM> findByStatusWithReferences(String status) {
+        return referenceBatchLoader.find(
+                Query.query(Criteria.where("status").regex("^" + Pattern.quote(status) + "$", "i")),
+                VM.class);
+    }
+
+    @Override
+    public List<VM> findAllSummaries() {
+        Query query = new Query();
+        query.fields().include("vmId", "vmName", "adresseIp", "os", "status");
+        return mongoTemplate.find(query, VM.class);
+    }
+}
@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface WorkOrderRepository extends MongoRepository<WorkOrder, String> {
+public interface WorkOrderRepository extends MongoRepository<WorkOrder, String>, WorkOrderRepositoryCustom {
     List<WorkOrder> findByDemande_Id(String demandeId);
     List<WorkOrder> findByAssigne_Id(String assigneId);
     List<WorkOrder> findByStatus(String status);
@@ -0,0 +1,15 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.WorkOrder;
+
+import java.util.List;
+
+/**
+ * Listes de workorders avec références @DBRef résolues en lot (cf. ReferenceBatchLoader)
+ */
+public interface WorkOrderRepositoryCustom {
+
+    List<WorkOrder> findByStatusWithReferences(String status);
+
+    List<WorkOrder> findByAssigneIdWithReferences(String assigneId);
+}
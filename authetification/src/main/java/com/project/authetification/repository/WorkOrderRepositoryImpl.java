@@ -0,0 +1,26 @@
+package com.project.authetification.repository;
+
+import com.project.authetification.model.WorkOrder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class WorkOrderRepositoryImpl implements WorkOrderRepositoryCustom {
+
+    private final ReferenceBatchLoader referenceBatchLoader;
+
+    @Override
+    public List<WorkOrder> findByStatusWithReferences(String status) {
+        return referenceBatchLoader.find(Query.query(Criteria.where("status").is(status)), WorkOrder.class);
+    }
+
+    @Override
+    public List<WorkOrder> findByAssigneIdWithReferences(String assigneId) {
+        return referenceBatchLoader.find(
+                Query.query(Criteria.where("assigne.$id").is(ReferenceBatchLoader.storedId(assigneId))),
+                WorkOrder.class);
+    }
+}
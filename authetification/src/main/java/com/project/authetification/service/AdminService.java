@@ -1,20 +1,25 @@
 package com.project.authetification.service;
 
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.AlertRule;
+import com.project.authetification.model.CursorPage;
 import com.project.authetification.model.Demande;
 import com.project.authetification.model.GovernanceRule;
 import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.ResourcePool;
 import com.project.authetification.model.User;
 import com.project.authetification.model.VM;
+import com.project.authetification.repository.AlertRuleRepository;
 import com.project.authetification.repository.DemandeRepository;
 import com.project.authetification.repository.GovernanceRuleRepository;
-import com.project.authetification.repository.MonitoringMetricsRepository;
+import com.project.authetification.repository.ResourcePoolRepository;
 import com.project.authetification.repository.UserRepository;
 import com.project.authetification.repository.VMRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,61 +29,31 @@ public class AdminService {
 
     private final DemandeRepository demandeRepository;
     private final VMRepository vmRepository;
-    private final MonitoringMetricsRepository monitoringMetricsRepository;
     private final GovernanceRuleRepository governanceRuleRepository;
     private final UserRepository userRepository;
+    private final MetricsStorageService metricsStorageService;
+    private final MonitoringService monitoringService;
+    private final DashboardStatsService dashboardStatsService;
+    private final AlertRuleRepository alertRuleRepository;
+    private final AlertEngine alertEngine;
+    private final CapacityForecastService capacityForecastService;
+    private final ResourcePoolRepository resourcePoolRepository;
+    private final ResourceLedger resourceLedger;
+    private final GovernanceEngine governanceEngine;
+    private final ResourceQuantities resourceQuantities;
 
     /**
      * Récupère les statistiques du tableau de bord
      */
     public Map<String, Object> getDashboardStats() {
-        Map<String, Object> stats = new HashMap<>();
-
-        // Statistiques des demandes
-        List<Demande> toutesDemandes = demandeRepository.findAll();
-        stats.put("totalDemandes", toutesDemandes.size());
-        stats.put("demandesEnAttente", demandeRepository.findByStatus("EN_ATTENTE").size());
-        stats.put("demandesValidees", demandeRepository.findByStatus("VALIDE").size());
-        stats.put("demandesEnProvisionnement", demandeRepository.findByStatus("EN_PROVISIONNEMENT").size());
-        stats.put("demandesProvisionnees", demandeRepository.findByStatus("PROVISIONNEE").size());
-        stats.put("demandesRefusees", demandeRepository.findByStatus("REFUSEE").size());
-
-        // Statistiques des VMs
-        List<VM> toutesVMs = vmRepository.findAll();
-        stats.put("totalVMs", toutesVMs.size());
-        stats.put("vmsRunning", vmRepository.findByStatus("RUNNING").size());
-        stats.put("vmsStopped", vmRepository.findByStatus("STOPPED").size());
-        stats.put("vmsMonitored", vmRepository.findByMonitored(true).size());
-
-        // Statistiques de monitoring
-        List<MonitoringMetrics> alerts = monitoringMetricsRepository.findByHasAlertsTrue();
-        stats.put("totalAlerts", alerts.size());
-
-        // Utilisation moyenne des ressources
-        List<MonitoringMetrics> recentMetrics = monitoringMetricsRepository.findAll();
-        if (!recentMetrics.isEmpty()) {
-            double avgCpu = recentMetrics.stream()
-                    .filter(m -> m.getCpuUsage() != null)
-                    .mapToDouble(MonitoringMetrics::getCpuUsage)
-                    .average()
-                    .orElse(0.0);
-            double avgRam = recentMetrics.stream()
-                    .filter(m -> m.getRamUsage() != null)
-                    .mapToDouble(MonitoringMetrics::getRamUsage)
-                    .average()
-                    .orElse(0.0);
-            stats.put("avgCpuUsage", avgCpu);
-            stats.put("avgRamUsage", avgRam);
-        }
-
-        return stats;
+        return dashboardStatsService.getSnapshot();
     }
 
     /**
      * Récupère toutes les règles de gouvernance
      */
     public List<GovernanceRule> getAllGovernanceRules() {
-        return governanceRuleRepository.findAll();
+        return governanceRuleRepository.findAllWithReferences();
     }
 
     /**
@@ -101,8 +76,11 @@ public class AdminService {
         if (rule.getIsActive() == null) {
             rule.setIsActive(true);
         }
+        GovernanceEngine.validate(rule);
 
-        return governanceRuleRepository.save(rule);
+        GovernanceRule saved = governanceRuleRepository.save(rule);
+        governanceEngine.reloadRules();
+        return saved;
     }
 
     /**
@@ -124,8 +102,11 @@ public class AdminService {
         rule.setRestrictedNetworks(ruleDetails.getRestrictedNetworks());
         rule.setIsActive(ruleDetails.getIsActive());
         rule.setDateModification(LocalDateTime.now());
+        GovernanceEngine.validate(rule);
 
-        return governanceRuleRepository.save(rule);
+        GovernanceRule saved = governanceRuleRepository.save(rule);
+        governanceEngine.reloadRules();
+        return saved;
     }
 
     /**
@@ -138,39 +119,240 @@ public class AdminService {
         rule.setIsActive(false);
         rule.setDateModification(LocalDateTime.now());
 
-        return governanceRuleRepository.save(rule);
+        GovernanceRule saved = governanceRuleRepository.save(rule);
+        governanceEngine.reloadRules();
+        return saved;
+    }
+
+    /**
+     * Mesure le débit d'évaluation des règles de gouvernance compilées
+     */
+    public Map<String, Object> benchmarkGovernanceRules(int evaluations, int syntheticRules) {
+        return governanceEngine.benchmark(evaluations, syntheticRules);
+    }
+
+    /**
+     * Recalcule vcpu / ramMib / disqueGib des demandes et VMs (manquants, ou tous si force)
+     */
+    public Map<String, Object> backfillResourceQuantities(boolean force) {
+        return resourceQuantities.backfill(force);
+    }
+
+    /**
+     * Récupère les pools de ressources (datastores, réseaux, quotas clients)
+     */
+    public List<ResourcePool> getAllResourcePools() {
+        return resourcePoolRepository.findAll();
+    }
+
+    /**
+     * Utilisation actuelle de chaque pool d'après le registre des réservations
+     */
+    public List<Map<String, Object>> getResourceUsage() {
+        return resourceLedger.getUsage();
+    }
+
+    /**
+     * Crée un pool de ressources, pris en compte immédiatement par les validations
+     */
+    public ResourcePool createResourcePool(ResourcePool pool) {
+        validateResourcePool(pool);
+        if (resourcePoolRepository.findByTypeAndName(pool.getType(), pool.getName()).isPresent()) {
+            throw new IllegalArgumentException("Pool déjà existant: " + pool.getType() + " " + pool.getName());
+        }
+        pool.setDateCreation(LocalDateTime.now());
+        pool.setDateModification(LocalDateTime.now());
+        ResourcePool saved = resourcePoolRepository.save(pool);
+        resourceLedger.applyPool(saved);
+        return saved;
+    }
+
+    /**
+     * Modifie les capacités d'un pool de ressources
+     */
+    public ResourcePool updateResourcePool(String poolId, ResourcePool poolDetails) {
+        ResourcePool pool = resourcePoolRepository.findById(poolId)
+                .orElseThrow(() -> new RuntimeException("Pool not found: " + poolId));
+
+        pool.setDiskGb(poolDetails.getDiskGb());
+        pool.setAddresses(poolDetails.getAddresses());
+        pool.setVcpu(poolDetails.getVcpu());
+        pool.setRamGb(poolDetails.getRamGb());
+        validateResourcePool(pool);
+        pool.setDateModification(LocalDateTime.now());
+
+        ResourcePool saved = resourcePoolRepository.save(pool);
+        resourceLedger.applyPool(saved);
+        return saved;
+    }
+
+    /**
+     * Supprime un pool de ressources (ressource non limitée ensuite)
+     */
+    public void deleteResourcePool(String poolId) {
+        ResourcePool pool = resourcePoolRepository.findById(poolId)
+                .orElseThrow(() -> new RuntimeException("Pool not found: " + poolId));
+        resourcePoolRepository.delete(pool);
+        resourceLedger.removePool(pool);
+    }
+
+    private static void validateResourcePool(ResourcePool pool) {
+        if (pool.getName() == null || pool.getName().isBlank()) {
+            throw new IllegalArgumentException("Nom du pool obligatoire");
+        }
+        if (!List.of(ResourcePool.TYPE_DATASTORE, ResourcePool.TYPE_NETWORK, ResourcePool.TYPE_SUBSCRIPTION)
+                .contains(pool.getType())) {
+            throw new IllegalArgumentException("Type de pool inconnu: " + pool.getType());
+        }
+        for (Long capacity : new Long[]{pool.getDiskGb(), pool.getAddresses(), pool.getVcpu(), pool.getRamGb()}) {
+            if (capacity != null && capacity < 0) {
+                throw new IllegalArgumentException("Capacité négative");
+            }
+        }
+    }
+
+    /**
+     * Récupère toutes les règles d'alerte
+     */
+    public List<AlertRule> getAllAlertRules() {
+        return alertRuleRepository.findAll();
+    }
+
+    /**
+     * Crée une règle d'alerte, prise en compte immédiatement par le moteur d'alertes
+     */
+    public AlertRule createAlertRule(AlertRule rule) {
+        if (rule.getIsActive() == null) {
+            rule.setIsActive(true);
+        }
+        AlertEngine.validate(rule);
+        rule.setDateCreation(LocalDateTime.now());
+        rule.setDateModification(LocalDateTime.now());
+
+        AlertRule saved = alertRuleRepository.save(rule);
+        alertEngine.reloadRules();
+        return saved;
+    }
+
+    /**
+     * Met à jour une règle d'alerte
+     */
+    public AlertRule updateAlertRule(String ruleId, AlertRule ruleDetails) {
+        AlertRule rule = alertRuleRepository.findById(ruleId)
+                .orElseThrow(() -> new RuntimeException("Alert rule not found: " + ruleId));
+
+        rule.setNom(ruleDetails.getNom());
+        rule.setDescription(ruleDetails.getDescription());
+        rule.setMetric(ruleDetails.getMetric());
+        rule.setOperator(ruleDetails.getOperator());
+        rule.setThreshold(ruleDetails.getThreshold());
+        rule.setRecoveryThreshold(ruleDetails.getRecoveryThreshold());
+        rule.setForSamples(ruleDetails.getForSamples());
+        rule.setRecoverSamples(ruleDetails.getRecoverSamples());
+        rule.setSeverity(ruleDetails.getSeverity());
+        if (ruleDetails.getIsActive() != null) {
+            rule.setIsActive(ruleDetails.getIsActive());
+        }
+        AlertEngine.validate(rule);
+        rule.setDateModification(LocalDateTime.now());
+
+        AlertRule saved = alertRuleRepository.save(rule);
+        alertEngine.reloadRules();
+        return saved;
+    }
+
+    /**
+     * Désactive une règle d'alerte : ses alertes actives sont résolues à la métrique suivante
+     */
+    public AlertRule disableAlertRule(String ruleId) {
+        AlertRule rule = alertRuleRepository.findById(ruleId)
+                .orElseThrow(() -> new RuntimeException("Alert rule not found: " + ruleId));
+
+        rule.setIsActive(false);
+        rule.setDateModification(LocalDateTime.now());
+
+        AlertRule saved = alertRuleRepository.save(rule);
+        alertEngine.reloadRules();
+        return saved;
     }
 
     /**
      * Récupère toutes les demandes
      */
     public List<Demande> getAllDemandes() {
-        return demandeRepository.findAll();
+        return demandeRepository.findAllWithReferences();
     }
 
     /**
      * Récupère toutes les VMs
      */
     public List<VM> getAllVMs() {
-        return vmRepository.findAll();
+        return vmRepository.findAllWithReferences();
     }
 
     /**
      * Récupère les métriques de monitoring récentes
      */
-    public List<MonitoringMetrics> getRecentMonitoringMetrics(int limit) {
-        List<MonitoringMetrics> allMetrics = monitoringMetricsRepository.findAll();
-        return allMetrics.stream()
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .limit(limit)
-                .toList();
+    public CursorPage<MonitoringMetrics> getRecentMonitoringMetrics(String vmId, String source, Boolean hasAlerts,
+                                                                    String cursor, int limit) {
+        return monitoringService.getRecentMetricsPage(vmId, source, hasAlerts, cursor, limit);
     }
 
     /**
      * Récupère les alertes de monitoring
      */
-    public List<MonitoringMetrics> getMonitoringAlerts() {
-        return monitoringMetricsRepository.findByHasAlertsTrue();
+    public CursorPage<Alert> getMonitoringAlerts(String vmId, String status, String severity, String type,
+                                                 String cursor, int limit) {
+        return monitoringService.getAlertsPage(vmId, status, severity, type, cursor, limit);
+    }
+
+    /**
+     * État du stockage des métriques (mode, type de collection, tailles)
+     */
+    public Map<String, Object> getMetricsStorageStatus() {
+        return metricsStorageService.getStorageStatus();
+    }
+
+    /**
+     * Migre monitoring_metrics vers une collection time-series
+     */
+    public Map<String, Object> migrateMetricsToTimeSeries() {
+        return metricsStorageService.migrateToTimeSeries();
+    }
+
+    /**
+     * Réécrit monitoring_metrics au schéma compact
+     */
+    public Map<String, Object> migrateMetricsToCompactSchema() {
+        return metricsStorageService.migrateToCompactSchema();
+    }
+
+    /**
+     * Compare octets par document et débit d'écriture de l'ancien schéma et du schéma compact
+     */
+    public Map<String, Object> benchmarkMetricsSchema(int documents) {
+        return metricsStorageService.benchmarkSchema(documents);
+    }
+
+    /**
+     * Compare la latence des requêtes par plage et la taille de stockage des layouts
+     */
+    public Map<String, Object> benchmarkMetricsStorage(int queries, int windowHours) {
+        return metricsStorageService.benchmark(queries, Duration.ofHours(windowHours));
+    }
+
+    /**
+     * Lance immédiatement une passe de prévision de capacité
+     */
+    public Map<String, Object> runCapacityForecast() {
+        return capacityForecastService.run();
+    }
+
+    /**
+     * Mesure l'ajustement des prévisions sur une flotte synthétique
+     */
+    public Map<String, Object> benchmarkCapacityForecast(int vms, int days) {
+        return capacityForecastService.benchmark(vms, days);
     }
 
     /**
@@ -0,0 +1,598 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.AlertRule;
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.repository.AlertRepository;
+import com.project.authetification.repository.AlertRuleRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoublePredicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Moteur d'alertes à état : chaque métrique reçue est évaluée contre les règles
+ * actives en tenant compte de l'historique de la VM (métriques consécutives,
+ * hystérésis au retour à la normale). Les règles sont compilées une fois et
+ * rechargées quand elles changent ; les alertes ne sont écrites en base qu'aux
+ * changements d'état (ouverture, acquittement, résolution). Les écarts à la normale
+ * de chaque VM détectés par AnomalyDetector suivent le même cycle (alertes ANOMALY).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AlertEngine {
+
+    public static final String OPEN = "OPEN";
+    public static final String ACKNOWLEDGED = "ACKNOWLEDGED";
+    public static final String RESOLVED = "RESOLVED";
+
+    /**
+     * L'alerte n'est plus ouverte (acquittée ou résolue entre-temps)
+     */
+    public static class AlertStateConflictException extends RuntimeException {
+        public AlertStateConflictException(String message) {
+            super(message);
+        }
+    }
+
+    public static final String TYPE_THRESHOLD = "THRESHOLD";
+    public static final String TYPE_ANOMALY = "ANOMALY";
+
+    private final AlertRuleRepository alertRuleRepository;
+    private final AlertRepository alertRepository;
+    private final MeterRegistry meterRegistry;
+    private final MongoTemplate mongoTemplate;
+    private final LiveMetricsBroadcaster liveMetricsBroadcaster;
+    private final AnomalyDetector anomalyDetector;
+
+    // Crée les règles CPU / RAM / disponibilité si aucune règle n'existe
+    @Value("${monitoring.alerts.seed-default-rules:true}")
+    private boolean seedDefaultRules;
+
+    private volatile List<CompiledRule> rules = List.of();
+    private volatile List<CompiledRule> anomalyRules = List.of();
+    private volatile String rulesFingerprint = "";
+
+    private final ConcurrentHashMap<String, VmState> states = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        Gauge.builder("monitoring.alerts.active", this, AlertEngine::getActiveAlertCount)
+                .register(meterRegistry);
+        ensureIndexes();
+        try {
+            if (seedDefaultRules && alertRuleRepository.count() == 0) {
+                alertRuleRepository.saveAll(defaultRules());
+            }
+            reloadRules();
+            anomalyRules = anomalyDetector.getRules().stream().map(AlertEngine::compileAnomaly).toList();
+            restoreActiveAlerts();
+        } catch (Exception e) {
+            log.error("Initialisation du moteur d'alertes impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Prend en compte les règles modifiées par une autre instance
+     */
+    @Scheduled(fixedDelayString = "${monitoring.alerts.rules-refresh-ms:30000}")
+    public void refreshRules() {
+        try {
+            reloadRules();
+        } catch (Exception e) {
+            log.warn("Rechargement des règles d'alerte impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recompile les règles actives si elles ont changé depuis le dernier chargement
+     */
+    public synchronized void reloadRules() {
+        List<AlertRule> active = alertRuleRepository.findByIsActiveTrue();
+        String fingerprint = active.stream()
+                .map(rule -> rule.getId() + "@" + rule.getDateModification())
+                .sorted()
+                .collect(Collectors.joining(","));
+        if (fingerprint.equals(rulesFingerprint)) {
+            return;
+        }
+
+        List<CompiledRule> compiled = new ArrayList<>(active.size());
+        for (AlertRule rule : active) {
+            try {
+                compiled.add(compile(rule));
+            } catch (IllegalArgumentException e) {
+                log.warn("Règle d'alerte {} ignorée: {}", rule.getId(), e.getMessage());
+            }
+        }
+        rules = List.copyOf(compiled);
+        rulesFingerprint = fingerprint;
+        log.info("{} règle(s) d'alerte chargée(s)", compiled.size());
+    }
+
+    /**
+     * Vérifie qu'une règle est compilable (métrique, opérateur, seuils)
+     */
+    public static void validate(AlertRule rule) {
+        compile(rule);
+    }
+
+    /**
+     * Évalue une métrique : met à jour l'état de la VM, ouvre / résout les alertes
+     * et renseigne hasAlerts / alertMessage avec les alertes actives de la VM
+     */
+    public void evaluate(MonitoringMetrics metrics) {
+        String vmId = metrics.getVmId();
+        if (vmId == null) {
+            return;
+        }
+        String vmName = metrics.getVm() != null ? metrics.getVm().getVmName() : null;
+        LocalDateTime at = metrics.getTimestamp() != null ? metrics.getTimestamp() : LocalDateTime.now();
+        List<CompiledRule> current = rules;
+        VmState state = states.computeIfAbsent(vmId, id -> new VmState());
+
+        List<String> messages = new ArrayList<>();
+        List<Alert> transitions = new ArrayList<>(0);
+        state.lock.lock();
+        try {
+            Set<String> ruleIds = new HashSet<>();
+            for (CompiledRule rule : current) {
+                ruleIds.add(rule.id());
+                double value = rule.extractor().applyAsDouble(metrics);
+                RuleState ruleState = state.byRule.computeIfAbsent(rule.id(), id -> new RuleState());
+                if (!Double.isNaN(value)) {
+                    step(rule, ruleState, vmId, vmName, value, at, transitions);
+                }
+            }
+
+            // Règles d'anomalie : évaluées sur le z-score de chaque métrique suivie
+            List<CompiledRule> anomalies = anomalyRules;
+            double[] scores = anomalyDetector.update(vmId, metrics);
+            for (int i = 0; i < scores.length && i < anomalies.size(); i++) {
+                CompiledRule rule = anomalies.get(i);
+                ruleIds.add(rule.id());
+                RuleState ruleState = state.byRule.computeIfAbsent(rule.id(), id -> new RuleState());
+                if (!Double.isNaN(scores[i])) {
+                    step(rule, ruleState, vmId, vmName, scores[i], at, transitions);
+                }
+            }
+
+            // Alertes des règles supprimées ou désactivées
+            Iterator<Map.Entry<String, RuleState>> it = state.byRule.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, RuleState> entry = it.next();
+                if (!ruleIds.contains(entry.getKey())) {
+                    if (entry.getValue().alert != null) {
+                        resolve(entry.getValue(), at, transitions);
+                    }
+                    it.remove();
+                } else if (entry.getValue().alert != null) {
+                    messages.add(entry.getValue().alert.getMessage());
+                }
+            }
+        } finally {
+            unlockAndPersist(state, transitions);
+        }
+
+        metrics.setHasAlerts(!messages.isEmpty());
+        metrics.setAlertMessage(messages.isEmpty() ? null : String.join(" ", messages));
+    }
+
+    /**
+     * Acquitte une alerte ouverte
+     *
+     * @throws AlertStateConflictException si l'alerte est déjà acquittée ou résolue
+     */
+    public Alert acknowledge(String alertId, String username) {
+        Alert stored = alertRepository.findById(alertId)
+                .orElseThrow(() -> new RuntimeException("Alert not found: " + alertId));
+        if (!OPEN.equals(stored.getStatus())) {
+            throw new AlertStateConflictException("Alerte déjà acquittée ou résolue: " + alertId);
+        }
+
+        VmState state = states.get(stored.getVmId());
+        if (state != null) {
+            List<Alert> transitions = new ArrayList<>(1);
+            state.lock.lock();
+            try {
+                RuleState ruleState = state.byRule.get(stored.getRuleId());
+                if (ruleState != null && ruleState.alert != null && alertId.equals(ruleState.alert.getId())) {
+                    if (!OPEN.equals(ruleState.alert.getStatus())) {
+                        throw new AlertStateConflictException("Alerte déjà acquittée: " + alertId);
+                    }
+                    // L'alerte en mémoire est celle qui sera résolue plus tard
+                    markAcknowledged(ruleState.alert, username);
+                    transitions.add(snapshot(ruleState.alert));
+                }
+            } finally {
+                unlockAndPersist(state, transitions);
+            }
+            if (!transitions.isEmpty()) {
+                return transitions.get(0);
+            }
+        }
+        // Alerte absente de la mémoire (ou résolue depuis la lecture) : écriture conditionnée
+        // au statut OPEN, pour ne jamais rouvrir en ACKNOWLEDGED une alerte résolue
+        Alert saved = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(alertId).and("status").is(OPEN)),
+                new Update().set("status", ACKNOWLEDGED)
+                        .set("acknowledgedAt", LocalDateTime.now())
+                        .set("acknowledgedBy", username),
+                FindAndModifyOptions.options().returnNew(true),
+                Alert.class);
+        if (saved == null) {
+            throw new AlertStateConflictException("Alerte déjà acquittée ou résolue: " + alertId);
+        }
+        meterRegistry.counter("monitoring.alerts.transitions", "transition", "ack", "severity", saved.getSeverity())
+                .increment();
+        liveMetricsBroadcaster.publishAlert(saved);
+        return saved;
+    }
+
+    /**
+     * Alertes ouvertes ou acquittées, les plus récentes d'abord (toutes VMs si vmId est null)
+     */
+    public List<Alert> getActiveAlerts(String vmId) {
+        List<Alert> active = new ArrayList<>();
+        states.forEach((id, state) -> {
+            if (vmId == null || vmId.equals(id)) {
+                state.lock.lock();
+                try {
+                    state.byRule.values().stream()
+                            .filter(ruleState -> ruleState.alert != null)
+                            .forEach(ruleState -> active.add(ruleState.alert));
+                } finally {
+                    state.lock.unlock();
+                }
+            }
+        });
+        active.sort(Comparator.comparing(Alert::getOpenedAt).reversed());
+        return active;
+    }
+
+    public int getActiveAlertCount() {
+        int count = 0;
+        for (VmState state : states.values()) {
+            state.lock.lock();
+            try {
+                for (RuleState ruleState : state.byRule.values()) {
+                    if (ruleState.alert != null) {
+                        count++;
+                    }
+                }
+            } finally {
+                state.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Nombre d'alertes actives (ouvertes, acquittées, par sévérité), sans requête
+     */
+    public Map<String, Object> countActiveAlerts() {
+        List<Alert> active = getActiveAlerts(null);
+        Map<String, Long> bySeverity = active.stream()
+                .collect(Collectors.groupingBy(alert -> String.valueOf(alert.getSeverity()), TreeMap::new,
+                        Collectors.counting()));
+
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("total", active.size());
+        counts.put("open", active.stream().filter(alert -> OPEN.equals(alert.getStatus())).count());
+        counts.put("acknowledged", active.stream().filter(alert -> ACKNOWLEDGED.equals(alert.getStatus())).count());
+        counts.put("bySeverity", bySeverity);
+        return counts;
+    }
+
+    private void step(CompiledRule rule, RuleState ruleState, String vmId, String vmName, double value,
+                      LocalDateTime at, List<Alert> transitions) {
+        if (ruleState.alert == null) {
+            if (!rule.breached().test(value)) {
+                ruleState.breachStreak = 0;
+            } else if (++ruleState.breachStreak >= rule.forSamples()) {
+                open(rule, ruleState, vmId, vmName, value, at, transitions);
+            }
+        } else {
+            if (!rule.recovered().test(value)) {
+                ruleState.recoverStreak = 0;
+            } else if (++ruleState.recoverStreak >= rule.recoverSamples()) {
+                resolve(ruleState, at, transitions);
+            }
+        }
+    }
+
+    private void open(CompiledRule rule, RuleState ruleState, String vmId, String vmName, double value,
+                      LocalDateTime at, List<Alert> transitions) {
+        AlertRule source = rule.rule();
+        Alert alert = new Alert();
+        alert.setId(new ObjectId().toHexString());
+        alert.setVmId(vmId);
+        alert.setVmName(vmName);
+        alert.setRuleId(source.getId());
+        alert.setRuleName(source.getNom());
+        alert.setMetric(source.getMetric());
+        alert.setSeverity(source.getSeverity());
+        alert.setType(rule.type());
+        alert.setStatus(OPEN);
+        alert.setTriggerValue(value);
+        alert.setOpenedAt(at);
+        alert.setMessage(String.format(Locale.ROOT, "%s: %s %s %.2f (valeur %.2f).",
+                source.getNom(), source.getMetric(), rule.symbol(), source.getThreshold(), value));
+        if (TYPE_ANOMALY.equals(rule.type())) {
+            // value = z-score : l'alerte porte la valeur de la métrique et la normale de la VM
+            AnomalyDetector.Observation observation = anomalyDetector.lastObservation(vmId, source.getMetric());
+            if (observation != null) {
+                alert.setTriggerValue(observation.value());
+                alert.setExpectedValue(observation.expected());
+                alert.setMessage(String.format(Locale.ROOT, "%s: %s à %.2f, habituellement %.2f ± %.2f (z = %.1f).",
+                        source.getNom(), source.getMetric(), observation.value(), observation.expected(),
+                        observation.stdDev(), observation.score()));
+            }
+        }
+
+        transitions.add(snapshot(alert));
+        ruleState.alert = alert;
+        ruleState.breachStreak = 0;
+        ruleState.recoverStreak = 0;
+        meterRegistry.counter("monitoring.alerts.transitions", "transition", "open", "severity", source.getSeverity())
+                .increment();
+        log.info("Alerte ouverte sur la VM {}: {}", vmId, alert.getMessage());
+    }
+
+    private void resolve(RuleState ruleState, LocalDateTime at, List<Alert> transitions) {
+        Alert alert = ruleState.alert;
+        alert.setStatus(RESOLVED);
+        alert.setResolvedAt(at);
+
+        transitions.add(snapshot(alert));
+        ruleState.alert = null;
+        ruleState.breachStreak = 0;
+        ruleState.recoverStreak = 0;
+        meterRegistry.counter("monitoring.alerts.transitions", "transition", "resolve", "severity", alert.getSeverity())
+                .increment();
+        log.info("Alerte résolue sur la VM {}: {}", alert.getVmId(), alert.getRuleName());
+    }
+
+    /**
+     * Relâche le verrou d'une VM puis écrit et diffuse ses transitions, sans garder le
+     * verrou pendant les allers-retours Mongo. Le verrou d'écriture est pris avant de
+     * relâcher l'état : les transitions d'une VM sont écrites dans l'ordre
+     */
+    private void unlockAndPersist(VmState state, List<Alert> transitions) {
+        if (transitions.isEmpty()) {
+            state.lock.unlock();
+            return;
+        }
+        state.persistLock.lock();
+        state.lock.unlock();
+        try {
+            for (Alert alert : transitions) {
+                alertRepository.save(alert);
+                liveMetricsBroadcaster.publishAlert(alert);
+            }
+        } finally {
+            state.persistLock.unlock();
+        }
+    }
+
+    /**
+     * Copie de l'alerte à écrire : l'alerte en mémoire peut changer pendant l'écriture
+     */
+    private static Alert snapshot(Alert alert) {
+        Alert copy = new Alert();
+        copy.setId(alert.getId());
+        copy.setVmId(alert.getVmId());
+        copy.setVmName(alert.getVmName());
+        copy.setType(alert.getType());
+        copy.setRuleId(alert.getRuleId());
+        copy.setRuleName(alert.getRuleName());
+        copy.setMetric(alert.getMetric());
+        copy.setSeverity(alert.getSeverity());
+        copy.setStatus(alert.getStatus());
+        copy.setMessage(alert.getMessage());
+        copy.setTriggerValue(alert.getTriggerValue());
+        copy.setExpectedValue(alert.getExpectedValue());
+        copy.setOpenedAt(alert.getOpenedAt());
+        copy.setAcknowledgedAt(alert.getAcknowledgedAt());
+        copy.setAcknowledgedBy(alert.getAcknowledgedBy());
+        copy.setResolvedAt(alert.getResolvedAt());
+        return copy;
+    }
+
+    private void markAcknowledged(Alert alert, String username) {
+        alert.setStatus(ACKNOWLEDGED);
+        alert.setAcknowledgedAt(LocalDateTime.now());
+        alert.setAcknowledgedBy(username);
+        meterRegistry.counter("monitoring.alerts.transitions", "transition", "ack", "severity", alert.getSeverity())
+                .increment();
+    }
+
+    /**
+     * Index des listes d'alertes (plus récentes d'abord, paginées par (openedAt, _id))
+     * filtrées par statut, VM ou sévérité
+     */
+    private void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(Alert.class);
+        Map<String, List<String>> prefixes = new LinkedHashMap<>();
+        prefixes.put("alerts_recent", List.of());
+        prefixes.put("alerts_by_status", List.of("status"));
+        prefixes.put("alerts_by_vm", List.of("vmId"));
+        prefixes.put("alerts_by_vm_status", List.of("vmId", "status"));
+        prefixes.put("alerts_by_severity_status", List.of("severity", "status"));
+
+        prefixes.forEach((name, fields) -> {
+            Index index = new Index().named(name);
+            fields.forEach(field -> index.on(field, Sort.Direction.ASC));
+            index.on("openedAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC);
+            try {
+                indexOps.ensureIndex(index);
+            } catch (Exception e) {
+                log.warn("Index {} non créé sur alerts: {}", name, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Recharge en mémoire les alertes non résolues (redémarrage sans doublons)
+     */
+    private void restoreActiveAlerts() {
+        List<Alert> active = alertRepository.findByStatusIn(List.of(OPEN, ACKNOWLEDGED));
+        for (Alert alert : active) {
+            VmState state = states.computeIfAbsent(alert.getVmId(), id -> new VmState());
+            state.lock.lock();
+            try {
+                state.byRule.computeIfAbsent(alert.getRuleId(), id -> new RuleState()).alert = alert;
+            } finally {
+                state.lock.unlock();
+            }
+        }
+        log.info("{} alerte(s) active(s) rechargée(s)", active.size());
+    }
+
+    private static CompiledRule compile(AlertRule rule) {
+        if (rule.getMetric() == null || rule.getOperator() == null || rule.getThreshold() == null) {
+            throw new IllegalArgumentException("metric, operator et threshold sont obligatoires");
+        }
+        ToDoubleFunction<MonitoringMetrics> extractor = switch (rule.getMetric()) {
+            case "cpuUsage" -> m -> orNaN(m.getCpuUsage());
+            case "ramUsage" -> m -> orNaN(m.getRamUsage());
+            case "diskUsage" -> m -> orNaN(m.getDiskUsage());
+            case "networkLatency" -> m -> orNaN(m.getNetworkLatency());
+            case "networkThroughput" -> m -> orNaN(m.getNetworkThroughput());
+            case "isAvailable" -> m -> m.getIsAvailable() == null ? Double.NaN : (m.getIsAvailable() ? 1 : 0);
+            default -> throw new IllegalArgumentException("Métrique inconnue: " + rule.getMetric());
+        };
+
+        double threshold = rule.getThreshold();
+        double recovery = rule.getRecoveryThreshold() != null ? rule.getRecoveryThreshold() : threshold;
+        String operator = rule.getOperator().toUpperCase(Locale.ROOT);
+        DoublePredicate breached;
+        DoublePredicate recovered;
+        String symbol;
+        switch (operator) {
+            case "GT", "GTE" -> {
+                if (recovery > threshold) {
+                    throw new IllegalArgumentException("recoveryThreshold doit être <= threshold");
+                }
+                boolean inclusive = "GTE".equals(operator);
+                breached = v -> inclusive ? v >= threshold : v > threshold;
+                recovered = rule.getRecoveryThreshold() != null ? v -> v < recovery : breached.negate();
+                symbol = inclusive ? ">=" : ">";
+            }
+            case "LT", "LTE" -> {
+                if (recovery < threshold) {
+                    throw new IllegalArgumentException("recoveryThreshold doit être >= threshold");
+                }
+                boolean inclusive = "LTE".equals(operator);
+                breached = v -> inclusive ? v <= threshold : v < threshold;
+                recovered = rule.getRecoveryThreshold() != null ? v -> v > recovery : breached.negate();
+                symbol = inclusive ? "<=" : "<";
+            }
+            default -> throw new IllegalArgumentException("Opérateur inconnu: " + rule.getOperator());
+        }
+
+        int forSamples = rule.getForSamples() != null ? Math.max(1, rule.getForSamples()) : 1;
+        int recoverSamples = rule.getRecoverSamples() != null ? Math.max(1, rule.getRecoverSamples()) : 1;
+        return new CompiledRule(rule, TYPE_THRESHOLD, extractor, breached, recovered, symbol, forSamples, recoverSamples);
+    }
+
+    /**
+     * Règle d'anomalie : déclenchée quand |z| >= threshold, levée quand |z| < recoveryThreshold
+     */
+    private static CompiledRule compileAnomaly(AlertRule rule) {
+        double threshold = rule.getThreshold();
+        double recovery = rule.getRecoveryThreshold() != null ? rule.getRecoveryThreshold() : threshold;
+        if (recovery > threshold) {
+            throw new IllegalArgumentException("Le z de retour à la normale doit être <= au z de déclenchement");
+        }
+        return new CompiledRule(rule, TYPE_ANOMALY, m -> Double.NaN,
+                z -> Math.abs(z) >= threshold, z -> Math.abs(z) < recovery, "|z| >=",
+                Math.max(1, rule.getForSamples()), Math.max(1, rule.getRecoverSamples()));
+    }
+
+    private static double orNaN(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static List<AlertRule> defaultRules() {
+        return List.of(
+                defaultRule("CPU élevé", "cpuUsage", "GT", 90.0, 80.0, 3, 2, "WARNING"),
+                defaultRule("RAM élevée", "ramUsage", "GT", 90.0, 80.0, 3, 2, "WARNING"),
+                defaultRule("VM non disponible", "isAvailable", "LT", 1.0, null, 1, 1, "CRITICAL"));
+    }
+
+    private static AlertRule defaultRule(String nom, String metric, String operator, Double threshold,
+                                         Double recoveryThreshold, int forSamples, int recoverSamples,
+                                         String severity) {
+        AlertRule rule = new AlertRule();
+        rule.setNom(nom);
+        rule.setMetric(metric);
+        rule.setOperator(operator);
+        rule.setThreshold(threshold);
+        rule.setRecoveryThreshold(recoveryThreshold);
+        rule.setForSamples(forSamples);
+        rule.setRecoverSamples(recoverSamples);
+        rule.setSeverity(severity);
+        rule.setIsActive(true);
+        rule.setDateCreation(LocalDateTime.now());
+        rule.setDateModification(LocalDateTime.now());
+        return rule;
+    }
+
+    private record CompiledRule(AlertRule rule, String type, ToDoubleFunction<MonitoringMetrics> extractor,
+                                DoublePredicate breached, DoublePredicate recovered, String symbol,
+                                int forSamples, int recoverSamples) {
+        String id() {
+            return rule.getId();
+        }
+    }
+
+    /**
+     * État d'une VM. ReentrantLock plutôt que synchronized : les métriques sont évaluées
+     * sur des threads virtuels, qu'un bloc synchronized épinglerait à leur thread porteur
+     */
+    private static final class VmState {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Ordonne les écritures des transitions, faites hors de lock
+        private final ReentrantLock persistLock = new ReentrantLock();
+        private final Map<String, RuleState> byRule = new HashMap<>();
+    }
+
+    private static final class RuleState {
+        private int breachStreak;
+        private int recoverStreak;
+        private Alert alert; // Alerte ouverte ou acquittée, null sinon
+    }
+}
@@ -0,0 +1,321 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.AlertRule;
+import com.project.authetification.model.AnomalyBaseline;
+import com.project.authetification.model.MonitoringMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Détection d'anomalies en ligne, par VM et par métrique : moyenne et variance
+ * mobiles exponentielles (EWMA) mises à jour en O(1) à chaque métrique, dans des
+ * tableaux de double. Une valeur est anormale quand elle s'écarte de la moyenne de
+ * la VM de plus de z-threshold écarts-types (et d'au moins min-deviation) : une VM
+ * qui passe de 20 % à 40 % de CPU est signalée, un serveur toujours à 95 % ne l'est
+ * pas. Les alertes correspondantes (type ANOMALY) sont gérées par AlertEngine.
+ * L'état est sauvegardé périodiquement dans anomaly_baselines et rechargé au démarrage.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnomalyDetector {
+
+    public static final String RULE_PREFIX = "anomaly:";
+
+    // Poids réduit des valeurs anormales : un changement durable devient la nouvelle
+    // normale progressivement, sans que la variance n'explose dès les premières valeurs
+    private static final double ANOMALOUS_WEIGHT = 0.1;
+    private static final double MAX_SCORE = 99;
+
+    /**
+     * Dernière valeur évaluée d'une métrique et la normale à laquelle elle a été comparée
+     */
+    public record Observation(double value, double expected, double stdDev, double score) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${monitoring.anomaly.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitoring.anomaly.metrics:cpuUsage,ramUsage,networkLatency,networkThroughput}")
+    private List<String> metrics;
+
+    // Poids d'une nouvelle valeur dans les moyennes (0.05 ~ les 20 dernières métriques)
+    @Value("${monitoring.anomaly.alpha:0.05}")
+    private double alpha;
+
+    @Value("${monitoring.anomaly.z-threshold:4}")
+    private double zThreshold;
+
+    @Value("${monitoring.anomaly.recovery-z:2}")
+    private double recoveryZ;
+
+    // Métriques reçues avant de signaler quoi que ce soit
+    @Value("${monitoring.anomaly.warmup-samples:30}")
+    private int warmupSamples;
+
+    // Écart absolu minimal (points de %, ms...) : ignore les variations infimes d'une série très stable
+    @Value("${monitoring.anomaly.min-deviation:5}")
+    private double minDeviation;
+
+    @Value("${monitoring.anomaly.for-samples:3}")
+    private int forSamples;
+
+    @Value("${monitoring.anomaly.recover-samples:3}")
+    private int recoverSamples;
+
+    @Value("${monitoring.anomaly.severity:WARNING}")
+    private String severity;
+
+    private final List<ToDoubleFunction<MonitoringMetrics>> extractors = new ArrayList<>();
+    private final ConcurrentHashMap<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        for (String metric : metrics) {
+            extractors.add(switch (metric) {
+                case "cpuUsage" -> m -> orNaN(m.getCpuUsage());
+                case "ramUsage" -> m -> orNaN(m.getRamUsage());
+                case "diskUsage" -> m -> orNaN(m.getDiskUsage());
+                case "networkLatency" -> m -> orNaN(m.getNetworkLatency());
+                case "networkThroughput" -> m -> orNaN(m.getNetworkThroughput());
+                default -> throw new IllegalArgumentException("Métrique inconnue pour la détection d'anomalies: " + metric);
+            });
+        }
+        if (!enabled) {
+            return;
+        }
+        try {
+            restore();
+        } catch (Exception e) {
+            log.error("Rechargement des moyennes de détection d'anomalies impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Règles d'alerte d'anomalie (une par métrique suivie), compilées par AlertEngine :
+     * le seuil porte sur le z-score renvoyé par update
+     */
+    public List<AlertRule> getRules() {
+        if (!enabled) {
+            return List.of();
+        }
+        List<AlertRule> rules = new ArrayList<>(metrics.size());
+        for (String metric : metrics) {
+            AlertRule rule = new AlertRule();
+            rule.setId(RULE_PREFIX + metric);
+            rule.setNom("Anomalie " + metric);
+            rule.setMetric(metric);
+            rule.setThreshold(zThreshold);
+            rule.setRecoveryThreshold(recoveryZ);
+            rule.setForSamples(forSamples);
+            rule.setRecoverSamples(recoverSamples);
+            rule.setSeverity(severity);
+            rule.setIsActive(true);
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * Met à jour les moyennes de la VM et renvoie, pour chaque métrique suivie (ordre de
+     * getRules), l'écart de la valeur à la moyenne précédente en écarts-types : 0 pendant
+     * l'apprentissage ou sous l'écart minimal, NaN si la métrique est absente
+     */
+    public double[] update(String vmId, MonitoringMetrics m) {
+        int size = extractors.size();
+        if (!enabled || size == 0) {
+            return new double[0];
+        }
+        double[] scores = new double[size];
+        Baseline baseline = baselines.computeIfAbsent(vmId, id -> new Baseline(size));
+        synchronized (baseline) {
+            for (int i = 0; i < size; i++) {
+                double x = extractors.get(i).applyAsDouble(m);
+                scores[i] = Double.isFinite(x) ? baseline.update(i, x) : Double.NaN;
+            }
+            baseline.dirty = true;
+        }
+        return scores;
+    }
+
+    /**
+     * Dernière valeur évaluée d'une métrique d'une VM (message d'alerte)
+     */
+    public Observation lastObservation(String vmId, String metric) {
+        int index = metrics.indexOf(metric);
+        Baseline baseline = baselines.get(vmId);
+        if (index < 0 || baseline == null) {
+            return null;
+        }
+        synchronized (baseline) {
+            return new Observation(baseline.lastValue[index], baseline.lastExpected[index],
+                    baseline.lastStdDev[index], baseline.lastScore[index]);
+        }
+    }
+
+    /**
+     * TÂCHE AUTOMATIQUE : sauvegarde les moyennes modifiées depuis le dernier instantané
+     */
+    @Scheduled(fixedDelayString = "${monitoring.anomaly.snapshot-ms:300000}")
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int written = writeSnapshot();
+            if (written > 0) {
+                log.debug("Moyennes de détection d'anomalies sauvegardées pour {} VM(s)", written);
+            }
+        } catch (Exception e) {
+            log.error("Sauvegarde des moyennes de détection d'anomalies impossible: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    private int writeSnapshot() {
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AnomalyBaseline.class);
+        int count = 0;
+        for (Map.Entry<String, Baseline> entry : baselines.entrySet()) {
+            Baseline baseline = entry.getValue();
+            AnomalyBaseline snapshot = new AnomalyBaseline();
+            synchronized (baseline) {
+                if (!baseline.dirty) {
+                    continue;
+                }
+                Map<String, AnomalyBaseline.Stats> stats = new LinkedHashMap<>();
+                for (int i = 0; i < metrics.size(); i++) {
+                    if (baseline.count[i] > 0) {
+                        AnomalyBaseline.Stats s = new AnomalyBaseline.Stats();
+                        s.setMean(baseline.mean[i]);
+                        s.setVariance(baseline.variance[i]);
+                        s.setCount(baseline.count[i]);
+                        stats.put(metrics.get(i), s);
+                    }
+                }
+                baseline.dirty = false;
+                snapshot.setMetrics(stats);
+            }
+            snapshot.setVmId(entry.getKey());
+            snapshot.setDateModification(now);
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(entry.getKey())), snapshot,
+                    FindAndReplaceOptions.options().upsert());
+            count++;
+        }
+        if (count > 0) {
+            bulk.execute();
+        }
+        return count;
+    }
+
+    private void restore() {
+        int restored = 0;
+        for (AnomalyBaseline snapshot : mongoTemplate.findAll(AnomalyBaseline.class)) {
+            if (snapshot.getMetrics() == null) {
+                continue;
+            }
+            Baseline baseline = new Baseline(metrics.size());
+            for (int i = 0; i < metrics.size(); i++) {
+                AnomalyBaseline.Stats stats = snapshot.getMetrics().get(metrics.get(i));
+                if (stats != null) {
+                    baseline.mean[i] = stats.getMean();
+                    baseline.variance[i] = stats.getVariance();
+                    baseline.count[i] = stats.getCount();
+                }
+            }
+            baselines.put(snapshot.getVmId(), baseline);
+            restored++;
+        }
+        log.info("Moyennes de détection d'anomalies rechargées pour {} VM(s)", restored);
+    }
+
+    private static double orNaN(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * État d'une VM : un indice par métrique suivie
+     */
+    private final class Baseline {
+        private final double[] mean;
+        private final double[] variance;
+        private final long[] count;
+        private final double[] lastValue;
+        private final double[] lastExpected;
+        private final double[] lastStdDev;
+        private final double[] lastScore;
+        private boolean dirty;
+
+        private Baseline(int size) {
+            mean = new double[size];
+            variance = new double[size];
+            count = new long[size];
+            lastValue = new double[size];
+            lastExpected = new double[size];
+            lastStdDev = new double[size];
+            lastScore = new double[size];
+        }
+
+        private double update(int i, double x) {
+            long n = count[i];
+            if (n == 0) {
+                mean[i] = x;
+                variance[i] = 0;
+                count[i] = 1;
+                record(i, x, x, 0, 0);
+                return 0;
+            }
+
+            double diff = x - mean[i];
+            double stdDev = Math.sqrt(variance[i]);
+            double score = 0;
+            if (n >= warmupSamples && Math.abs(diff) >= minDeviation) {
+                score = stdDev > 0 ? diff / stdDev : Math.copySign(MAX_SCORE, diff);
+                score = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+            }
+            record(i, x, mean[i], stdDev, score);
+
+            // Pendant l'apprentissage : moyenne et variance cumulées (poids 1/n)
+            double weight = Math.max(alpha, 1.0 / (n + 1));
+            if (Math.abs(score) >= zThreshold) {
+                weight *= ANOMALOUS_WEIGHT;
+            }
+            double increment = weight * diff;
+            mean[i] += increment;
+            variance[i] = (1 - weight) * (variance[i] + diff * increment);
+            count[i] = n + 1;
+            return score;
+        }
+
+        private void record(int i, double value, double expected, double stdDev, double score) {
+            lastValue[i] = value;
+            lastExpected[i] = expected;
+            lastStdDev[i] = stdDev;
+            lastScore[i] = score;
+        }
+    }
+}
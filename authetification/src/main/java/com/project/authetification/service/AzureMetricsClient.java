@@ -0,0 +1,31 @@
+package com.project.authetification.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accès aux métriques Azure Monitor, interchangeable (SDK ressource par ressource,
+ * API batch multi-ressources, ou faux serveur de métriques pour les tests).
+ */
+public interface AzureMetricsClient {
+
+    /**
+     * Périmètre d'un appel : toutes les ressources d'un même appel partagent
+     * la souscription, la région et le type de ressource.
+     */
+    record Scope(String subscriptionId, String region, String resourceType) {
+    }
+
+    /**
+     * Retourne, pour chaque ressource (clé = resourceId en minuscules), la dernière valeur
+     * moyenne de chaque métrique. Les ressources illisibles sont absentes du résultat.
+     */
+    Map<String, Map<String, Double>> queryLatest(Scope scope, List<String> resourceIds, List<String> metricNames);
+
+    /**
+     * Nombre maximal de ressources interrogées par un seul appel
+     */
+    default int maxResourcesPerCall() {
+        return 1;
+    }
+}
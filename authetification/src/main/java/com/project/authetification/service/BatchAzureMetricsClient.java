@@ -0,0 +1,136 @@
+package com.project.authetification.service;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mode batch : un appel metrics:getBatch d'Azure Monitor pour plusieurs ressources
+ * de la même souscription, région et type de ressource.
+ * L'endpoint est configurable pour pouvoir pointer vers un faux serveur de métriques.
+ */
+public class BatchAzureMetricsClient implements AzureMetricsClient {
+
+    private static final String API_VERSION = "2024-02-01";
+    private static final String TOKEN_SCOPE = "https://metrics.monitor.azure.com/.default";
+
+    // Limite imposée par l'API metrics:getBatch
+    public static final int MAX_RESOURCES_PER_CALL = 50;
+
+    private final RestTemplate restTemplate;
+    private final TokenCredential credential;
+    private final String endpointTemplate;
+    private final int lookbackMinutes;
+
+    private volatile AccessToken cachedToken;
+
+    /**
+     * @param endpointTemplate URL de base, "{region}" est remplacé par la région du périmètre
+     * @param credential       null pour un serveur sans authentification (faux serveur local)
+     */
+    public BatchAzureMetricsClient(RestTemplate restTemplate, TokenCredential credential,
+                                   String endpointTemplate, int lookbackMinutes) {
+        this.restTemplate = restTemplate;
+        this.credential = credential;
+        this.endpointTemplate = endpointTemplate;
+        this.lookbackMinutes = lookbackMinutes;
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> queryLatest(Scope scope, List<String> resourceIds, List<String> metricNames) {
+        if (resourceIds.size() > MAX_RESOURCES_PER_CALL) {
+            throw new IllegalArgumentException("Trop de ressources pour un appel batch: " + resourceIds.size());
+        }
+
+        Instant end = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        URI uri = UriComponentsBuilder
+                .fromUriString(endpointTemplate.replace("{region}", scope.region()))
+                .path("/subscriptions/{subscriptionId}/metrics:getBatch")
+                .queryParam("metricnamespace", scope.resourceType())
+                .queryParam("metricnames", String.join(",", metricNames))
+                .queryParam("starttime", end.minus(lookbackMinutes, ChronoUnit.MINUTES).toString())
+                .queryParam("endtime", end.toString())
+                .queryParam("interval", "PT1M")
+                .queryParam("aggregation", "average")
+                .queryParam("api-version", API_VERSION)
+                .buildAndExpand(scope.subscriptionId())
+                .encode()
+                .toUri();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (credential != null) {
+            headers.setBearerAuth(token());
+        }
+
+        JsonNode body = restTemplate.exchange(uri, HttpMethod.POST,
+                new HttpEntity<>(Map.of("resourceids", resourceIds), headers), JsonNode.class).getBody();
+
+        return parse(body);
+    }
+
+    @Override
+    public int maxResourcesPerCall() {
+        return MAX_RESOURCES_PER_CALL;
+    }
+
+    /**
+     * Découpe la réponse batch par ressource
+     */
+    private Map<String, Map<String, Double>> parse(JsonNode body) {
+        Map<String, Map<String, Double>> results = new HashMap<>();
+        if (body == null) {
+            return results;
+        }
+
+        for (JsonNode resource : body.path("values")) {
+            String resourceId = resource.path("resourceid").asText(null);
+            if (resourceId == null) {
+                continue;
+            }
+
+            Map<String, Double> latest = new HashMap<>();
+            for (JsonNode metric : resource.path("value")) {
+                String name = metric.path("name").path("value").asText();
+                Double last = null;
+                for (JsonNode series : metric.path("timeseries")) {
+                    for (JsonNode point : series.path("data")) {
+                        if (point.hasNonNull("average")) {
+                            last = point.get("average").asDouble();
+                        }
+                    }
+                }
+                if (last != null) {
+                    latest.put(name, last);
+                }
+            }
+            results.put(resourceId.toLowerCase(Locale.ROOT), latest);
+        }
+        return results;
+    }
+
+    private String token() {
+        AccessToken token = cachedToken;
+        if (token == null || token.getExpiresAt().minusMinutes(5).isBefore(OffsetDateTime.now())) {
+            token = credential.getToken(new TokenRequestContext().addScopes(TOKEN_SCOPE)).block();
+            cachedToken = token;
+        }
+        return token.getToken();
+    }
+}
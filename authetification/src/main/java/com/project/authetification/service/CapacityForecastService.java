@@ -0,0 +1,528 @@
+package com.project.authetification.service;
+
+import com.mongodb.client.MongoCursor;
+import com.project.authetification.model.CapacityForecast;
+import com.project.authetification.model.RollupResolution;
+import com.project.authetification.model.RollupWatermark;
+import com.project.authetification.model.VM;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Prévision de capacité : pour chaque VM et chaque métrique (CPU, RAM, disque), une
+ * régression linéaire pondérée (demi-vie configurable, proche d'un lissage de Holt)
+ * est ajustée sur les agrégats horaires et projetée jusqu'au seuil de saturation.
+ * L'ajustement est incrémental : chaque passe ne lit que les agrégats arrivés depuis
+ * la précédente et met à jour des sommes, en parallèle sur toute la flotte dans un
+ * ForkJoinPool. Le résultat est stocké dans capacity_forecasts et recopié sur les VMs
+ * (daysUntilSaturation).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CapacityForecastService {
+
+    public static final List<String> METRICS = List.of("cpuUsage", "ramUsage", "diskUsage");
+
+    // Origine des temps de la régression (jours) : garde t et t² petits
+    private static final LocalDateTime FORECAST_EPOCH = LocalDateTime.of(2020, 1, 1, 0, 0);
+    // Position de la prévision dans les agrégats horaires (collection des watermarks)
+    private static final String WATERMARK_ID = "forecast";
+    // Nombre de VMs en dessous duquel une tâche fork/join ne se divise plus
+    private static final int SEQUENTIAL_THRESHOLD = 256;
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsRollupService metricsRollupService;
+
+    @Value("${monitoring.forecast.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitoring.forecast.threshold:90}")
+    private double threshold;
+
+    // Poids d'un agrégat divisé par deux tous les half-life-days
+    @Value("${monitoring.forecast.half-life-days:7}")
+    private double halfLifeDays;
+
+    // Au-delà, pas de saturation annoncée
+    @Value("${monitoring.forecast.horizon-days:365}")
+    private double horizonDays;
+
+    // Agrégats horaires nécessaires avant de prévoir quoi que ce soit
+    @Value("${monitoring.forecast.min-points:24}")
+    private int minPoints;
+
+    // VM sans agrégat récent (arrêtée, supprimée) : pas de prévision
+    @Value("${monitoring.forecast.max-stale-days:3}")
+    private double maxStaleDays;
+
+    // Historique lu à la première passe
+    @Value("${monitoring.forecast.initial-lookback-days:30}")
+    private long initialLookbackDays;
+
+    // 0 = nombre de processeurs
+    @Value("${monitoring.forecast.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+    private final ConcurrentHashMap<String, CapacityForecast> forecasts = new ConcurrentHashMap<>();
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void initialize() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        try {
+            mongoTemplate.indexOps(CapacityForecast.class)
+                    .ensureIndex(new Index().on("daysUntilSaturation", Sort.Direction.ASC).named("forecast_by_saturation"));
+        } catch (Exception e) {
+            log.warn("Index forecast_by_saturation non créé: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * TÂCHE AUTOMATIQUE : intègre les nouveaux agrégats horaires et recalcule les prévisions
+     */
+    @Scheduled(fixedDelayString = "${monitoring.forecast.fixed-delay-ms:3600000}",
+            initialDelayString = "${monitoring.forecast.initial-delay-ms:120000}")
+    public void forecastTask() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            run();
+        } catch (Exception e) {
+            log.error("Erreur de prévision de capacité: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Passe de prévision (une seule à la fois)
+     */
+    public Map<String, Object> run() {
+        if (!runLock.tryLock()) {
+            throw new RuntimeException("Prévision de capacité déjà en cours");
+        }
+        try {
+            return runLocked();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Prévisions triées par délai avant saturation (les plus urgentes d'abord) ;
+     * avec vmId, la prévision de cette VM seulement
+     */
+    public List<CapacityForecast> getForecasts(String vmId, Double maxDays, int limit) {
+        if (vmId != null) {
+            CapacityForecast forecast = mongoTemplate.findById(vmId, CapacityForecast.class);
+            return forecast == null ? List.of() : List.of(forecast);
+        }
+        Criteria criteria = Criteria.where("daysUntilSaturation").ne(null);
+        if (maxDays != null) {
+            criteria = criteria.lte(maxDays);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "daysUntilSaturation"))
+                .limit(limit);
+        return mongoTemplate.find(query, CapacityForecast.class);
+    }
+
+    /**
+     * Benchmark de l'ajustement seul (sans Mongo) : séries horaires synthétiques
+     * (tendance + bruit) pour vms VMs sur days jours, ajustées en une passe fork/join
+     */
+    public Map<String, Object> benchmark(int vms, int days) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDateTime start = MetricsRollupService.truncate(LocalDateTime.now(), RollupResolution.ONE_HOUR)
+                .minusDays(days);
+        double firstDay = toDay(start);
+        int hours = days * 24;
+
+        long generateStart = System.nanoTime();
+        CapacityForecast[] synthetic = new CapacityForecast[vms];
+        Map<String, Series> series = new HashMap<>(vms * 2);
+        for (int v = 0; v < vms; v++) {
+            CapacityForecast forecast = new CapacityForecast();
+            forecast.setVmId("bench-" + v);
+            synthetic[v] = forecast;
+
+            double[] base = new double[METRICS.size()];
+            double[] slope = new double[METRICS.size()];
+            for (int m = 0; m < METRICS.size(); m++) {
+                base[m] = random.nextDouble(10, 60);
+                slope[m] = random.nextDouble(-0.5, 1.5); // points de % par jour
+            }
+            Series s = new Series(hours);
+            double[] values = new double[METRICS.size()];
+            for (int h = 0; h < hours; h++) {
+                double day = firstDay + h / 24.0;
+                for (int m = 0; m < METRICS.size(); m++) {
+                    values[m] = Math.max(0, Math.min(100, base[m] + slope[m] * (day - firstDay) + random.nextGaussian() * 3));
+                }
+                s.add(day, values);
+            }
+            series.put(forecast.getVmId(), s);
+        }
+        long generateMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - generateStart);
+
+        long fitStart = System.nanoTime();
+        Queue<CapacityForecast> changed = new ConcurrentLinkedQueue<>();
+        pool.invoke(new FitTask(synthetic, series, toDay(LocalDateTime.now()), LocalDateTime.now(), 0, vms, changed));
+        long fitNanos = System.nanoTime() - fitStart;
+
+        long saturating = Arrays.stream(synthetic).filter(f -> f.getDaysUntilSaturation() != null).count();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("vms", vms);
+        result.put("points", (long) vms * hours * METRICS.size());
+        result.put("parallelism", pool.getParallelism());
+        result.put("generateMs", generateMs);
+        result.put("fitMs", TimeUnit.NANOSECONDS.toMillis(fitNanos));
+        result.put("pointsPerSecond", Math.round((double) vms * hours * METRICS.size() / Math.max(fitNanos / 1e9, 1e-9)));
+        result.put("saturatingVms", saturating);
+        return result;
+    }
+
+    private Map<String, Object> runLocked() {
+        long start = System.nanoTime();
+        if (!loaded) {
+            for (CapacityForecast forecast : mongoTemplate.findAll(CapacityForecast.class)) {
+                forecasts.put(forecast.getVmId(), forecast);
+            }
+            loaded = true;
+        }
+
+        LocalDateTime upper = metricsRollupService.getWatermark(RollupResolution.ONE_HOUR);
+        RollupWatermark watermark = mongoTemplate.findById(WATERMARK_ID, RollupWatermark.class);
+        LocalDateTime from = watermark != null ? watermark.getWatermark()
+                : upper == null ? null : upper.minusDays(initialLookbackDays);
+
+        // Noms des VMs existantes ; les prévisions des VMs supprimées sont retirées
+        Map<String, String> vmNames = new HashMap<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(VM.class))
+                .find().projection(new Document("vmName", 1)).iterator()) {
+            while (cursor.hasNext()) {
+                Document vm = cursor.next();
+                vmNames.put(String.valueOf(vm.get("_id")), vm.getString("vmName"));
+            }
+        }
+        List<String> removed = forecasts.keySet().stream().filter(id -> !vmNames.containsKey(id)).toList();
+        removed.forEach(forecasts::remove);
+        if (!removed.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(removed)), CapacityForecast.class);
+        }
+
+        Map<String, Series> series = upper == null || !from.isBefore(upper) ? Map.of() : readRollups(from, upper);
+        long points = series.values().stream().mapToLong(s -> s.size).sum();
+        series.keySet().stream()
+                .filter(vmNames::containsKey)
+                .forEach(vmId -> forecasts.computeIfAbsent(vmId, id -> {
+                    CapacityForecast forecast = new CapacityForecast();
+                    forecast.setVmId(id);
+                    return forecast;
+                }));
+        forecasts.values().forEach(forecast -> forecast.setVmName(vmNames.get(forecast.getVmId())));
+
+        long fitStart = System.nanoTime();
+        CapacityForecast[] all = forecasts.values().toArray(CapacityForecast[]::new);
+        Queue<CapacityForecast> changed = new ConcurrentLinkedQueue<>();
+        LocalDateTime now = LocalDateTime.now();
+        long fitMs;
+        try {
+            pool.invoke(new FitTask(all, series, toDay(now), now, 0, all.length, changed));
+            fitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fitStart);
+
+            save(all, changed);
+            if (upper != null && (from == null || from.isBefore(upper))) {
+                RollupWatermark next = new RollupWatermark();
+                next.setResolution(WATERMARK_ID);
+                next.setWatermark(upper);
+                next.setDateModification(now);
+                mongoTemplate.save(next);
+            }
+        } catch (RuntimeException e) {
+            // Tendances modifiées mais pas (toutes) écrites : la passe suivante repart de Mongo
+            forecasts.clear();
+            loaded = false;
+            throw e;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("vms", all.length);
+        report.put("points", points);
+        report.put("saturationChanged", changed.size());
+        report.put("fitMs", fitMs);
+        report.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Prévision de capacité: {}", report);
+        return report;
+    }
+
+    /**
+     * Agrégats horaires [from, upper[ de toute la flotte, moyennes seulement
+     */
+    private Map<String, Series> readRollups(LocalDateTime from, LocalDateTime upper) {
+        Document filter = new Document("bucketStart", new Document("$gte", toDate(from)).append("$lt", toDate(upper)));
+        Document projection = new Document("vmId", 1).append("bucketStart", 1);
+        METRICS.forEach(metric -> projection.append(metric + ".avg", 1));
+
+        Map<String, Series> series = new HashMap<>();
+        double[] values = new double[METRICS.size()];
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(RollupResolution.ONE_HOUR.getCollectionName())
+                .find(filter).projection(projection).sort(new Document("bucketStart", 1))
+                .batchSize(1000).iterator()) {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                String vmId = doc.getString("vmId");
+                Date bucketStart = doc.getDate("bucketStart");
+                if (vmId == null || bucketStart == null) {
+                    continue;
+                }
+                for (int m = 0; m < METRICS.size(); m++) {
+                    values[m] = doc.get(METRICS.get(m)) instanceof Document stats && stats.get("avg") instanceof Number avg
+                            ? avg.doubleValue() : Double.NaN;
+                }
+                // Milieu de l'heure
+                double day = toDay(LocalDateTime.ofInstant(bucketStart.toInstant(), ZoneId.systemDefault())) + 1 / 48.0;
+                series.computeIfAbsent(vmId, id -> new Series(64)).add(day, values);
+            }
+        }
+        return series;
+    }
+
+    private void save(CapacityForecast[] all, Collection<CapacityForecast> changed) {
+        if (all.length > 0) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CapacityForecast.class);
+            for (CapacityForecast forecast : all) {
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(forecast.getVmId())), forecast,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            bulk.execute();
+        }
+        if (!changed.isEmpty()) {
+            BulkOperations vms = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VM.class);
+            for (CapacityForecast forecast : changed) {
+                vms.updateOne(Query.query(Criteria.where("_id").is(forecast.getVmId())),
+                        Update.update("daysUntilSaturation", forecast.getDaysUntilSaturation()));
+            }
+            vms.execute();
+        }
+    }
+
+    /**
+     * Intègre les nouveaux points d'une VM et recalcule sa prévision ; vrai si le
+     * délai avant saturation a changé (à recopier sur la VM)
+     */
+    private boolean fit(CapacityForecast forecast, Series series, double today, LocalDateTime now) {
+        // Heures déjà intégrées (prévision écrite par une passe dont le filigrane n'a pas avancé) ignorées
+        double after = forecast.getLastBucket() == null ? Double.NEGATIVE_INFINITY
+                : toDay(forecast.getLastBucket()) + 1 / 24.0;
+        for (int m = 0; m < METRICS.size(); m++) {
+            CapacityForecast.Trend trend = forecast.getTrends().computeIfAbsent(METRICS.get(m), k -> new CapacityForecast.Trend());
+            trend.setThreshold(threshold);
+            if (series != null) {
+                for (int i = 0; i < series.size; i++) {
+                    double y = series.values[m][i];
+                    if (!Double.isNaN(y) && series.days[i] >= after) {
+                        addPoint(trend, series.days[i], y);
+                    }
+                }
+            }
+            project(trend, today);
+        }
+
+        Double previous = forecast.getDaysUntilSaturation();
+        Double days = null;
+        String metric = null;
+        for (Map.Entry<String, CapacityForecast.Trend> entry : forecast.getTrends().entrySet()) {
+            Double trendDays = entry.getValue().getDaysUntilSaturation();
+            if (trendDays != null && (days == null || trendDays < days)) {
+                days = trendDays;
+                metric = entry.getKey();
+            }
+        }
+        forecast.setDaysUntilSaturation(days);
+        forecast.setSaturatingMetric(metric);
+        forecast.setSaturationDate(days == null ? null : now.plusSeconds((long) (days * 86400)));
+        if (series != null && series.days[series.size - 1] >= after) {
+            forecast.setLastBucket(fromDay(series.days[series.size - 1]));
+        }
+        forecast.setDateModification(now);
+
+        // Au dixième de jour près : inutile de réécrire la VM pour quelques minutes
+        return previous == null || days == null
+                ? !Objects.equals(previous, days)
+                : Math.abs(previous - days) >= 0.1;
+    }
+
+    private void addPoint(CapacityForecast.Trend trend, double day, double y) {
+        if (trend.getWeight() == 0) {
+            trend.setReferenceDay(day);
+        } else if (day > trend.getReferenceDay()) {
+            // Vieillit les sommes jusqu'au nouveau point
+            double decay = Math.pow(0.5, (day - trend.getReferenceDay()) / halfLifeDays);
+            trend.setWeight(trend.getWeight() * decay);
+            trend.setSumT(trend.getSumT() * decay);
+            trend.setSumY(trend.getSumY() * decay);
+            trend.setSumTT(trend.getSumTT() * decay);
+            trend.setSumTY(trend.getSumTY() * decay);
+            trend.setReferenceDay(day);
+        }
+        double w = Math.pow(0.5, (trend.getReferenceDay() - day) / halfLifeDays);
+        trend.setWeight(trend.getWeight() + w);
+        trend.setSumT(trend.getSumT() + w * day);
+        trend.setSumY(trend.getSumY() + w * y);
+        trend.setSumTT(trend.getSumTT() + w * day * day);
+        trend.setSumTY(trend.getSumTY() + w * day * y);
+        trend.setPoints(trend.getPoints() + 1);
+    }
+
+    private void project(CapacityForecast.Trend trend, double today) {
+        trend.setLevel(null);
+        trend.setSlopePerDay(null);
+        trend.setDaysUntilSaturation(null);
+        double w = trend.getWeight();
+        double denominator = w * trend.getSumTT() - trend.getSumT() * trend.getSumT();
+        if (trend.getPoints() < minPoints || w == 0 || denominator <= 1e-12 * w * trend.getSumTT()) {
+            return;
+        }
+        double slope = (w * trend.getSumTY() - trend.getSumT() * trend.getSumY()) / denominator;
+        double level = (trend.getSumY() - slope * trend.getSumT()) / w + slope * today;
+        trend.setLevel(level);
+        trend.setSlopePerDay(slope);
+        if (today - trend.getReferenceDay() > maxStaleDays) {
+            return;
+        }
+        if (level >= threshold) {
+            trend.setDaysUntilSaturation(0.0);
+        } else if (slope > 0) {
+            double days = (threshold - level) / slope;
+            if (days <= horizonDays) {
+                trend.setDaysUntilSaturation(days);
+            }
+        }
+    }
+
+    private static double toDay(LocalDateTime time) {
+        return (time.toEpochSecond(ZoneOffset.UTC) - FORECAST_EPOCH.toEpochSecond(ZoneOffset.UTC)) / 86400.0;
+    }
+
+    private static LocalDateTime fromDay(double day) {
+        return MetricsRollupService.truncate(
+                FORECAST_EPOCH.plusSeconds((long) (day * 86400)), RollupResolution.ONE_HOUR);
+    }
+
+    // Même conversion que Spring Data pour les LocalDateTime
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Nouveaux points d'une VM, dans l'ordre chronologique (tableaux primitifs)
+     */
+    private static final class Series {
+        private double[] days;
+        private final double[][] values = new double[METRICS.size()][];
+        private int size;
+
+        private Series(int capacity) {
+            days = new double[capacity];
+            for (int m = 0; m < values.length; m++) {
+                values[m] = new double[capacity];
+            }
+        }
+
+        private void add(double day, double[] point) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                for (int m = 0; m < values.length; m++) {
+                    values[m] = Arrays.copyOf(values[m], size * 2);
+                }
+            }
+            days[size] = day;
+            for (int m = 0; m < values.length; m++) {
+                values[m][size] = point[m];
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Ajuste une tranche de VMs ; divisée en deux tant qu'elle dépasse SEQUENTIAL_THRESHOLD
+     */
+    private final class FitTask extends RecursiveAction {
+        private final CapacityForecast[] forecasts;
+        private final Map<String, Series> series;
+        private final double today;
+        private final LocalDateTime now;
+        private final int from;
+        private final int to;
+        private final Queue<CapacityForecast> changed;
+
+        private FitTask(CapacityForecast[] forecasts, Map<String, Series> series, double today, LocalDateTime now,
+                        int from, int to, Queue<CapacityForecast> changed) {
+            this.forecasts = forecasts;
+            this.series = series;
+            this.today = today;
+            this.now = now;
+            this.from = from;
+            this.to = to;
+            this.changed = changed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    CapacityForecast forecast = forecasts[i];
+                    if (fit(forecast, series.get(forecast.getVmId()), today, now)) {
+                        changed.add(forecast);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FitTask(forecasts, series, today, now, from, middle, changed),
+                    new FitTask(forecasts, series, today, now, middle, to, changed));
+        }
+    }
+}
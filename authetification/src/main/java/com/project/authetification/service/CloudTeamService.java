@@ -1,41 +1,83 @@
 package com.project.authetification.service;
 
+import com.mongodb.bulk.BulkWriteError;
+import com.project.authetification.model.DecisionOutcome;
 import com.project.authetification.model.Demande;
-import com.project.authetification.model.GovernanceRule;
+import com.project.authetification.model.DemandeDecision;
+import com.project.authetification.model.Notification;
+import com.project.authetification.model.ResourceFilter;
 import com.project.authetification.model.User;
 import com.project.authetification.model.WorkOrder;
 import com.project.authetification.repository.DemandeRepository;
-import com.project.authetification.repository.GovernanceRuleRepository;
+import com.project.authetification.repository.ReferenceBatchLoader;
 import com.project.authetification.repository.UserRepository;
 import com.project.authetification.repository.WorkOrderRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class CloudTeamService {
 
+    // Statuts dans lesquels une demande peut encore être validée ou refusée en lot
+    private static final Set<String> DECIDABLE_STATUSES = Set.of("EN_ATTENTE", "EN_VALIDATION", "A_MODIFIER");
+
     private final DemandeRepository demandeRepository;
     private final UserRepository userRepository;
-    private final GovernanceRuleRepository governanceRuleRepository;
+    private final GovernanceEngine governanceEngine;
     private final NotificationService notificationService;
     private final WorkOrderRepository workOrderRepository;
+    private final DashboardStatsService dashboardStatsService;
+    private final ResourceLedger resourceLedger;
+    private final MongoTemplate mongoTemplate;
 
     /**
      * Récupère toutes les demandes en attente de validation
      */
     public List<Demande> getDemandesEnAttente() {
-        return demandeRepository.findByStatus("EN_ATTENTE");
+        return demandeRepository.findByStatusWithReferences("EN_ATTENTE");
     }
 
     /**
      * Récupère toutes les demandes en cours de validation
      */
     public List<Demande> getDemandesEnValidation() {
-        return demandeRepository.findByStatus("EN_VALIDATION");
+        return demandeRepository.findByStatusWithReferences("EN_VALIDATION");
+    }
+
+    /**
+     * Recherche de demandes par statut et quantités (ex. en attente avec plus de 16 Go de RAM)
+     */
+    public List<Demande> rechercherDemandes(ResourceFilter filter, int limit) {
+        return demandeRepository.findByResourcesWithReferences(filter, limit);
+    }
+
+    /**
+     * Violations des règles de gouvernance pour le réseau et l'adresse envisagés
+     */
+    public List<GovernanceEngine.Violation> evaluerGouvernance(String demandeId, String reseau, String adresseIp) {
+        Demande demande = demandeRepository.findById(demandeId)
+                .orElseThrow(() -> new RuntimeException("Demande non trouvée: " + demandeId));
+        return governanceEngine.evaluate(demande, reseau, adresseIp);
     }
 
     /**
@@ -49,30 +91,34 @@ public class CloudTeamService {
         User validateur = userRepository.findByUsername(validateurUsername)
                 .orElseThrow(() -> new RuntimeException("Validateur non trouvé: " + validateurUsername));
 
-        // Vérifier les règles de gouvernance
-        if (!checkGovernanceRules(demande)) {
-            throw new RuntimeException("La demande ne respecte pas les règles de gouvernance");
-        }
+        // Vérifier les règles de gouvernance (toutes les violations dans le message)
+        governanceEngine.check(demande, reseau, adresseIp);
 
-        // Vérifier les ressources disponibles (simplifié - à implémenter selon les besoins)
-        if (!checkResourceAvailability(demande)) {
-            throw new RuntimeException("Resources insuffisantes");
-        }
+        // Réserver disque, adresse et quota client (refusé si l'un est plein)
+        ResourceLedger.Reservation reservation = resourceLedger.reserve(demandeId, demande, reseau, datastore);
 
         // Mettre à jour la demande
-        demande.setStatus("VALIDE");
-        demande.setAdresseIp(adresseIp);
-        demande.setReseau(reseau);
-        demande.setDatastore(datastore);
-        demande.setValidateurCloud(validateur);
-        demande.setDateValidation(LocalDateTime.now());
-
-        Demande savedDemande = demandeRepository.save(demande);
-
-        // Créer un workorder pour l'équipe Support
-        WorkOrder workOrder = createWorkOrder(savedDemande);
-        savedDemande.setWorkorderId(workOrder.getId());
-        demandeRepository.save(savedDemande);
+        String oldStatus = demande.getStatus();
+        Demande savedDemande;
+        try {
+            demande.setStatus("VALIDE");
+            demande.setAdresseIp(adresseIp);
+            demande.setReseau(reseau);
+            demande.setDatastore(datastore);
+            demande.setValidateurCloud(validateur);
+            demande.setDateValidation(LocalDateTime.now());
+
+            savedDemande = demandeRepository.save(demande);
+
+            // Créer un workorder pour l'équipe Support
+            WorkOrder workOrder = createWorkOrder(savedDemande);
+            savedDemande.setWorkorderId(workOrder.getId());
+            demandeRepository.save(savedDemande);
+        } catch (RuntimeException e) {
+            resourceLedger.release(demandeId, reservation);
+            throw e;
+        }
+        dashboardStatsService.demandeStatusChanged(oldStatus, savedDemande.getStatus());
 
         // Notifier le client
         notificationService.sendNotification(
@@ -94,12 +140,15 @@ public class CloudTeamService {
         User validateur = userRepository.findByUsername(validateurUsername)
                 .orElseThrow(() -> new RuntimeException("Validateur non trouvé: " + validateurUsername));
 
+        String oldStatus = demande.getStatus();
         demande.setStatus("REFUSEE");
         demande.setJustificationRefus(justification);
         demande.setValidateurCloud(validateur);
         demande.setDateValidation(LocalDateTime.now());
 
         Demande savedDemande = demandeRepository.save(demande);
+        resourceLedger.release(demandeId);
+        dashboardStatsService.demandeStatusChanged(oldStatus, savedDemande.getStatus());
 
         // Notifier le client
         notificationService.sendNotification(
@@ -111,6 +160,254 @@ public class CloudTeamService {
         return savedDemande;
     }
 
+    /**
+     * Valide et refuse un lot de demandes : une lecture des demandes, une évaluation des
+     * règles de gouvernance pour tout le lot, une insertion groupée des workorders, une
+     * écriture groupée des demandes et des notifications. Chaque décision est appliquée
+     * ou rejetée indépendamment des autres ; le résultat est renvoyé dans l'ordre du lot
+     */
+    public List<DecisionOutcome> traiterDecisions(List<DemandeDecision> decisions, String validateurUsername) {
+        User validateur = userRepository.findByUsername(validateurUsername)
+                .orElseThrow(() -> new RuntimeException("Validateur non trouvé: " + validateurUsername));
+
+        Set<String> ids = decisions.stream()
+                .map(DemandeDecision::getDemandeId)
+                .filter(id -> id != null)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, Demande> demandes = demandeRepository.findByIdsWithReferences(ids).stream()
+                .collect(Collectors.toMap(Demande::getId, Function.identity()));
+
+        List<DecisionOutcome> outcomes = new ArrayList<>(decisions.size());
+        List<Integer> validations = new ArrayList<>();
+        List<GovernanceEngine.Candidate> candidates = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < decisions.size(); i++) {
+            DemandeDecision decision = decisions.get(i);
+            DecisionOutcome outcome = new DecisionOutcome();
+            outcome.setDemandeId(decision.getDemandeId());
+            outcome.setAction(decision.getAction());
+            outcomes.add(outcome);
+
+            Demande demande = demandes.get(decision.getDemandeId());
+            if (decision.getDemandeId() == null || !seen.add(decision.getDemandeId())) {
+                outcome.setError("Demande absente ou en double dans le lot");
+            } else if (demande == null) {
+                outcome.setError("Demande non trouvée: " + decision.getDemandeId());
+            } else if (!DECIDABLE_STATUSES.contains(demande.getStatus())) {
+                outcome.setError("Demande déjà traitée (" + demande.getStatus() + ")");
+            } else if (DemandeDecision.VALIDER.equals(decision.getAction())) {
+                validations.add(i);
+                candidates.add(new GovernanceEngine.Candidate(demande, decision.getReseau(), decision.getAdresseIp()));
+            } else if (!DemandeDecision.REFUSER.equals(decision.getAction())) {
+                outcome.setError("Action inconnue: " + decision.getAction());
+            } else if (decision.getJustification() == null || decision.getJustification().isBlank()) {
+                outcome.setError("Justification obligatoire pour un refus");
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Integer> pending = new ArrayList<>();
+        List<WorkOrder> workOrders = new ArrayList<>();
+        Map<String, String> oldStatuses = new HashMap<>();
+        // Réservations de ce lot : rendues avec leur jeton, jamais celles d'une autre décision
+        Map<String, ResourceLedger.Reservation> reservations = new HashMap<>();
+
+        // Validations : gouvernance évaluée en une passe, puis réservation des ressources
+        List<List<GovernanceEngine.Violation>> violations = governanceEngine.evaluateAll(candidates);
+        for (int v = 0; v < validations.size(); v++) {
+            int i = validations.get(v);
+            DemandeDecision decision = decisions.get(i);
+            DecisionOutcome outcome = outcomes.get(i);
+            Demande demande = demandes.get(decision.getDemandeId());
+            if (!violations.get(v).isEmpty()) {
+                outcome.setError("La demande ne respecte pas les règles de gouvernance");
+                outcome.setViolations(violations.get(v).stream().map(GovernanceEngine.Violation::message).toList());
+                continue;
+            }
+            ResourceLedger.Reservation reservation;
+            try {
+                reservation = resourceLedger.reserveIfAbsent(demande.getId(), demande, decision.getReseau(), decision.getDatastore());
+            } catch (ResourceLedger.InsufficientResourcesException e) {
+                outcome.setError(e.getMessage());
+                continue;
+            }
+            if (reservation == null) {
+                outcome.setError("Demande en cours de validation par une autre décision");
+                continue;
+            }
+            reservations.put(demande.getId(), reservation);
+            oldStatuses.put(demande.getId(), demande.getStatus());
+            demande.setStatus("VALIDE");
+            demande.setAdresseIp(decision.getAdresseIp());
+            demande.setReseau(decision.getReseau());
+            demande.setDatastore(decision.getDatastore());
+            demande.setValidateurCloud(validateur);
+            demande.setDateValidation(now);
+
+            WorkOrder workOrder = newWorkOrder(demande);
+            workOrder.setId(new ObjectId().toHexString());
+            demande.setWorkorderId(workOrder.getId());
+            workOrders.add(workOrder);
+            pending.add(i);
+        }
+
+        // Refus
+        for (int i = 0; i < decisions.size(); i++) {
+            DemandeDecision decision = decisions.get(i);
+            if (outcomes.get(i).getError() != null || !DemandeDecision.REFUSER.equals(decision.getAction())) {
+                continue;
+            }
+            Demande demande = demandes.get(decision.getDemandeId());
+            oldStatuses.put(demande.getId(), demande.getStatus());
+            demande.setStatus("REFUSEE");
+            demande.setJustificationRefus(decision.getJustification());
+            demande.setValidateurCloud(validateur);
+            demande.setDateValidation(now);
+            pending.add(i);
+        }
+
+        // Workorders d'abord : une demande n'est jamais validée sans son workorder
+        if (!workOrders.isEmpty()) {
+            try {
+                mongoTemplate.insert(workOrders, WorkOrder.class);
+            } catch (RuntimeException e) {
+                log.error("Insertion des workorders du lot impossible: {}", e.getMessage());
+                // Insertion ordonnée : les workorders insérés avant l'erreur sont retirés
+                removeWorkOrders(workOrders.stream().map(WorkOrder::getId).toList());
+                pending.removeIf(i -> {
+                    Demande demande = demandes.get(decisions.get(i).getDemandeId());
+                    if (!"VALIDE".equals(demande.getStatus())) {
+                        return false;
+                    }
+                    resourceLedger.release(demande.getId(), reservations.get(demande.getId()));
+                    outcomes.get(i).setError("Création du workorder impossible");
+                    return true;
+                });
+                workOrders.clear();
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Demande.class);
+            for (int i : pending) {
+                Demande demande = demandes.get(decisions.get(i).getDemandeId());
+                // Statut revérifié à l'écriture : une décision prise ailleurs depuis la lecture l'emporte
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(demande.getId())
+                        .and("status").in(DECIDABLE_STATUSES)), demande);
+            }
+            Set<Integer> failed = new HashSet<>();
+            boolean unmatched;
+            try {
+                unmatched = bulk.execute().getMatchedCount() < pending.size();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    failed.add(pending.get(error.getIndex()));
+                }
+                log.error("{} demande(s) du lot non enregistrée(s)", failed.size());
+                unmatched = e.getResult().getMatchedCount() < pending.size() - failed.size();
+            } catch (RuntimeException e) {
+                log.error("Enregistrement des demandes du lot impossible: {}", e.getMessage());
+                unmatched = true;
+            }
+
+            Set<Integer> conflicts = new HashSet<>();
+            if (unmatched) {
+                // Demandes sans remplacement (traitées entre-temps) ou d'issue inconnue :
+                // seules celles portant la date de cette décision ont été écrites
+                Set<String> written = writtenDecisions(pending.stream()
+                        .filter(i -> !failed.contains(i))
+                        .map(i -> decisions.get(i).getDemandeId())
+                        .toList(), now);
+                for (int i : pending) {
+                    if (!failed.contains(i) && !written.contains(decisions.get(i).getDemandeId())) {
+                        conflicts.add(i);
+                    }
+                }
+            }
+
+            if (!failed.isEmpty() || !conflicts.isEmpty()) {
+                List<String> orphans = new ArrayList<>();
+                for (int i : pending) {
+                    if (!failed.contains(i) && !conflicts.contains(i)) {
+                        continue;
+                    }
+                    Demande demande = demandes.get(decisions.get(i).getDemandeId());
+                    if ("VALIDE".equals(demande.getStatus())) {
+                        resourceLedger.release(demande.getId(), reservations.get(demande.getId()));
+                        orphans.add(demande.getWorkorderId());
+                    }
+                    outcomes.get(i).setError(conflicts.contains(i)
+                            ? "Demande traitée entre-temps par une autre décision"
+                            : "Enregistrement de la demande impossible");
+                }
+                removeWorkOrders(orphans);
+                pending.removeAll(failed);
+                pending.removeAll(conflicts);
+            }
+
+            // Refus écrits : les ressources de la demande ne sont rendues qu'une fois le refus enregistré
+            for (int i : pending) {
+                Demande demande = demandes.get(decisions.get(i).getDemandeId());
+                if ("REFUSEE".equals(demande.getStatus())) {
+                    resourceLedger.release(demande.getId());
+                }
+            }
+        }
+
+        // Résultats et notifications des décisions appliquées
+        List<Notification> notifications = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            Demande demande = demandes.get(decisions.get(i).getDemandeId());
+            DecisionOutcome outcome = outcomes.get(i);
+            outcome.setSuccess(true);
+            outcome.setStatus(demande.getStatus());
+            dashboardStatsService.demandeStatusChanged(oldStatuses.get(demande.getId()), demande.getStatus());
+            if ("VALIDE".equals(demande.getStatus())) {
+                outcome.setWorkorderId(demande.getWorkorderId());
+                notifications.add(NotificationService.notification(demande.getDemandeur(), "Demande validée",
+                        "Votre demande '" + demande.getName() + "' a été validée par l'équipe Cloud. Le provisionnement va commencer."));
+            } else {
+                notifications.add(NotificationService.notification(demande.getDemandeur(), "Demande refusée",
+                        "Votre demande '" + demande.getName() + "' a été refusée. Raison: " + demande.getJustificationRefus()));
+            }
+        }
+        notificationService.sendNotifications(notifications);
+        return outcomes;
+    }
+
+    /**
+     * Ids des demandes enregistrées par la décision prise à l'instant now ; vide si la
+     * vérification échoue (les demandes sont alors traitées comme non enregistrées)
+     */
+    private Set<String> writtenDecisions(List<String> demandeIds, LocalDateTime now) {
+        if (demandeIds.isEmpty()) {
+            return Set.of();
+        }
+        Query query = Query.query(Criteria.where("_id").in(demandeIds.stream().map(ReferenceBatchLoader::storedId).toList())
+                .and("dateValidation").is(now));
+        query.fields().include("_id");
+        try {
+            return mongoTemplate.find(query, Demande.class).stream()
+                    .map(Demande::getId)
+                    .collect(Collectors.toSet());
+        } catch (RuntimeException e) {
+            log.error("Vérification des demandes enregistrées impossible: {}", e.getMessage());
+            return Set.of();
+        }
+    }
+
+    // Workorders d'un lot dont les demandes n'ont pas été enregistrées
+    private void removeWorkOrders(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), WorkOrder.class);
+        } catch (RuntimeException e) {
+            log.error("Suppression de {} workorder(s) orphelin(s) impossible: {}", ids.size(), e.getMessage());
+        }
+    }
+
     /**
      * Demande des modifications à la demande
      */
@@ -121,12 +418,16 @@ public class CloudTeamService {
         User validateur = userRepository.findByUsername(validateurUsername)
                 .orElseThrow(() -> new RuntimeException("Validateur non trouvé: " + validateurUsername));
 
+        resourceLedger.release(demandeId);
+
+        String oldStatus = demande.getStatus();
         demande.setStatus("A_MODIFIER");
         demande.setJustificationRefus(justification);
         demande.setValidateurCloud(validateur);
         demande.setDateValidation(LocalDateTime.now());
 
         Demande savedDemande = demandeRepository.save(demande);
+        dashboardStatsService.demandeStatusChanged(oldStatus, savedDemande.getStatus());
 
         // Notifier le client
         notificationService.sendNotification(
@@ -139,60 +440,16 @@ public class CloudTeamService {
     }
 
     /**
-     * Vérifie si la demande respecte les règles de gouvernance
-     */
-    private boolean checkGovernanceRules(Demande demande) {
-        List<GovernanceRule> activeRules = governanceRuleRepository.findByIsActiveTrue();
-        
-        for (GovernanceRule rule : activeRules) {
-            // Vérifier les limites de RAM
-            if (rule.getMaxRam() != null) {
-                try {
-                    int demandeRam = Integer.parseInt(demande.getRam().replaceAll("[^0-9]", ""));
-                    if (demandeRam > rule.getMaxRam()) {
-                        return false;
-                    }
-                } catch (NumberFormatException e) {
-                    // Ignorer si le format n'est pas valide
-                }
-            }
-
-            // Vérifier les limites de CPU
-            if (rule.getMaxCpu() != null) {
-                try {
-                    int demandeCpu = Integer.parseInt(demande.getCpu().replaceAll("[^0-9]", ""));
-                    if (demandeCpu > rule.getMaxCpu()) {
-                        return false;
-                    }
-                } catch (NumberFormatException e) {
-                    // Ignorer si le format n'est pas valide
-                }
-            }
-
-            // Vérifier les règles de sécurité
-            if (rule.getRequireFirewall() != null && rule.getRequireFirewall()) {
-                if (demande.getBesoinsPareFeu() == null || demande.getBesoinsPareFeu().isEmpty()) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * Vérifie la disponibilité des ressources (simplifié)
+     * Crée un workorder pour l'équipe Support
      */
-    private boolean checkResourceAvailability(Demande demande) {
-        // TODO: Implémenter la vérification réelle des ressources disponibles
-        // Pour l'instant, on retourne toujours true
-        return true;
+    private WorkOrder createWorkOrder(Demande demande) {
+        return workOrderRepository.save(newWorkOrder(demande));
     }
 
     /**
-     * Crée un workorder pour l'équipe Support
+     * Workorder de provisionnement d'une demande validée, non enregistré
      */
-    private WorkOrder createWorkOrder(Demande demande) {
+    private static WorkOrder newWorkOrder(Demande demande) {
         WorkOrder workOrder = new WorkOrder();
         workOrder.setDemande(demande);
         workOrder.setTitre("Provisionnement VM: " + demande.getName());
@@ -211,7 +468,7 @@ public class CloudTeamService {
                 "Tests de validation"
         ));
 
-        return workOrderRepository.save(workOrder);
+        return workOrder;
     }
 }
 
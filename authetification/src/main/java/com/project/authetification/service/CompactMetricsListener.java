@@ -0,0 +1,36 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Conversion des additionalMetrics (par nom) vers leur forme stockée (par identifiant
+ * du catalogue) avant chaque écriture, y compris les inserts en masse, et inversement
+ * à chaque lecture
+ */
+@Component
+@RequiredArgsConstructor
+public class CompactMetricsListener extends AbstractMongoEventListener<MonitoringMetrics> {
+
+    private final MetricCatalog metricCatalog;
+
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<MonitoringMetrics> event) {
+        MonitoringMetrics metrics = event.getSource();
+        if (metrics.getAdditionalMetrics() != null && metrics.getExtraMetrics() == null) {
+            metrics.setExtraMetrics(metricCatalog.encode(metrics.getAdditionalMetrics()));
+        }
+    }
+
+    @Override
+    public void onAfterConvert(AfterConvertEvent<MonitoringMetrics> event) {
+        MonitoringMetrics metrics = event.getSource();
+        if (metrics.getExtraMetrics() != null) {
+            metrics.setAdditionalMetrics(metricCatalog.decode(metrics.getExtraMetrics()));
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.RollupResolution;
+import com.project.authetification.model.VM;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Compteurs du tableau de bord administrateur, tenus en mémoire et mis à jour à
+ * chaque transition de Demande / VM et à chaque écriture de métriques.
+ * Ils sont reconstruits par agrégation au démarrage puis périodiquement, ce qui
+ * corrige la plupart des écarts (autre instance...). Les métriques sont agrégées
+ * jusqu'à l'instant de début de la reconstruction ; celles écrites pendant la
+ * reconstruction et datées de cet instant ou après sont rejouées sur les compteurs
+ * reconstruits. Les moyennes CPU / RAM sont lues dans les agrégats (1d, 1h, 5m, 1m)
+ * et dans les seules métriques brutes plus récentes que le watermark 1m.
+ * Écarts connus, repris à la reconstruction suivante : une métrique en retard (datée
+ * d'avant le début) écrite pendant la reconstruction peut être omise, et une
+ * transition de Demande / VM survenue pendant la reconstruction peut être comptée
+ * deux fois (par l'agrégation et par le rejeu) ou pas du tout.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardStatsService {
+
+    private final MongoTemplate mongoTemplate;
+    private final AlertEngine alertEngine;
+    private final MetricsRollupService metricsRollupService;
+
+    // null tant que la première reconstruction n'a pas eu lieu
+    private volatile Counters counters;
+    // Variations reçues depuis le début de la reconstruction en cours (null hors reconstruction)
+    private volatile Counters delta;
+    // Début de la reconstruction en cours : métriques agrégées avant, rejouées à partir de cet instant
+    private volatile LocalDateTime cutoff;
+    // Lecture : une variation ; écriture : bascule vers les compteurs reconstruits
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Initialisation des statistiques du tableau de bord impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Réconciliation périodique avec la base
+     */
+    @Scheduled(initialDelayString = "${dashboard.stats.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${dashboard.stats.rebuild-interval-ms:3600000}")
+    public void rebuildTask() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Réconciliation des statistiques du tableau de bord impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcule les compteurs par agrégation côté MongoDB (aucun document chargé), aux
+     * écarts près décrits plus haut
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Counters fresh = new Counters();
+        LocalDateTime rebuildCutoff = LocalDateTime.now();
+        cutoff = rebuildCutoff;
+        delta = new Counters();
+        try {
+            aggregateInto(fresh, rebuildCutoff);
+            swapLock.writeLock().lock();
+            try {
+                fresh.addAll(delta);
+                counters = fresh;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } finally {
+            // cutoff est gardé : une variation en cours peut encore lire l'ancien journal
+            delta = null;
+        }
+        log.info("Statistiques du tableau de bord reconstruites en {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void aggregateInto(Counters fresh, LocalDateTime rebuildCutoff) {
+
+        for (Document group : aggregate("demandes", new Document("$group",
+                new Document("_id", "$status").append("count", new Document("$sum", 1))))) {
+            long count = toLong(group.get("count"));
+            fresh.totalDemandes.add(count);
+            if (group.get("_id") instanceof String status) {
+                fresh.demandesByStatus.computeIfAbsent(status, k -> new LongAdder()).add(count);
+            }
+        }
+
+        for (Document group : aggregate("vms", new Document("$group",
+                new Document("_id", "$status")
+                        .append("count", new Document("$sum", 1))
+                        .append("monitored", sumIf(new Document("$eq", List.of("$monitored", true))))))) {
+            long count = toLong(group.get("count"));
+            fresh.totalVms.add(count);
+            fresh.vmsMonitored.add(toLong(group.get("monitored")));
+            if (group.get("_id") instanceof String status) {
+                fresh.vmsByStatus.computeIfAbsent(status, k -> new LongAdder()).add(count);
+            }
+        }
+
+        // Agrégats du plus grossier au plus fin, chacun sur la plage que le précédent ne couvre pas
+        LocalDateTime covered = null;
+        for (int i = RollupResolution.values().length - 1; i >= 0; i--) {
+            RollupResolution resolution = RollupResolution.values()[i];
+            LocalDateTime watermark = metricsRollupService.getWatermark(resolution);
+            if (watermark == null || (covered != null && !watermark.isAfter(covered))) {
+                continue;
+            }
+            Document range = new Document("$lt", toDate(watermark));
+            if (covered != null) {
+                range.append("$gte", toDate(covered));
+            }
+            addMetricStats(fresh, aggregate(resolution.getCollectionName(), List.of(
+                    new Document("$match", new Document("bucketStart", range)),
+                    new Document("$group", new Document("_id", null)
+                            .append("count", new Document("$sum", new Document("$max",
+                                    List.of("$cpuUsage.count", "$ramUsage.count"))))
+                            .append("cpuSum", new Document("$sum", new Document("$multiply",
+                                    List.of("$cpuUsage.avg", "$cpuUsage.count"))))
+                            .append("cpuCount", new Document("$sum", "$cpuUsage.count"))
+                            .append("ramSum", new Document("$sum", new Document("$multiply",
+                                    List.of("$ramUsage.avg", "$ramUsage.count"))))
+                            .append("ramCount", new Document("$sum", "$ramUsage.count"))))));
+            covered = watermark;
+        }
+
+        // Métriques brutes pas encore agrégées, jusqu'au début de la reconstruction (index timestamp)
+        Document rawRange = new Document("$lt", toDate(rebuildCutoff));
+        if (covered != null) {
+            rawRange.append("$gte", toDate(covered));
+        }
+        List<Document> rawPipeline = new ArrayList<>();
+        rawPipeline.add(new Document("$match", new Document("timestamp", rawRange)));
+        rawPipeline.add(new Document("$group", new Document("_id", null)
+                .append("count", new Document("$sum", 1))
+                .append("cpuSum", new Document("$sum", "$" + MonitoringMetrics.CPU_USAGE_FIELD))
+                .append("cpuCount", sumIf(new Document("$isNumber", "$" + MonitoringMetrics.CPU_USAGE_FIELD)))
+                .append("ramSum", new Document("$sum", "$" + MonitoringMetrics.RAM_USAGE_FIELD))
+                .append("ramCount", sumIf(new Document("$isNumber", "$" + MonitoringMetrics.RAM_USAGE_FIELD)))));
+        addMetricStats(fresh, aggregate(MetricsStorageService.METRICS_COLLECTION, rawPipeline));
+    }
+
+    private static void addMetricStats(Counters fresh, List<Document> groups) {
+        for (Document group : groups) {
+            fresh.totalMetrics.add(toLong(group.get("count")));
+            fresh.cpuSum.add(toDouble(group.get("cpuSum")));
+            fresh.cpuCount.add(toLong(group.get("cpuCount")));
+            fresh.ramSum.add(toDouble(group.get("ramSum")));
+            fresh.ramCount.add(toLong(group.get("ramCount")));
+        }
+    }
+
+    /**
+     * Statistiques du tableau de bord, lues dans les compteurs (O(1))
+     */
+    public Map<String, Object> getSnapshot() {
+        Counters c = counters;
+        if (c == null) {
+            rebuild();
+            c = counters;
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalDemandes", c.totalDemandes.intValue());
+        stats.put("demandesEnAttente", c.countDemandes("EN_ATTENTE"));
+        stats.put("demandesValidees", c.countDemandes("VALIDE"));
+        stats.put("demandesEnProvisionnement", c.countDemandes("EN_PROVISIONNEMENT"));
+        stats.put("demandesProvisionnees", c.countDemandes("PROVISIONNEE"));
+        stats.put("demandesRefusees", c.countDemandes("REFUSEE"));
+
+        stats.put("totalVMs", c.totalVms.intValue());
+        stats.put("vmsRunning", c.countVms("RUNNING"));
+        stats.put("vmsStopped", c.countVms("STOPPED"));
+        stats.put("vmsMonitored", c.vmsMonitored.intValue());
+
+        // Alertes actives, tenues par le moteur d'alertes
+        stats.put("totalAlerts", alertEngine.getActiveAlertCount());
+        if (c.totalMetrics.sum() > 0) {
+            stats.put("avgCpuUsage", average(c.cpuSum, c.cpuCount));
+            stats.put("avgRamUsage", average(c.ramSum, c.ramCount));
+        }
+        return stats;
+    }
+
+    // --- Mises à jour incrémentales ---
+
+    public void demandeCreated(String status) {
+        apply(c -> {
+            c.totalDemandes.increment();
+            c.adjust(c.demandesByStatus, status, 1);
+        });
+    }
+
+    public void demandeStatusChanged(String oldStatus, String newStatus) {
+        if (!Objects.equals(oldStatus, newStatus)) {
+            apply(c -> {
+                c.adjust(c.demandesByStatus, oldStatus, -1);
+                c.adjust(c.demandesByStatus, newStatus, 1);
+            });
+        }
+    }
+
+    public void demandeDeleted(String status) {
+        apply(c -> {
+            c.totalDemandes.decrement();
+            c.adjust(c.demandesByStatus, status, -1);
+        });
+    }
+
+    public void vmCreated(VM vm) {
+        apply(c -> {
+            c.totalVms.increment();
+            c.adjust(c.vmsByStatus, vm.getStatus(), 1);
+            if (Boolean.TRUE.equals(vm.getMonitored())) {
+                c.vmsMonitored.increment();
+            }
+        });
+    }
+
+    public void vmStatusChanged(String oldStatus, String newStatus) {
+        if (!Objects.equals(oldStatus, newStatus)) {
+            apply(c -> {
+                c.adjust(c.vmsByStatus, oldStatus, -1);
+                c.adjust(c.vmsByStatus, newStatus, 1);
+            });
+        }
+    }
+
+    public void vmMonitoringChanged(Boolean oldMonitored, boolean newMonitored) {
+        if (Boolean.TRUE.equals(oldMonitored) != newMonitored) {
+            vmsMonitored(newMonitored ? 1 : -1);
+        }
+    }
+
+    /**
+     * VMs passées en "monitored" par une écriture en masse
+     */
+    public void vmsMonitored(long count) {
+        apply(c -> c.vmsMonitored.add(count));
+    }
+
+    public void metricsWritten(Collection<MonitoringMetrics> metrics) {
+        // Rejeu limité aux métriques que l'agrégation (timestamp < cutoff) ne compte pas
+        apply(c -> addMetrics(c, metrics, null), d -> addMetrics(d, metrics, cutoff));
+    }
+
+    private static void addMetrics(Counters c, Collection<MonitoringMetrics> metrics, LocalDateTime from) {
+        for (MonitoringMetrics m : metrics) {
+            if (from != null && m.getTimestamp() != null && m.getTimestamp().isBefore(from)) {
+                continue;
+            }
+            c.totalMetrics.increment();
+            if (m.getCpuUsage() != null) {
+                c.cpuSum.add(m.getCpuUsage());
+                c.cpuCount.increment();
+            }
+            if (m.getRamUsage() != null) {
+                c.ramSum.add(m.getRamUsage());
+                c.ramCount.increment();
+            }
+        }
+    }
+
+    private List<Document> aggregate(String collection, Document group) {
+        return aggregate(collection, List.of(group));
+    }
+
+    private List<Document> aggregate(String collection, List<Document> pipeline) {
+        return mongoTemplate.getCollection(collection)
+                .aggregate(pipeline)
+                .into(new ArrayList<>());
+    }
+
+    /**
+     * Applique une variation aux compteurs courants et, pendant une reconstruction, au
+     * journal des variations à rejouer
+     */
+    private void apply(Consumer<Counters> change) {
+        apply(change, change);
+    }
+
+    private void apply(Consumer<Counters> change, Consumer<Counters> deltaChange) {
+        swapLock.readLock().lock();
+        try {
+            Counters c = counters;
+            if (c != null) {
+                change.accept(c);
+            }
+            Counters d = delta;
+            if (d != null) {
+                deltaChange.accept(d);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Même conversion que Spring Data pour les LocalDateTime
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Document sumIf(Document condition) {
+        return new Document("$sum", new Document("$cond", List.of(condition, 1, 0)));
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    private static double toDouble(Object value) {
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    private static double average(DoubleAdder sum, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0.0 : sum.sum() / n;
+    }
+
+    private static final class Counters {
+        private final LongAdder totalDemandes = new LongAdder();
+        private final Map<String, LongAdder> demandesByStatus = new ConcurrentHashMap<>();
+        private final LongAdder totalVms = new LongAdder();
+        private final Map<String, LongAdder> vmsByStatus = new ConcurrentHashMap<>();
+        private final LongAdder vmsMonitored = new LongAdder();
+        private final LongAdder totalMetrics = new LongAdder();
+        private final DoubleAdder cpuSum = new DoubleAdder();
+        private final LongAdder cpuCount = new LongAdder();
+        private final DoubleAdder ramSum = new DoubleAdder();
+        private final LongAdder ramCount = new LongAdder();
+
+        private void addAll(Counters other) {
+            totalDemandes.add(other.totalDemandes.sum());
+            other.demandesByStatus.forEach((status, count) -> adjust(demandesByStatus, status, count.sum()));
+            totalVms.add(other.totalVms.sum());
+            other.vmsByStatus.forEach((status, count) -> adjust(vmsByStatus, status, count.sum()));
+            vmsMonitored.add(other.vmsMonitored.sum());
+            totalMetrics.add(other.totalMetrics.sum());
+            cpuSum.add(other.cpuSum.sum());
+            cpuCount.add(other.cpuCount.sum());
+            ramSum.add(other.ramSum.sum());
+            ramCount.add(other.ramCount.sum());
+        }
+
+        private void adjust(Map<String, LongAdder> byStatus, String status, long delta) {
+            if (status != null) {
+                byStatus.computeIfAbsent(status, k -> new LongAdder()).add(delta);
+            }
+        }
+
+        private int countDemandes(String status) {
+            LongAdder count = demandesByStatus.get(status);
+            return count == null ? 0 : count.intValue();
+        }
+
+        private int countVms(String status) {
+            LongAdder count = vmsByStatus.get(status);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+}
@@ -18,6 +18,8 @@ public class DemandeService {
     private final DemandeRepository demandeRepository;
     private final UserRepository userRepository;
     private final NotificationService notificationService;
+    private final DashboardStatsService dashboardStatsService;
+    private final ResourceLedger resourceLedger;
 
     public Demande createDemande(String demandeurUsername, Demande demandeDetails) {
         User demandeur = userRepository.findByUsername(demandeurUsername)
@@ -37,10 +39,12 @@ public class DemandeService {
         nouvelleDemande.setBesoinsReseau(demandeDetails.getBesoinsReseau());
         nouvelleDemande.setBesoinsPareFeu(demandeDetails.getBesoinsPareFeu());
         nouvelleDemande.setBesoinsStockage(demandeDetails.getBesoinsStockage());
+        ResourceQuantities.apply(nouvelleDemande);
         nouvelleDemande.setStatus("EN_ATTENTE");
         nouvelleDemande.setDateCreation(LocalDateTime.now());
 
         Demande savedDemande = demandeRepository.save(nouvelleDemande);
+        dashboardStatsService.demandeCreated(savedDemande.getStatus());
         
         // Envoyer une notification au demandeur
         notificationService.sendNotification(
@@ -66,7 +70,7 @@ public class DemandeService {
     public List<Demande> getDemandesByDemandeur(String demandeurUsername) {
         User demandeur = userRepository.findByUsername(demandeurUsername)
                 .orElseThrow(() -> new RuntimeException("Demandeur non trouvé: " + demandeurUsername));
-        return demandeRepository.findByDemandeur_Id(demandeur.getId());
+        return demandeRepository.findByDemandeurIdWithReferences(demandeur.getId());
     }
 
     public Demande updateDemande(String id, String demandeurUsername, Demande demandeDetails) {
@@ -89,6 +93,7 @@ public class DemandeService {
         demande.setBesoinsReseau(demandeDetails.getBesoinsReseau());
         demande.setBesoinsPareFeu(demandeDetails.getBesoinsPareFeu());
         demande.setBesoinsStockage(demandeDetails.getBesoinsStockage());
+        ResourceQuantities.apply(demande);
         demande.setDateModification(LocalDateTime.now());
 
         return demandeRepository.save(demande);
@@ -108,6 +113,7 @@ public class DemandeService {
         String oldStatus = demande.getStatus();
         demande.setStatus(status.toString());
         Demande updatedDemande = demandeRepository.save(demande);
+        dashboardStatsService.demandeStatusChanged(oldStatus, updatedDemande.getStatus());
 
         if (!oldStatus.equals(updatedDemande.getStatus())) {
             notificationService.sendNotification(
@@ -129,5 +135,7 @@ public class DemandeService {
         }
 
         demandeRepository.deleteById(id);
+        resourceLedger.release(id);
+        dashboardStatsService.demandeDeleted(demande.getStatus());
     }
 }
@@ -0,0 +1,434 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.GovernanceRule;
+import com.project.authetification.repository.GovernanceRuleRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Règles de gouvernance compilées en mémoire : chaque champ renseigné d'une règle active
+ * (maxRam, maxCpu, maxDisk, requireFirewall, requireEncryption, allowedNetworks,
+ * restrictedNetworks) devient un prédicat sur les caractéristiques de la demande, lues
+ * une seule fois par évaluation. L'ensemble compilé est immuable et remplacé d'un bloc
+ * (référence volatile) à chaque création / modification / désactivation de règle ;
+ * une évaluation renvoie toutes les violations, pas seulement la première.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GovernanceEngine {
+
+    /**
+     * Une règle non respectée (field : champ de la règle en cause)
+     */
+    public record Violation(String ruleId, String ruleName, String field, String message) {
+    }
+
+    /**
+     * La demande ne respecte pas une ou plusieurs règles
+     */
+    public static class ViolationException extends RuntimeException {
+        private final List<Violation> violations;
+
+        public ViolationException(List<Violation> violations) {
+            super("La demande ne respecte pas les règles de gouvernance: "
+                    + violations.stream().map(Violation::message).collect(Collectors.joining(" ; ")));
+            this.violations = violations;
+        }
+
+        public List<Violation> getViolations() {
+            return violations;
+        }
+    }
+
+    // Mots signalant un disque chiffré dans le type de disque ou les besoins de stockage
+    private static final List<String> ENCRYPTION_KEYWORDS = List.of("chiffr", "encrypt");
+
+    private final GovernanceRuleRepository governanceRuleRepository;
+
+    private volatile RuleSet ruleSet = new RuleSet(List.of(), 0);
+    private volatile String rulesFingerprint = "";
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            reloadRules();
+        } catch (Exception e) {
+            log.error("Chargement des règles de gouvernance impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Prend en compte les règles modifiées par une autre instance
+     */
+    @Scheduled(fixedDelayString = "${governance.rules-refresh-ms:30000}")
+    public void refreshRules() {
+        try {
+            reloadRules();
+        } catch (Exception e) {
+            log.warn("Rechargement des règles de gouvernance impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recompile les règles actives si elles ont changé depuis le dernier chargement
+     */
+    public synchronized void reloadRules() {
+        List<GovernanceRule> active = governanceRuleRepository.findByIsActiveTrue();
+        String fingerprint = active.stream()
+                .map(rule -> rule.getId() + "@" + rule.getDateModification())
+                .sorted()
+                .collect(Collectors.joining(","));
+        if (fingerprint.equals(rulesFingerprint)) {
+            return;
+        }
+        RuleSet compiled = compileAll(active);
+        ruleSet = compiled;
+        rulesFingerprint = fingerprint;
+        log.info("{} règle(s) de gouvernance chargée(s) ({} contrôle(s))", compiled.rules(), compiled.checks().size());
+    }
+
+    /**
+     * Vérifie qu'une règle est compilable (plages réseau)
+     */
+    public static void validate(GovernanceRule rule) {
+        compile(rule, new ArrayList<>());
+    }
+
+    /**
+     * Violations de la demande pour le réseau et l'adresse choisis à la validation
+     * (ceux de la demande si null)
+     */
+    public List<Violation> evaluate(Demande demande, String reseau, String adresseIp) {
+        return evaluate(ruleSet.checks(), Facts.of(demande,
+                reseau != null ? reseau : demande.getReseau(),
+                adresseIp != null ? adresseIp : demande.getAdresseIp()));
+    }
+
+    /**
+     * Demande à évaluer avec le réseau et l'adresse envisagés (traitement en lot)
+     */
+    public record Candidate(Demande demande, String reseau, String adresseIp) {
+    }
+
+    /**
+     * Évalue un lot de demandes contre un même ensemble de règles (lu une seule fois) ;
+     * violations dans l'ordre des candidats
+     */
+    public List<List<Violation>> evaluateAll(List<Candidate> candidates) {
+        List<Check> current = ruleSet.checks();
+        List<List<Violation>> results = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            Demande demande = candidate.demande();
+            results.add(evaluate(current, Facts.of(demande,
+                    candidate.reseau() != null ? candidate.reseau() : demande.getReseau(),
+                    candidate.adresseIp() != null ? candidate.adresseIp() : demande.getAdresseIp())));
+        }
+        return results;
+    }
+
+    /**
+     * Lève ViolationException si la demande viole au moins une règle
+     */
+    public void check(Demande demande, String reseau, String adresseIp) {
+        List<Violation> violations = evaluate(demande, reseau, adresseIp);
+        if (!violations.isEmpty()) {
+            throw new ViolationException(violations);
+        }
+    }
+
+    /**
+     * Benchmark de l'évaluation : règles actives (ou syntheticRules règles synthétiques)
+     * appliquées à des demandes synthétiques, sur un seul thread après chauffe
+     */
+    public Map<String, Object> benchmark(int evaluations, int syntheticRules) {
+        RuleSet benchmarked = syntheticRules > 0 ? compileAll(syntheticRules(syntheticRules)) : ruleSet;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Facts[] facts = new Facts[1024];
+        for (int i = 0; i < facts.length; i++) {
+            Demande demande = new Demande();
+            demande.setCpu(String.valueOf(random.nextInt(1, 33)));
+            demande.setRam(random.nextInt(1, 129) + " Go");
+            demande.setDisque(random.nextInt(10, 2001) + " Go");
+            demande.setBesoinsPareFeu(random.nextBoolean() ? "443/tcp" : null);
+            demande.setTypeDisque(random.nextBoolean() ? "SSD chiffré" : "SSD");
+            facts[i] = Facts.of(demande, "lan-" + random.nextInt(8), "10.0." + random.nextInt(256) + "." + random.nextInt(256));
+        }
+
+        long violations = 0;
+        for (int i = 0; i < Math.min(evaluations, 100_000); i++) {
+            violations += evaluate(benchmarked.checks(), facts[i & (facts.length - 1)]).size();
+        }
+        violations = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            violations += evaluate(benchmarked.checks(), facts[i & (facts.length - 1)]).size();
+        }
+        long nanos = System.nanoTime() - start;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rules", benchmarked.rules());
+        result.put("checks", benchmarked.checks().size());
+        result.put("evaluations", evaluations);
+        result.put("violations", violations);
+        result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(nanos));
+        result.put("nsPerEvaluation", nanos / Math.max(1, evaluations));
+        result.put("evaluationsPerSecond", Math.round(evaluations / Math.max(nanos / 1e9, 1e-9)));
+        return result;
+    }
+
+    private static List<Violation> evaluate(List<Check> checks, Facts facts) {
+        List<Violation> violations = null;
+        for (Check check : checks) {
+            if (!check.satisfied.test(facts)) {
+                if (violations == null) {
+                    violations = new ArrayList<>(4);
+                }
+                violations.add(new Violation(check.ruleId, check.ruleName, check.field, check.message.apply(facts)));
+            }
+        }
+        return violations == null ? List.of() : violations;
+    }
+
+    private static RuleSet compileAll(List<GovernanceRule> rules) {
+        List<Check> compiled = new ArrayList<>();
+        int count = 0;
+        for (GovernanceRule rule : rules) {
+            List<Check> ruleChecks = new ArrayList<>();
+            try {
+                compile(rule, ruleChecks);
+            } catch (IllegalArgumentException e) {
+                log.warn("Règle de gouvernance {} ignorée: {}", rule.getId(), e.getMessage());
+                continue;
+            }
+            compiled.addAll(ruleChecks);
+            count++;
+        }
+        return new RuleSet(List.copyOf(compiled), count);
+    }
+
+    /**
+     * Un contrôle par champ renseigné de la règle. Une quantité illisible dans la demande
+     * ne viole pas de limite (comme avant)
+     */
+    private static void compile(GovernanceRule rule, List<Check> out) {
+        String name = rule.getNom() != null ? rule.getNom() : rule.getId();
+        if (rule.getMaxRam() != null) {
+            long max = rule.getMaxRam();
+            long maxMib = max * 1024;
+            out.add(new Check(rule.getId(), name, "maxRam", f -> f.ramMib < 0 || f.ramMib <= maxMib,
+                    f -> "RAM " + f.ramMib / 1024.0 + " Go > " + max + " Go (" + name + ")"));
+        }
+        if (rule.getMaxCpu() != null) {
+            long max = rule.getMaxCpu();
+            out.add(new Check(rule.getId(), name, "maxCpu", f -> f.cpu < 0 || f.cpu <= max,
+                    f -> "CPU " + f.cpu + " > " + max + " (" + name + ")"));
+        }
+        if (rule.getMaxDisk() != null) {
+            long max = rule.getMaxDisk();
+            out.add(new Check(rule.getId(), name, "maxDisk", f -> f.disk < 0 || f.disk <= max,
+                    f -> "Disque " + f.disk + " Go > " + max + " Go (" + name + ")"));
+        }
+        if (Boolean.TRUE.equals(rule.getRequireFirewall())) {
+            out.add(new Check(rule.getId(), name, "requireFirewall", f -> f.firewall,
+                    f -> "Besoins pare-feu obligatoires (" + name + ")"));
+        }
+        if (Boolean.TRUE.equals(rule.getRequireEncryption())) {
+            out.add(new Check(rule.getId(), name, "requireEncryption", f -> f.encrypted,
+                    f -> "Disque chiffré obligatoire (" + name + ")"));
+        }
+        NetworkSet allowed = NetworkSet.parse(rule.getAllowedNetworks());
+        if (!allowed.isEmpty()) {
+            out.add(new Check(rule.getId(), name, "allowedNetworks", f -> f.network == null && f.ip < 0 || allowed.matches(f),
+                    f -> "Réseau " + f.describeNetwork() + " non autorisé (" + name + ")"));
+        }
+        NetworkSet restricted = NetworkSet.parse(rule.getRestrictedNetworks());
+        if (!restricted.isEmpty()) {
+            out.add(new Check(rule.getId(), name, "restrictedNetworks", f -> !restricted.matches(f),
+                    f -> "Réseau " + f.describeNetwork() + " restreint (" + name + ")"));
+        }
+    }
+
+    private static List<GovernanceRule> syntheticRules(int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<GovernanceRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GovernanceRule rule = new GovernanceRule();
+            rule.setId("bench-" + i);
+            rule.setNom("Règle " + i);
+            rule.setMaxRam(random.nextInt(16, 257));
+            rule.setMaxCpu(random.nextInt(4, 65));
+            rule.setMaxDisk(random.nextInt(500, 4001));
+            rule.setRequireFirewall(i % 2 == 0);
+            rule.setRequireEncryption(i % 3 == 0);
+            rule.setAllowedNetworks("lan-0,lan-1,lan-2,lan-3,lan-4,lan-5,10.0.0.0/16");
+            rule.setRestrictedNetworks("dmz,192.168.0.0/16");
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * Ensemble compilé des règles actives, remplacé d'un bloc
+     */
+    private record RuleSet(List<Check> checks, int rules) {
+    }
+
+    /**
+     * Contrôle compilé d'un champ de règle
+     */
+    private record Check(String ruleId, String ruleName, String field, Predicate<Facts> satisfied,
+                         Function<Facts, String> message) {
+    }
+
+    /**
+     * Caractéristiques d'une demande utiles aux règles, lues une fois par évaluation
+     * (-1 = quantité ou adresse absente / illisible)
+     */
+    private record Facts(long cpu, long ramMib, long disk, boolean firewall, boolean encrypted, String network, long ip) {
+
+        private static Facts of(Demande demande, String reseau, String adresseIp) {
+            return new Facts(
+                    quantity(ResourceQuantities.vcpu(demande)),
+                    quantity(ResourceQuantities.ramMib(demande)),
+                    quantity(ResourceQuantities.disqueGib(demande)),
+                    demande.getBesoinsPareFeu() != null && !demande.getBesoinsPareFeu().isBlank(),
+                    mentionsEncryption(demande.getTypeDisque()) || mentionsEncryption(demande.getBesoinsStockage()),
+                    reseau == null || reseau.isBlank() ? null : reseau.trim().toLowerCase(Locale.ROOT),
+                    NetworkSet.parseIpv4(adresseIp));
+        }
+
+        private String describeNetwork() {
+            if (network == null) {
+                return NetworkSet.formatIpv4(ip);
+            }
+            return ip < 0 ? network : network + " / " + NetworkSet.formatIpv4(ip);
+        }
+
+        private static long quantity(Number value) {
+            return value == null ? -1 : value.longValue();
+        }
+
+        private static boolean mentionsEncryption(String value) {
+            if (value == null) {
+                return false;
+            }
+            String lower = value.toLowerCase(Locale.ROOT);
+            return ENCRYPTION_KEYWORDS.stream().anyMatch(lower::contains);
+        }
+    }
+
+    /**
+     * Liste de réseaux d'une règle, séparés par des virgules : noms de réseau
+     * (comparés au réseau choisi) ou plages CIDR IPv4 (comparées à l'adresse IP)
+     */
+    private record NetworkSet(Set<String> names, long[] bases, long[] masks) {
+
+        private static NetworkSet parse(String value) {
+            if (value == null || value.isBlank()) {
+                return new NetworkSet(Set.of(), new long[0], new long[0]);
+            }
+            Set<String> names = new HashSet<>();
+            List<long[]> ranges = new ArrayList<>();
+            for (String token : value.split("[,;\\s]+")) {
+                String entry = token.trim().toLowerCase(Locale.ROOT);
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int slash = entry.indexOf('/');
+                long ip = parseIpv4(slash < 0 ? entry : entry.substring(0, slash));
+                if (ip < 0) {
+                    names.add(entry);
+                    continue;
+                }
+                int prefix = 32;
+                if (slash >= 0) {
+                    try {
+                        prefix = Integer.parseInt(entry.substring(slash + 1));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Plage réseau invalide: " + token);
+                    }
+                    if (prefix < 0 || prefix > 32) {
+                        throw new IllegalArgumentException("Plage réseau invalide: " + token);
+                    }
+                }
+                long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+                ranges.add(new long[]{ip & mask, mask});
+            }
+            long[] bases = new long[ranges.size()];
+            long[] masks = new long[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                bases[i] = ranges.get(i)[0];
+                masks[i] = ranges.get(i)[1];
+            }
+            return new NetworkSet(Set.copyOf(names), bases, masks);
+        }
+
+        private boolean isEmpty() {
+            return names.isEmpty() && bases.length == 0;
+        }
+
+        private boolean matches(Facts facts) {
+            if (facts.network != null && names.contains(facts.network)) {
+                return true;
+            }
+            if (facts.ip >= 0) {
+                for (int i = 0; i < bases.length; i++) {
+                    if ((facts.ip & masks[i]) == bases[i]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adresse IPv4 en entier non signé, -1 si ce n'en est pas une (pas de résolution DNS)
+         */
+        private static long parseIpv4(String value) {
+            if (value == null) {
+                return -1;
+            }
+            String[] parts = value.trim().split("\\.", -1);
+            if (parts.length != 4) {
+                return -1;
+            }
+            long ip = 0;
+            for (String part : parts) {
+                if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(Character::isDigit)) {
+                    return -1;
+                }
+                int octet = Integer.parseInt(part);
+                if (octet > 255) {
+                    return -1;
+                }
+                ip = (ip << 8) | octet;
+            }
+            return ip;
+        }
+
+        private static String formatIpv4(long ip) {
+            if (ip < 0) {
+                return "?";
+            }
+            return ((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF);
+        }
+    }
+}
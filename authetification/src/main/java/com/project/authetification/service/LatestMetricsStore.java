@@ -0,0 +1,469 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.VM;
+import com.project.authetification.model.VmSummary;
+import com.project.authetification.repository.MonitoringMetricsRepository;
+import com.project.authetification.repository.VMRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dernières métriques de chaque VM en mémoire : un buffer circulaire de taille fixe
+ * par VM, stocké dans des tableaux primitifs et trié par horodatage (les métriques
+ * ingérées peuvent arriver dans le désordre). Alimenté par collectMetrics et chargé
+ * depuis Mongo au démarrage ; tant que le chargement n'est pas terminé, ou si un
+ * buffer ne contient pas toutes les métriques demandées, les lectures retombent sur
+ * Mongo (Optional vide).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LatestMetricsStore {
+
+    private final MonitoringMetricsRepository monitoringMetricsRepository;
+    private final VMRepository vmRepository;
+    private final MeterRegistry meterRegistry;
+
+    // Nombre de métriques conservées par VM
+    @Value("${monitoring.ring.capacity:256}")
+    private int capacity;
+
+    // Nombre maximal de VMs en mémoire (borne la mémoire totale)
+    @Value("${monitoring.ring.max-vms:20000}")
+    private int maxVms;
+
+    private final ConcurrentHashMap<String, Ring> rings = new ConcurrentHashMap<>();
+    private volatile boolean warmed;
+    // false dès qu'une VM n'a pas pu être gardée en mémoire (max-vms atteint)
+    private volatile boolean complete = true;
+
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("monitoring.ring.bytes", this, LatestMetricsStore::estimatedBytes)
+                .description("Mémoire estimée des buffers de métriques par VM")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.ring.vms", rings, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chargement initial depuis Mongo, en arrière-plan pour ne pas retarder le démarrage
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofVirtual().name("metrics-ring-warmup").start(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                // Projection : la demande de chaque VM n'est pas chargée
+                for (VM vm : vmRepository.findAllSummaries()) {
+                    List<MonitoringMetrics> newestFirst = monitoringMetricsRepository
+                            .findRecent(vm.getId(), null, null, null, capacity).getItems();
+                    if (!newestFirst.isEmpty()) {
+                        Ring ring = ringFor(vm.getId(), VmSummary.of(vm));
+                        if (ring != null) {
+                            ring.warm(newestFirst);
+                        }
+                    }
+                }
+                warmed = true;
+                log.info("Buffers de métriques chargés: {} VMs en {} ms", rings.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Chargement des buffers de métriques impossible, lectures servies par Mongo: {}", e.getMessage());
+            }
+        });
+    }
+
+    public void add(MonitoringMetrics metrics) {
+        if (metrics.getVmId() == null || metrics.getTimestamp() == null) {
+            return;
+        }
+        Ring ring = ringFor(metrics.getVmId(), metrics.getVm());
+        if (ring != null) {
+            ring.add(metrics);
+        }
+    }
+
+    public void addAll(Collection<MonitoringMetrics> metrics) {
+        metrics.forEach(this::add);
+    }
+
+    /**
+     * Dernières métriques d'une VM, dans l'ordre chronologique ; vide si le buffer ne
+     * peut pas répondre entièrement (plus de métriques demandées qu'il n'en garde)
+     */
+    public Optional<List<MonitoringMetrics>> latest(String vmId, int limit) {
+        if (!warmed) {
+            return Optional.empty();
+        }
+        Ring ring = rings.get(vmId);
+        if (ring == null) {
+            return complete ? Optional.of(List.of()) : Optional.empty();
+        }
+        return Optional.ofNullable(ring.latestIfComplete(limit));
+    }
+
+    /**
+     * Métriques les plus récentes toutes VMs confondues, les plus récentes d'abord
+     * (fusion des buffers)
+     */
+    public Optional<List<MonitoringMetrics>> recent(int limit) {
+        if (!warmed || !complete) {
+            return Optional.empty();
+        }
+        // Clé de tête de chaque buffer dans une file de priorité, ordre (timestamp, id)
+        // décroissant comme l'index Mongo : O(VMs + limit log VMs), seules les métriques
+        // renvoyées sont construites
+        PriorityQueue<Head> heads = new PriorityQueue<>(HEAD_ORDER);
+        for (Ring ring : rings.values()) {
+            // Chaque VM doit pouvoir fournir ses "limit" dernières métriques, sinon la page serait fausse
+            if (!ring.canServe(limit)) {
+                return Optional.empty();
+            }
+            Head head = ring.headBefore(null);
+            if (head != null) {
+                heads.add(head);
+            }
+        }
+
+        List<MonitoringMetrics> result = new ArrayList<>(limit);
+        while (result.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            MonitoringMetrics m = head.ring().metricsAt(head);
+            // null : retirée du buffer (plein) depuis la lecture de la clé
+            if (m != null) {
+                result.add(m);
+            }
+            Head next = head.ring().headBefore(head);
+            if (next != null) {
+                heads.add(next);
+            }
+        }
+        return Optional.of(result);
+    }
+
+    public long estimatedBytes() {
+        return (long) rings.size() * Ring.bytesPerRing(capacity);
+    }
+
+    private Ring ringFor(String vmId, VmSummary vm) {
+        Ring ring = rings.get(vmId);
+        if (ring == null) {
+            if (rings.size() >= maxVms) {
+                if (complete) {
+                    log.warn("Limite de {} VMs en mémoire atteinte, les lectures globales repassent par Mongo", maxVms);
+                }
+                complete = false;
+                return null;
+            }
+            ring = rings.computeIfAbsent(vmId, id -> new Ring(id, capacity));
+        }
+        ring.vm = vm;
+        return ring;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    // Ids absents avant tous les autres, comme dans le tri des buffers
+    private static int compareIds(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static final Comparator<Head> HEAD_ORDER = Comparator.comparingLong(Head::timestamp)
+            .thenComparing(Head::id, LatestMetricsStore::compareIds)
+            .reversed();
+
+    /**
+     * Position dans un buffer pendant la fusion : la clé (horodatage, id) de la métrique,
+     * qui reste valable si le buffer reçoit des métriques entre-temps
+     */
+    private record Head(Ring ring, long timestamp, String id) {
+    }
+
+    /**
+     * Buffer circulaire d'une VM, trié par (horodatage, id) comme l'index Mongo. Les
+     * valeurs absentes sont codées NaN (doubles), Integer.MIN_VALUE (uptime) ou 0
+     * (booléens : 0 absent, 1 faux, 2 vrai).
+     */
+    private static final class Ring {
+        private final String vmId;
+        private final int capacity;
+        private final long[] timestamps;
+        private final double[] cpuUsage;
+        private final double[] ramUsage;
+        private final double[] diskUsage;
+        private final double[] networkLatency;
+        private final double[] networkThroughput;
+        private final int[] uptime;
+        private final byte[] isAvailable;
+        private final byte[] hasAlerts;
+        private final String[] ids;
+        private final String[] sources;
+        private final String[] vmStatus;
+        private final String[] alertMessages;
+
+        private volatile VmSummary vm;
+        private int next; // Case qui suit la plus récente
+        private int size;
+        // false dès que des métriques plus anciennes de la VM peuvent exister hors du buffer
+        private boolean exhaustive = true;
+
+        private Ring(String vmId, int capacity) {
+            this.vmId = vmId;
+            this.capacity = capacity;
+            timestamps = new long[capacity];
+            cpuUsage = new double[capacity];
+            ramUsage = new double[capacity];
+            diskUsage = new double[capacity];
+            networkLatency = new double[capacity];
+            networkThroughput = new double[capacity];
+            uptime = new int[capacity];
+            isAvailable = new byte[capacity];
+            hasAlerts = new byte[capacity];
+            ids = new String[capacity];
+            sources = new String[capacity];
+            vmStatus = new String[capacity];
+            alertMessages = new String[capacity];
+        }
+
+        // 6 long/double + int + 2 byte + 4 références (compressées) par case, plus les en-têtes de tableaux
+        static long bytesPerRing(int capacity) {
+            return (long) capacity * (6 * 8 + 4 + 2 + 4 * 4) + 13 * 16 + 64;
+        }
+
+        /**
+         * Insère à sa place chronologique (en général en tête, sans décalage) ; buffer
+         * plein : la plus ancienne est retirée, ou la nouvelle ignorée si c'est elle
+         */
+        synchronized void add(MonitoringMetrics m) {
+            long timestamp = toEpochMillis(m.getTimestamp());
+            String id = m.getId();
+            int pos = size;
+            while (pos > 0 && isAfter(slot(pos - 1), timestamp, id)) {
+                pos--;
+            }
+            if (size == capacity) {
+                exhaustive = false;
+                if (pos == 0) {
+                    return;
+                }
+                pos--;
+            } else {
+                size++;
+            }
+            next = (next + 1) % capacity;
+            for (int k = size - 1; k > pos; k--) {
+                move(slot(k - 1), slot(k));
+            }
+            write(slot(pos), m, timestamp);
+        }
+
+        // Position physique de la k-ième métrique (0 = la plus ancienne)
+        private int slot(int k) {
+            return Math.floorMod(next - size + k, capacity);
+        }
+
+        private boolean isAfter(int i, long timestamp, String id) {
+            if (timestamps[i] != timestamp) {
+                return timestamps[i] > timestamp;
+            }
+            return compareIds(ids[i], id) > 0;
+        }
+
+        private boolean isBefore(int i, long timestamp, String id) {
+            if (timestamps[i] != timestamp) {
+                return timestamps[i] < timestamp;
+            }
+            return compareIds(ids[i], id) < 0;
+        }
+
+        // Nombre de métriques strictement antérieures à (timestamp, id), par dichotomie
+        private int countBefore(long timestamp, String id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (isBefore(slot(mid), timestamp, id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Clé de la métrique la plus récente strictement antérieure à from (la plus
+         * récente du buffer si from est null), ou null
+         */
+        synchronized Head headBefore(Head from) {
+            int k = from == null ? size - 1 : countBefore(from.timestamp(), from.id()) - 1;
+            if (k < 0) {
+                return null;
+            }
+            int i = slot(k);
+            return new Head(this, timestamps[i], ids[i]);
+        }
+
+        /**
+         * Métrique de clé head, ou null si elle a quitté le buffer
+         */
+        synchronized MonitoringMetrics metricsAt(Head head) {
+            int k = countBefore(head.timestamp(), head.id());
+            if (k < size) {
+                int i = slot(k);
+                if (timestamps[i] == head.timestamp() && Objects.equals(ids[i], head.id())) {
+                    return toMetrics(i);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Vrai si le buffer contient toutes les "limit" dernières métriques de la VM
+         */
+        synchronized boolean canServe(int limit) {
+            return limit <= size || exhaustive;
+        }
+
+        private void move(int from, int to) {
+            timestamps[to] = timestamps[from];
+            cpuUsage[to] = cpuUsage[from];
+            ramUsage[to] = ramUsage[from];
+            diskUsage[to] = diskUsage[from];
+            networkLatency[to] = networkLatency[from];
+            networkThroughput[to] = networkThroughput[from];
+            uptime[to] = uptime[from];
+            isAvailable[to] = isAvailable[from];
+            hasAlerts[to] = hasAlerts[from];
+            ids[to] = ids[from];
+            sources[to] = sources[from];
+            vmStatus[to] = vmStatus[from];
+            alertMessages[to] = alertMessages[from];
+        }
+
+        private void write(int i, MonitoringMetrics m, long timestamp) {
+            timestamps[i] = timestamp;
+            cpuUsage[i] = orNaN(m.getCpuUsage());
+            ramUsage[i] = orNaN(m.getRamUsage());
+            diskUsage[i] = orNaN(m.getDiskUsage());
+            networkLatency[i] = orNaN(m.getNetworkLatency());
+            networkThroughput[i] = orNaN(m.getNetworkThroughput());
+            uptime[i] = m.getUptime() == null ? Integer.MIN_VALUE : m.getUptime();
+            isAvailable[i] = toFlag(m.getIsAvailable());
+            hasAlerts[i] = toFlag(m.getHasAlerts());
+            ids[i] = m.getId();
+            sources[i] = m.getSource();
+            vmStatus[i] = m.getVmStatus();
+            alertMessages[i] = m.getAlertMessage();
+        }
+
+        /**
+         * Insère l'historique Mongo avant les métriques déjà reçues depuis le démarrage
+         */
+        synchronized void warm(List<MonitoringMetrics> newestFirst) {
+            List<MonitoringMetrics> live = latest(size);
+            long firstLive = live.isEmpty() ? Long.MAX_VALUE : toEpochMillis(live.get(0).getTimestamp());
+
+            List<MonitoringMetrics> merged = new ArrayList<>(capacity);
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                if (toEpochMillis(newestFirst.get(i).getTimestamp()) < firstLive) {
+                    merged.add(newestFirst.get(i));
+                }
+            }
+            merged.addAll(live);
+
+            next = 0;
+            size = 0;
+            // Historique tronqué par la requête : des métriques plus anciennes restent en base
+            exhaustive = exhaustive && newestFirst.size() < capacity && merged.size() <= capacity;
+            for (MonitoringMetrics m : merged.subList(Math.max(0, merged.size() - capacity), merged.size())) {
+                add(m);
+            }
+        }
+
+        /**
+         * Les "limit" dernières métriques si le buffer les contient toutes, sinon null
+         */
+        synchronized List<MonitoringMetrics> latestIfComplete(int limit) {
+            return limit <= size || exhaustive ? latest(limit) : null;
+        }
+
+        /**
+         * Les "limit" dernières métriques, dans l'ordre chronologique
+         */
+        synchronized List<MonitoringMetrics> latest(int limit) {
+            int count = Math.min(Math.max(limit, 0), size);
+            List<MonitoringMetrics> result = new ArrayList<>(count);
+            for (int k = count; k > 0; k--) {
+                result.add(toMetrics(Math.floorMod(next - k, capacity)));
+            }
+            return result;
+        }
+
+        private MonitoringMetrics toMetrics(int i) {
+            MonitoringMetrics m = new MonitoringMetrics();
+            m.setId(ids[i]);
+            m.setVmId(vmId);
+            m.setVm(vm);
+            m.setTimestamp(fromEpochMillis(timestamps[i]));
+            m.setSource(sources[i]);
+            m.setCpuUsage(orNull(cpuUsage[i]));
+            m.setRamUsage(orNull(ramUsage[i]));
+            m.setDiskUsage(orNull(diskUsage[i]));
+            m.setNetworkLatency(orNull(networkLatency[i]));
+            m.setNetworkThroughput(orNull(networkThroughput[i]));
+            m.setVmStatus(vmStatus[i]);
+            m.setIsAvailable(fromFlag(isAvailable[i]));
+            m.setUptime(uptime[i] == Integer.MIN_VALUE ? null : uptime[i]);
+            m.setHasAlerts(fromFlag(hasAlerts[i]));
+            m.setAlertMessage(alertMessages[i]);
+            return m;
+        }
+
+        private static double orNaN(Double value) {
+            return value == null ? Double.NaN : value;
+        }
+
+        private static Double orNull(double value) {
+            return Double.isNaN(value) ? null : value;
+        }
+
+        private static byte toFlag(Boolean value) {
+            return value == null ? 0 : (byte) (value ? 2 : 1);
+        }
+
+        private static Boolean fromFlag(byte flag) {
+            return flag == 0 ? null : flag == 2;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.MonitoringMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Diffusion en direct (Server-Sent Events) des métriques et des changements d'état
+ * des alertes. Chaque abonné (une VM, une liste de VMs ou toute la flotte) a un buffer
+ * borné : quand il est plein, l'événement le plus ancien est abandonné. Chaque abonné
+ * est servi par un thread virtuel, bloqué sans coût tant qu'il n'y a rien à envoyer.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LiveMetricsBroadcaster {
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+
+    // Événements en attente par abonné avant abandon des plus anciens
+    @Value("${monitoring.live.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${monitoring.live.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    // Durée de vie d'une connexion SSE (le client se reconnecte ensuite)
+    @Value("${monitoring.live.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> fleetSubscribers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Set<Subscriber>> subscribersByVm = new ConcurrentHashMap<>();
+    private final AtomicLong subscriberSequence = new AtomicLong();
+    private Counter droppedEvents;
+
+    @PostConstruct
+    public void registerMeters() {
+        Gauge.builder("monitoring.live.subscribers", subscribers, Set::size).register(meterRegistry);
+        droppedEvents = meterRegistry.counter("monitoring.live.dropped");
+    }
+
+    /**
+     * Abonnement aux événements de certaines VMs (vmIds vide ou null = toute la flotte)
+     */
+    public SseEmitter subscribe(Collection<String> vmIds) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Nombre maximal d'abonnés atteint: " + maxSubscribers);
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Set<String> scope = vmIds == null ? Set.of() : Set.copyOf(vmIds);
+        Subscriber subscriber = new Subscriber(subscriberSequence.incrementAndGet(), emitter, scope, bufferSize);
+
+        subscribers.add(subscriber);
+        if (scope.isEmpty()) {
+            fleetSubscribers.add(subscriber);
+        } else {
+            scope.forEach(vmId -> subscribersByVm.computeIfAbsent(vmId, id -> ConcurrentHashMap.newKeySet())
+                    .add(subscriber));
+        }
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        Thread.ofVirtual()
+                .name("sse-subscriber-" + subscriber.id)
+                .start(() -> deliver(subscriber));
+        // Premier événement : confirme l'abonnement au client
+        subscriber.offer(SseEmitter.event().name("subscribed").data(Map.of("vmIds", scope)).build());
+        return emitter;
+    }
+
+    public void publishMetric(MonitoringMetrics metrics) {
+        if (subscribers.isEmpty() || metrics.getVmId() == null) {
+            return;
+        }
+        String vmId = metrics.getVmId();
+        publish(vmId, SseEmitter.event().name("metric").id(metrics.getId()).data(toJson(toPayload(vmId, metrics)), MediaType.APPLICATION_JSON).build());
+    }
+
+    public void publishMetrics(Collection<MonitoringMetrics> metrics) {
+        if (!subscribers.isEmpty()) {
+            metrics.forEach(this::publishMetric);
+        }
+    }
+
+    /**
+     * Changement d'état d'une alerte (ouverture, acquittement, résolution)
+     */
+    public void publishAlert(Alert alert) {
+        if (!subscribers.isEmpty()) {
+            publish(alert.getVmId(), SseEmitter.event().name("alert").id(alert.getId()).data(toJson(alert), MediaType.APPLICATION_JSON).build());
+        }
+    }
+
+    /**
+     * Commentaire SSE périodique : garde les connexions ouvertes derrière les proxys
+     * et détecte les clients partis
+     */
+    @Scheduled(fixedDelayString = "${monitoring.live.heartbeat-ms:15000}")
+    public void heartbeat() {
+        Set<ResponseBodyEmitter.DataWithMediaType> keepAlive = SseEmitter.event().comment("keep-alive").build();
+        subscribers.forEach(subscriber -> subscriber.offerIfIdle(keepAlive));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    // L'événement est sérialisé une seule fois puis partagé entre les abonnés
+    private void publish(String vmId, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        fleetSubscribers.forEach(subscriber -> subscriber.offer(event));
+        Set<Subscriber> scoped = subscribersByVm.get(vmId);
+        if (scoped != null) {
+            scoped.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    private void deliver(Subscriber subscriber) {
+        try {
+            while (!subscriber.closed) {
+                Set<ResponseBodyEmitter.DataWithMediaType> event = subscriber.take();
+                if (event != null) {
+                    subscriber.emitter.send(event);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Client déconnecté
+            log.debug("Abonné SSE {} déconnecté: {}", subscriber.id, e.getMessage());
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            unsubscribe(subscriber);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        subscriber.close();
+        fleetSubscribers.remove(subscriber);
+        for (String vmId : subscriber.vmIds) {
+            subscribersByVm.computeIfPresent(vmId, (id, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Sérialisation de l'événement impossible", e);
+        }
+    }
+
+    private static Map<String, Object> toPayload(String vmId, MonitoringMetrics m) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("id", m.getId());
+        payload.put("vmId", vmId);
+        payload.put("timestamp", m.getTimestamp());
+        payload.put("source", m.getSource());
+        payload.put("cpuUsage", m.getCpuUsage());
+        payload.put("ramUsage", m.getRamUsage());
+        payload.put("diskUsage", m.getDiskUsage());
+        payload.put("networkLatency", m.getNetworkLatency());
+        payload.put("networkThroughput", m.getNetworkThroughput());
+        payload.put("vmStatus", m.getVmStatus());
+        payload.put("isAvailable", m.getIsAvailable());
+        payload.put("hasAlerts", m.getHasAlerts());
+        return payload;
+    }
+
+    /**
+     * Abonné SSE : buffer borné "drop-oldest" consommé par son thread virtuel.
+     * ReentrantLock plutôt que synchronized : un thread virtuel en attente dans un
+     * bloc synchronized bloquerait son thread porteur.
+     */
+    private final class Subscriber {
+        private final long id;
+        private final SseEmitter emitter;
+        private final Set<String> vmIds;
+        private final int capacity;
+        private final ArrayDeque<Set<ResponseBodyEmitter.DataWithMediaType>> buffer;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private volatile boolean closed;
+
+        private Subscriber(long id, SseEmitter emitter, Set<String> vmIds, int capacity) {
+            this.id = id;
+            this.emitter = emitter;
+            this.vmIds = vmIds;
+            this.capacity = Math.max(1, capacity);
+            this.buffer = new ArrayDeque<>(this.capacity);
+        }
+
+        private void offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (buffer.size() >= capacity) {
+                    buffer.pollFirst();
+                    droppedEvents.increment();
+                }
+                buffer.addLast(event);
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void offerIfIdle(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            lock.lock();
+            try {
+                if (buffer.isEmpty()) {
+                    offer(event);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Set<ResponseBodyEmitter.DataWithMediaType> take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (buffer.isEmpty() && !closed) {
+                    notEmpty.await();
+                }
+                return buffer.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                closed = true;
+                buffer.clear();
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MetricDefinition;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Catalogue des métriques supplémentaires (collection metric_catalog), tenu en mémoire.
+ * Encode les additionalMetrics en { "id": valeur typée } pour le stockage et les décode
+ * à la lecture. Un nom inconnu est enregistré à sa première réception, avec le type de
+ * sa valeur ; les valeurs d'un type incompatible ou non scalaires sont ignorées.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricCatalog {
+
+    // Clés déjà stockées dans les champs typés de MonitoringMetrics
+    public static final Set<String> TYPED_FIELDS = Set.of(
+            "cpuUsage", "ramUsage", "diskUsage", "networkLatency", "networkThroughput",
+            "vmStatus", "isAvailable", "uptime");
+
+    private final MongoTemplate mongoTemplate;
+
+    // Ne pas stocker une seconde fois dans "x" les valeurs des champs typés
+    @Value("${monitoring.metrics.omit-duplicate-fields:true}")
+    private boolean omitDuplicateFields;
+
+    private final ConcurrentHashMap<String, MetricDefinition> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, MetricDefinition> byId = new ConcurrentHashMap<>();
+    private final ReentrantLock registerLock = new ReentrantLock();
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            mongoTemplate.indexOps(MetricDefinition.class)
+                    .ensureIndex(new Index().on("name", Sort.Direction.ASC).unique().named("metric_catalog_name"));
+        } catch (Exception e) {
+            log.warn("Index metric_catalog_name non créé: {}", e.getMessage());
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Chargement du catalogue des métriques impossible: {}", e.getMessage());
+        }
+    }
+
+    public void reload() {
+        for (MetricDefinition definition : mongoTemplate.findAll(MetricDefinition.class)) {
+            byName.put(definition.getName(), definition);
+            byId.put(definition.getId(), definition);
+        }
+    }
+
+    /**
+     * Forme stockée des métriques supplémentaires, ou null s'il ne reste rien à stocker
+     */
+    public Map<String, Object> encode(Map<String, Object> additionalMetrics) {
+        if (additionalMetrics == null || additionalMetrics.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> encoded = new HashMap<>();
+        additionalMetrics.forEach((name, value) -> {
+            if (name == null || value == null || (omitDuplicateFields && TYPED_FIELDS.contains(name))) {
+                return;
+            }
+            MetricDefinition.Type type = typeOf(value);
+            if (type == null) {
+                log.debug("Métrique supplémentaire {} non scalaire ignorée", name);
+                return;
+            }
+            MetricDefinition definition = definitionFor(name, type);
+            Object typed = coerce(value, definition.getType());
+            if (typed == null) {
+                log.debug("Métrique supplémentaire {} ignorée: {} attendu", name, definition.getType());
+                return;
+            }
+            encoded.put(definition.getId().toString(), typed);
+        });
+        return encoded.isEmpty() ? null : encoded;
+    }
+
+    /**
+     * Métriques supplémentaires par nom à partir de la forme stockée
+     */
+    public Map<String, Object> decode(Map<String, Object> extraMetrics) {
+        if (extraMetrics == null) {
+            return null;
+        }
+        Map<String, Object> decoded = new LinkedHashMap<>();
+        extraMetrics.forEach((key, value) -> {
+            MetricDefinition definition = definitionOf(key);
+            decoded.put(definition != null ? definition.getName() : key, value);
+        });
+        return decoded;
+    }
+
+    public Collection<MetricDefinition> getDefinitions() {
+        return List.copyOf(byId.values());
+    }
+
+    private MetricDefinition definitionOf(String key) {
+        int id;
+        try {
+            id = Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        MetricDefinition definition = byId.get(id);
+        if (definition == null) {
+            // Enregistrée par une autre instance
+            reload();
+            definition = byId.get(id);
+        }
+        return definition;
+    }
+
+    private MetricDefinition definitionFor(String name, MetricDefinition.Type type) {
+        MetricDefinition definition = byName.get(name);
+        return definition != null ? definition : register(name, type);
+    }
+
+    /**
+     * Enregistrement d'un nouveau nom : rare, sérialisé ; une autre instance peut
+     * enregistrer le même nom ou le même id en parallèle (index unique, on recharge)
+     */
+    private MetricDefinition register(String name, MetricDefinition.Type type) {
+        registerLock.lock();
+        try {
+            return registerLocked(name, type);
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    private MetricDefinition registerLocked(String name, MetricDefinition.Type type) {
+        for (int attempt = 0; ; attempt++) {
+            MetricDefinition existing = byName.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            MetricDefinition definition = new MetricDefinition();
+            definition.setId(byId.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1);
+            definition.setName(name);
+            definition.setType(type);
+            definition.setDateCreation(LocalDateTime.now());
+            try {
+                mongoTemplate.insert(definition);
+                byName.put(name, definition);
+                byId.put(definition.getId(), definition);
+                log.info("Métrique supplémentaire {} enregistrée (id {}, {})", name, definition.getId(), type);
+                return definition;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= 10) {
+                    throw e;
+                }
+                reload();
+            }
+        }
+    }
+
+    private static MetricDefinition.Type typeOf(Object value) {
+        if (value instanceof Boolean) {
+            return MetricDefinition.Type.BOOLEAN;
+        }
+        // Tous les nombres en double : 1 puis 1.5 pour une même métrique restent compatibles
+        if (value instanceof Number) {
+            return MetricDefinition.Type.DOUBLE;
+        }
+        if (value instanceof CharSequence) {
+            return MetricDefinition.Type.STRING;
+        }
+        return null;
+    }
+
+    private static Object coerce(Object value, MetricDefinition.Type type) {
+        try {
+            return switch (type) {
+                case DOUBLE -> value instanceof Number n ? n.doubleValue()
+                        : value instanceof CharSequence s ? Double.parseDouble(s.toString()) : null;
+                case BOOLEAN -> value instanceof Boolean b ? b
+                        : value instanceof CharSequence s ? Boolean.parseBoolean(s.toString()) : null;
+                case STRING -> value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                        ? value.toString() : null;
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
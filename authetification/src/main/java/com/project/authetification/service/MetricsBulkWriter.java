@@ -0,0 +1,155 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.VM;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écriture en masse des métriques : un insert BulkOperations non ordonné pour tous
+ * les échantillons, et un seul updateMulti pour passer les VMs en "monitored"
+ * (seules celles qui ne l'étaient pas sont modifiées).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsBulkWriter {
+
+    /**
+     * Bilan d'une écriture en masse
+     */
+    public record Report(int inserted, long vmsFlagged, long durationMs, double docsPerSecond) {
+    }
+
+    static final String DEAD_LETTER_COLLECTION = "metrics_dead_letter";
+
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final DashboardStatsService dashboardStatsService;
+    private final PercentileSketchService percentileSketchService;
+    private final MetricsRollupService metricsRollupService;
+
+    /**
+     * Écrit les métriques puis met à jour les compteurs, sketches et VMs pour celles
+     * effectivement insérées. Si des documents sont refusés, ce suivi est fait pour
+     * les autres avant de relancer l'exception
+     *
+     * @throws BulkOperationException erreurs par document (index dans metrics)
+     */
+    public Report write(List<MonitoringMetrics> metrics) {
+        if (metrics.isEmpty()) {
+            return new Report(0, 0, 0, 0);
+        }
+        long start = System.nanoTime();
+
+        for (MonitoringMetrics m : metrics) {
+            // Id attribué avant l'insert pour que les objets en mémoire le connaissent
+            if (m.getId() == null) {
+                m.setId(new ObjectId().toHexString());
+            }
+        }
+
+        int inserted;
+        List<MonitoringMetrics> written = metrics;
+        BulkOperationException failure = null;
+        try {
+            inserted = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MonitoringMetrics.class)
+                    .insert(metrics)
+                    .execute()
+                    .getInsertedCount();
+        } catch (BulkOperationException e) {
+            // Insert non ordonné : les documents sans erreur sont écrits
+            Set<Integer> failedIndexes = new HashSet<>();
+            e.getErrors().forEach(error -> failedIndexes.add(error.getIndex()));
+            written = new ArrayList<>(metrics.size());
+            for (int i = 0; i < metrics.size(); i++) {
+                if (!failedIndexes.contains(i)) {
+                    written.add(metrics.get(i));
+                }
+            }
+            inserted = e.getResult().getInsertedCount();
+            failure = e;
+        }
+        long flagged = afterInsert(written);
+
+        long durationNanos = System.nanoTime() - start;
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        double docsPerSecond = inserted / Math.max(durationNanos / 1e9, 1e-9);
+
+        meterRegistry.counter("monitoring.metrics.bulk.inserted").increment(inserted);
+        meterRegistry.timer("monitoring.metrics.bulk.write").record(durationNanos, TimeUnit.NANOSECONDS);
+        log.info("Écriture en masse: {} métriques en {} ms ({} docs/s), {} VM(s) passées en monitored",
+                inserted, durationMs, String.format("%.0f", docsPerSecond), flagged);
+
+        if (failure != null) {
+            throw failure;
+        }
+        return new Report(inserted, flagged, durationMs, docsPerSecond);
+    }
+
+    /**
+     * Range des métriques qui n'ont pas pu être écrites dans metrics_dead_letter,
+     * avec la cause, pour analyse ou réinjection manuelle
+     */
+    public void deadLetter(List<MonitoringMetrics> metrics, String error) {
+        Date failedAt = new Date();
+        List<Document> documents = new ArrayList<>(metrics.size());
+        for (MonitoringMetrics m : metrics) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(m, document);
+            document.put("error", error);
+            document.put("failedAt", failedAt);
+            documents.add(document);
+        }
+        mongoTemplate.getCollection(DEAD_LETTER_COLLECTION).insertMany(documents);
+    }
+
+    // Suivi des métriques insérées : compteurs du tableau de bord, sketches, minutes tardives, VMs monitorées
+    private long afterInsert(List<MonitoringMetrics> written) {
+        if (written.isEmpty()) {
+            return 0;
+        }
+        dashboardStatsService.metricsWritten(written);
+        percentileSketchService.record(written);
+        try {
+            metricsRollupService.markLate(written);
+        } catch (RuntimeException e) {
+            // Les métriques sont écrites : ne pas les réessayer pour un marquage manqué
+            log.warn("Marquage des minutes à réagréger impossible: {}", e.getMessage());
+        }
+
+        Set<String> vmIds = new LinkedHashSet<>();
+        for (MonitoringMetrics m : written) {
+            if (m.getVmId() != null) {
+                vmIds.add(m.getVmId());
+            }
+        }
+        long flagged = 0;
+        if (!vmIds.isEmpty()) {
+            flagged = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("_id").in(vmIds).and("monitored").ne(true)),
+                    Update.update("monitored", true),
+                    VM.class).getModifiedCount();
+            dashboardStatsService.vmsMonitored(flagged);
+        }
+        return flagged;
+    }
+}
@@ -0,0 +1,174 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.VM;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Collecte parallèle des métriques : une tâche par VM sur des threads virtuels,
+ * avec un plafond de concurrence, un timeout par VM et une deadline par passe.
+ */
+@Slf4j
+@Service
+public class MetricsCollector {
+
+    public enum Outcome { COLLECTED, TIMED_OUT, FAILED }
+
+    /**
+     * Bilan d'une passe de collecte
+     */
+    public record RunReport(LocalDateTime startedAt, int total, int collected, int timedOut,
+                            int failed, int skipped, long durationMs) {
+    }
+
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.collector.max-concurrency:32}")
+    private int maxConcurrency;
+
+    @Value("${monitoring.collector.vm-timeout-ms:30000}")
+    private long vmTimeoutMs;
+
+    @Value("${monitoring.collector.run-deadline-ms:240000}")
+    private long runDeadlineMs;
+
+    private volatile RunReport lastReport;
+
+    public MetricsCollector(@Qualifier("metricsCollectorExecutor") ExecutorService executor,
+                            MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Exécute la tâche pour chaque VM en parallèle et retourne le bilan de la passe.
+     * Les VMs qui n'ont pas pu démarrer avant la deadline sont comptées comme ignorées.
+     */
+    public RunReport collect(List<VM> vms, Consumer<VM> task) {
+        return collectBatches(vms.stream().map(List::of).toList(), batch -> task.accept(batch.get(0)));
+    }
+
+    /**
+     * Variante par lots : une tâche par lot de VMs (requêtes multi-ressources).
+     * Le timeout s'applique au lot, le bilan est compté en VMs.
+     */
+    public RunReport collectBatches(List<List<VM>> batches, Consumer<List<VM>> task) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(runDeadlineMs);
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Future<Outcome>> running = new ArrayList<>(batches.size());
+        int total = 0;
+        int skipped = 0;
+
+        for (List<VM> batch : batches) {
+            total += batch.size();
+            if (skipped > 0 || !acquire(permits, deadlineNanos)) {
+                skipped += batch.size();
+                continue;
+            }
+            running.add(executor.submit(() -> {
+                try {
+                    return runWithTimeout(batch, task);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        int collected = 0;
+        int timedOut = 0;
+        int failed = 0;
+        for (int i = 0; i < running.size(); i++) {
+            int size = batches.get(i).size();
+            switch (await(running.get(i), deadlineNanos)) {
+                case COLLECTED -> collected += size;
+                case TIMED_OUT -> timedOut += size;
+                case FAILED -> failed += size;
+            }
+        }
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        RunReport report = new RunReport(startedAt, total, collected, timedOut, failed, skipped, durationMs);
+        record(report);
+        return report;
+    }
+
+    public RunReport getLastReport() {
+        return lastReport;
+    }
+
+    private Outcome runWithTimeout(List<VM> batch, Consumer<List<VM>> task) {
+        Future<?> inner = executor.submit(() -> task.accept(batch));
+        try {
+            inner.get(vmTimeoutMs, TimeUnit.MILLISECONDS);
+            return Outcome.COLLECTED;
+        } catch (TimeoutException e) {
+            inner.cancel(true);
+            log.warn("Timeout de collecte pour {} après {} ms", describe(batch), vmTimeoutMs);
+            return Outcome.TIMED_OUT;
+        } catch (ExecutionException e) {
+            log.error("Erreur monitoring pour {}: {}", describe(batch), e.getCause().getMessage());
+            return Outcome.FAILED;
+        } catch (InterruptedException e) {
+            // Interrompu par la deadline de la passe
+            inner.cancel(true);
+            Thread.currentThread().interrupt();
+            return Outcome.TIMED_OUT;
+        }
+    }
+
+    private Outcome await(Future<Outcome> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            future.cancel(true);
+            return Outcome.TIMED_OUT;
+        } catch (ExecutionException e) {
+            return Outcome.FAILED;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return Outcome.TIMED_OUT;
+        }
+    }
+
+    private String describe(List<VM> batch) {
+        return batch.size() == 1 ? "la VM " + batch.get(0).getVmName() : "un lot de " + batch.size() + " VMs";
+    }
+
+    private boolean acquire(Semaphore permits, long deadlineNanos) {
+        try {
+            return permits.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void record(RunReport report) {
+        lastReport = report;
+        meterRegistry.counter("monitoring.collector.vms", "outcome", "collected").increment(report.collected());
+        meterRegistry.counter("monitoring.collector.vms", "outcome", "timed_out").increment(report.timedOut());
+        meterRegistry.counter("monitoring.collector.vms", "outcome", "failed").increment(report.failed());
+        meterRegistry.counter("monitoring.collector.vms", "outcome", "skipped").increment(report.skipped());
+        meterRegistry.timer("monitoring.collector.run").record(report.durationMs(), TimeUnit.MILLISECONDS);
+    }
+}
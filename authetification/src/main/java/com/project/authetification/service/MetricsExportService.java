@@ -0,0 +1,186 @@
+package com.project.authetification.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.authetification.model.MonitoringMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Export en flux des métriques d'une VM sur une plage : les documents sont lus sur
+ * un curseur Mongo (projection des seuls champs demandés)
+ * et écrits ligne par ligne en NDJSON ou CSV. La mémoire utilisée ne dépend pas
+ * de la taille de la plage.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsExportService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    // Champs exportables, dans l'ordre des colonnes CSV
+    private static final Map<String, Function<MonitoringMetrics, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("source", MonitoringMetrics::getSource);
+        FIELDS.put("cpuUsage", MonitoringMetrics::getCpuUsage);
+        FIELDS.put("ramUsage", MonitoringMetrics::getRamUsage);
+        FIELDS.put("diskUsage", MonitoringMetrics::getDiskUsage);
+        FIELDS.put("networkLatency", MonitoringMetrics::getNetworkLatency);
+        FIELDS.put("networkThroughput", MonitoringMetrics::getNetworkThroughput);
+        FIELDS.put("vmStatus", MonitoringMetrics::getVmStatus);
+        FIELDS.put("isAvailable", MonitoringMetrics::getIsAvailable);
+        FIELDS.put("uptime", MonitoringMetrics::getUptime);
+        FIELDS.put("hasAlerts", MonitoringMetrics::getHasAlerts);
+    }
+
+    private static final List<String> DEFAULT_FIELDS = List.of(
+            "cpuUsage", "ramUsage", "diskUsage", "networkLatency", "networkThroughput");
+
+    private static final int CURSOR_BATCH_SIZE = 1000;
+    private static final int FLUSH_EVERY = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Valide et ordonne les champs demandés (null ou vide = champs numériques par défaut)
+     */
+    public List<String> resolveFields(List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return DEFAULT_FIELDS;
+        }
+        for (String field : requested) {
+            if (!FIELDS.containsKey(field)) {
+                throw new IllegalArgumentException("Champ inconnu: " + field);
+            }
+        }
+        List<String> fields = new ArrayList<>();
+        for (String field : FIELDS.keySet()) {
+            if (requested.contains(field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Écrit les métriques de la plage dans l'ordre chronologique ; retourne le nombre de lignes
+     */
+    public long export(String vmId, LocalDateTime start, LocalDateTime end, List<String> fields,
+                       Format format, OutputStream out) throws IOException {
+        Query query = Query.query(Criteria.where("vmId").is(vmId).and("timestamp").gte(start).lte(end))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"))
+                .cursorBatchSize(CURSOR_BATCH_SIZE);
+        query.fields().include("timestamp");
+        fields.forEach(field -> query.fields().include(field));
+
+        long startedAt = System.currentTimeMillis();
+        long rows;
+        try (Stream<MonitoringMetrics> stream = mongoTemplate.stream(query, MonitoringMetrics.class)) {
+            rows = format == Format.CSV
+                    ? writeCsv(stream.iterator(), fields, out)
+                    : writeNdjson(stream.iterator(), fields, out);
+        }
+        log.debug("Export {} de {} métriques pour la VM {} en {} ms",
+                format, rows, vmId, System.currentTimeMillis() - startedAt);
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<MonitoringMetrics> metrics, List<String> fields, OutputStream out)
+            throws IOException {
+        long rows = 0;
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            // Le flux de la réponse est fermé par le conteneur
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+            while (metrics.hasNext()) {
+                MonitoringMetrics m = metrics.next();
+                json.writeStartObject();
+                json.writeStringField("timestamp", String.valueOf(m.getTimestamp()));
+                for (String field : fields) {
+                    Object value = FIELDS.get(field).apply(m);
+                    json.writeFieldName(field);
+                    if (value == null) {
+                        json.writeNull();
+                    } else if (value instanceof Double d) {
+                        json.writeNumber(d);
+                    } else if (value instanceof Integer i) {
+                        json.writeNumber(i);
+                    } else if (value instanceof Boolean b) {
+                        json.writeBoolean(b);
+                    } else {
+                        json.writeString(value.toString());
+                    }
+                }
+                json.writeEndObject();
+                json.writeRaw('\n');
+                if (++rows % FLUSH_EVERY == 0) {
+                    json.flush();
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long writeCsv(Iterator<MonitoringMetrics> metrics, List<String> fields, OutputStream out)
+            throws IOException {
+        long rows = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("timestamp");
+        for (String field : fields) {
+            writer.write(',');
+            writer.write(field);
+        }
+        writer.write('\n');
+
+        while (metrics.hasNext()) {
+            MonitoringMetrics m = metrics.next();
+            writer.write(String.valueOf(m.getTimestamp()));
+            for (String field : fields) {
+                writer.write(',');
+                Object value = FIELDS.get(field).apply(m);
+                if (value != null) {
+                    writer.write(csvEscape(value.toString()));
+                }
+            }
+            writer.write('\n');
+            if (++rows % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private static String csvEscape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,251 @@
+package com.project.authetification.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.authetification.model.MetricSample;
+import com.project.authetification.model.VM;
+import com.project.authetification.repository.VMRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion en lot des métriques envoyées par les agents : NDJSON ou tableau JSON
+ * (éventuellement gzip), lu ligne à ligne avec l'API streaming de Jackson.
+ * Chaque ligne est validée séparément ; les lignes valides sont écrites en masse
+ * par paquets et les lignes rejetées sont renvoyées avec leur erreur.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsIngestService {
+
+    /**
+     * Erreur d'une ligne (row commence à 1)
+     */
+    public record RowError(int row, String vmId, String error) {
+    }
+
+    /**
+     * Bilan d'un lot ; errors est tronqué à monitoring.ingest.max-errors entrées
+     */
+    public record Report(int received, int accepted, int rejected, List<RowError> errors, long durationMs) {
+    }
+
+    private static final int CHUNK_SIZE = 1000;
+    // Tolérance sur l'horloge des agents
+    private static final long MAX_CLOCK_SKEW_MINUTES = 5;
+
+    private final ObjectMapper objectMapper;
+    private final VMRepository vmRepository;
+    private final MonitoringService monitoringService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.ingest.max-rows:100000}")
+    private int maxRows;
+
+    @Value("${monitoring.ingest.max-errors:1000}")
+    private int maxErrors;
+
+    public Report ingest(InputStream body, String defaultSource) throws IOException {
+        long start = System.nanoTime();
+        Batch batch = new Batch(defaultSource);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken first = parser.nextToken();
+            // Tableau JSON : on lit ses éléments ; sinon suite de valeurs (NDJSON)
+            boolean array = first == JsonToken.START_ARRAY;
+            JsonToken token = array ? parser.nextToken() : first;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                int row = batch.received + 1;
+                if (row > maxRows) {
+                    batch.reject(row, null, "Lot limité à " + maxRows + " lignes, suite ignorée");
+                    break;
+                }
+                batch.received++;
+                JsonNode node;
+                try {
+                    node = parser.readValueAsTree();
+                } catch (JsonProcessingException e) {
+                    // JSON mal formé : impossible de resynchroniser le flux
+                    batch.reject(row, null, "JSON invalide: " + e.getOriginalMessage());
+                    break;
+                }
+                batch.add(row, node);
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            batch.reject(batch.received + 1, null, "JSON invalide: " + e.getOriginalMessage());
+        }
+        batch.flush();
+
+        long durationNanos = System.nanoTime() - start;
+        meterRegistry.counter("monitoring.ingest.rows", "outcome", "accepted").increment(batch.accepted);
+        meterRegistry.counter("monitoring.ingest.rows", "outcome", "rejected").increment(batch.rejected);
+        meterRegistry.timer("monitoring.ingest.batch").record(durationNanos, TimeUnit.NANOSECONDS);
+
+        return new Report(batch.received, batch.accepted, batch.rejected, batch.errors,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    /**
+     * Message d'erreur de validation, ou null si la métrique est valide
+     */
+    private static String validate(MetricSample sample) {
+        if (sample.getVmId() == null || sample.getVmId().isBlank()) {
+            return "vmId obligatoire";
+        }
+        if (sample.getSource() == null || sample.getSource().isBlank()) {
+            return "source obligatoire";
+        }
+        if (sample.getCpuUsage() == null && sample.getRamUsage() == null && sample.getDiskUsage() == null
+                && sample.getNetworkLatency() == null && sample.getNetworkThroughput() == null
+                && sample.getIsAvailable() == null && sample.getVmStatus() == null) {
+            return "aucune métrique";
+        }
+        if (!isPercentage(sample.getCpuUsage()) || !isPercentage(sample.getRamUsage())
+                || !isPercentage(sample.getDiskUsage())) {
+            return "cpuUsage, ramUsage et diskUsage doivent être entre 0 et 100";
+        }
+        if (isNegative(sample.getNetworkLatency()) || isNegative(sample.getNetworkThroughput())
+                || (sample.getUptime() != null && sample.getUptime() < 0)) {
+            return "networkLatency, networkThroughput et uptime doivent être positifs";
+        }
+        if (sample.getTimestamp() != null
+                && sample.getTimestamp().isAfter(LocalDateTime.now().plusMinutes(MAX_CLOCK_SKEW_MINUTES))) {
+            return "timestamp dans le futur";
+        }
+        return null;
+    }
+
+    private static boolean isPercentage(Double value) {
+        return value == null || (value >= 0 && value <= 100);
+    }
+
+    private static boolean isNegative(Double value) {
+        return value != null && (value < 0 || value.isNaN());
+    }
+
+    /**
+     * État d'un lot en cours : lignes valides en attente d'écriture, VMs déjà résolues
+     */
+    private final class Batch {
+        private final String defaultSource;
+        private final List<MetricSample> pending = new ArrayList<>(CHUNK_SIZE);
+        private final List<Integer> pendingRows = new ArrayList<>(CHUNK_SIZE);
+        private final Map<String, Optional<VM>> vms = new HashMap<>();
+        private final List<RowError> errors = new ArrayList<>();
+        private int received;
+        private int accepted;
+        private int rejected;
+
+        private Batch(String defaultSource) {
+            this.defaultSource = defaultSource;
+        }
+
+        private void add(int row, JsonNode node) {
+            MetricSample sample;
+            try {
+                sample = objectMapper.treeToValue(node, MetricSample.class);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                String vmId = node.hasNonNull("vmId") ? node.get("vmId").asText() : null;
+                reject(row, vmId, "Ligne invalide: " + (e instanceof JsonProcessingException jpe
+                        ? jpe.getOriginalMessage() : e.getMessage()));
+                return;
+            }
+            if (sample.getSource() == null) {
+                sample.setSource(defaultSource);
+            }
+            String error = validate(sample);
+            if (error != null) {
+                reject(row, sample.getVmId(), error);
+                return;
+            }
+            pending.add(sample);
+            pendingRows.add(row);
+            if (pending.size() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        private void reject(int row, String vmId, String error) {
+            rejected++;
+            if (errors.size() < maxErrors) {
+                errors.add(new RowError(row, vmId, error));
+            }
+        }
+
+        /**
+         * Écrit les lignes valides en attente : une requête pour les VMs inconnues du lot,
+         * un insert en masse pour les métriques
+         */
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Set<String> missing = new HashSet<>();
+            for (MetricSample sample : pending) {
+                if (!vms.containsKey(sample.getVmId())) {
+                    missing.add(sample.getVmId());
+                }
+            }
+            if (!missing.isEmpty()) {
+                vmRepository.findAllById(missing).forEach(vm -> vms.put(vm.getId(), Optional.of(vm)));
+                missing.forEach(vmId -> vms.putIfAbsent(vmId, Optional.empty()));
+            }
+
+            List<MetricSample> known = new ArrayList<>(pending.size());
+            Map<String, VM> knownVms = new HashMap<>();
+            for (int i = 0; i < pending.size(); i++) {
+                MetricSample sample = pending.get(i);
+                Optional<VM> vm = vms.get(sample.getVmId());
+                if (vm.isEmpty()) {
+                    reject(pendingRows.get(i), sample.getVmId(), "VM inconnue");
+                } else {
+                    known.add(sample);
+                    knownVms.put(sample.getVmId(), vm.get());
+                }
+            }
+
+            try {
+                accepted += monitoringService.collectSamples(known, knownVms).size();
+            } catch (MetricsWriteBehindBuffer.OverflowException e) {
+                // Rien d'accepté : le lot entier est refusé (HTTP 429), le client réessaiera
+                if (accepted == 0) {
+                    throw e;
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    if (vms.get(pending.get(i).getVmId()).isPresent()) {
+                        reject(pendingRows.get(i), pending.get(i).getVmId(), "File d'écriture pleine");
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("Écriture d'un paquet de {} métriques impossible: {}", known.size(), e.getMessage());
+                for (int i = 0; i < pending.size(); i++) {
+                    if (vms.get(pending.get(i).getVmId()).isPresent()) {
+                        reject(pendingRows.get(i), pending.get(i).getVmId(), "Écriture impossible");
+                    }
+                }
+            }
+            pending.clear();
+            pendingRows.clear();
+        }
+    }
+}
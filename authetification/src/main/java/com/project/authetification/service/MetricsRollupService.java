@@ -0,0 +1,457 @@
+package com.project.authetification.service;
+
+import com.mongodb.client.MongoCursor;
+import com.project.authetification.model.MetricRollup;
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.RollupResolution;
+import com.project.authetification.model.RollupWatermark;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline d'agrégation incrémental des métriques en 1m / 5m / 1h / 1d.
+ * Chaque niveau garde un watermark : les métriques brutes ne sont lues qu'une fois
+ * (pour le niveau 1m), les niveaux suivants sont calculés depuis le niveau précédent.
+ * Une métrique écrite en retard (horodatage déjà passé par le watermark : fin de passe
+ * de collecte, ingestion d'historique, remote-write en rattrapage) marque sa minute
+ * dans metrics_rollup_dirty ; la passe suivante réagrège ces minutes et les intervalles
+ * 5m / 1h / 1d qui les contiennent.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsRollupService {
+
+    // Champs agrégés, sous leur nom stocké (même ordre que statsOf / toRollup)
+    private static final String[] FIELDS = {
+            MonitoringMetrics.CPU_USAGE_FIELD, MonitoringMetrics.RAM_USAGE_FIELD, MonitoringMetrics.DISK_USAGE_FIELD,
+            MonitoringMetrics.NETWORK_LATENCY_FIELD, MonitoringMetrics.NETWORK_THROUGHPUT_FIELD};
+
+    // Minutes à réagréger : _id = début de la minute, markedAt = dernier marquage
+    private static final String DIRTY_COLLECTION = "metrics_rollup_dirty";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${monitoring.rollup.enabled:true}")
+    private boolean enabled;
+
+    // Marge avant d'agréger une minute, pour les métriques encore en cours d'écriture
+    @Value("${monitoring.rollup.lag-seconds:120}")
+    private long lagSeconds;
+
+    // Taille maximale d'une fenêtre lue en une fois (rattrapage de l'historique)
+    @Value("${monitoring.rollup.max-window-hours:6}")
+    private long maxWindowHours;
+
+    @PostConstruct
+    public void initialize() {
+        for (RollupResolution resolution : RollupResolution.values()) {
+            try {
+                mongoTemplate.indexOps(resolution.getCollectionName())
+                        .ensureIndex(new Index().on("vmId", Sort.Direction.ASC).on("bucketStart", Sort.Direction.ASC));
+                mongoTemplate.indexOps(resolution.getCollectionName())
+                        .ensureIndex(new Index().on("bucketStart", Sort.Direction.ASC));
+            } catch (Exception e) {
+                log.error("Création des index de {} impossible: {}", resolution.getCollectionName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * TÂCHE AUTOMATIQUE : agrège les nouvelles métriques, niveau par niveau
+     */
+    @Scheduled(fixedDelayString = "${monitoring.rollup.fixed-delay-ms:60000}")
+    public void rollupTask() {
+        if (!enabled) {
+            return;
+        }
+        // Marques antérieures à la passe : supprimées seulement si tous les niveaux ont réussi
+        Date startedAt = new Date();
+        List<LocalDateTime> dirty = dirtyMinutes();
+        for (RollupResolution resolution : RollupResolution.values()) {
+            try {
+                int rewritten = reaggregate(resolution, dirty);
+                int written = rollup(resolution);
+                if (written > 0 || rewritten > 0) {
+                    log.debug("Agrégats {} écrits: {}, réagrégés: {}", resolution.getCode(), written, rewritten);
+                }
+            } catch (Exception e) {
+                log.error("Erreur d'agrégation {}: {}", resolution.getCode(), e.getMessage());
+                return; // Les niveaux suivants dépendent de celui-ci
+            }
+        }
+        if (!dirty.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("markedAt").lte(startedAt)), DIRTY_COLLECTION);
+        }
+    }
+
+    /**
+     * Marque les minutes des métriques écrites en retard : tout horodatage antérieur à la
+     * borne qu'une passe d'agrégation a pu utiliser (maintenant - lag) peut avoir été
+     * dépassé par le watermark 1m
+     */
+    public void markLate(Collection<MonitoringMetrics> metrics) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime horizon = truncate(LocalDateTime.now().minusSeconds(lagSeconds), RollupResolution.ONE_MINUTE);
+        Set<LocalDateTime> minutes = new HashSet<>();
+        for (MonitoringMetrics m : metrics) {
+            if (m.getTimestamp() != null && m.getTimestamp().isBefore(horizon)) {
+                minutes.add(truncate(m.getTimestamp(), RollupResolution.ONE_MINUTE));
+            }
+        }
+        if (minutes.isEmpty()) {
+            return;
+        }
+        Date markedAt = new Date();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DIRTY_COLLECTION);
+        for (LocalDateTime minute : minutes) {
+            bulk.upsert(Query.query(Criteria.where("_id").is(toDate(minute))), Update.update("markedAt", markedAt));
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Réagrège les intervalles de la résolution qui contiennent une minute marquée et que
+     * le watermark a déjà dépassés (les autres seront agrégés par la passe normale)
+     */
+    private int reaggregate(RollupResolution resolution, List<LocalDateTime> dirtyMinutes) {
+        LocalDateTime watermark = getWatermark(resolution);
+        if (watermark == null || dirtyMinutes.isEmpty()) {
+            return 0;
+        }
+        TreeSet<LocalDateTime> buckets = new TreeSet<>();
+        for (LocalDateTime minute : dirtyMinutes) {
+            LocalDateTime bucketStart = truncate(minute, resolution);
+            if (bucketStart.isBefore(watermark)) {
+                buckets.add(bucketStart);
+            }
+        }
+
+        // Intervalles contigus lus en une fenêtre, dans la limite de max-window-hours
+        Duration bucket = resolution.getDuration();
+        Duration maxWindow = Duration.ofHours(maxWindowHours);
+        int written = 0;
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        for (LocalDateTime bucketStart : buckets) {
+            if (from != null && bucketStart.equals(to) && Duration.between(from, to).compareTo(maxWindow) < 0) {
+                to = to.plus(bucket);
+                continue;
+            }
+            if (from != null) {
+                written += aggregate(resolution, from, to);
+            }
+            from = bucketStart;
+            to = bucketStart.plus(bucket);
+        }
+        if (from != null) {
+            written += aggregate(resolution, from, to);
+        }
+        return written;
+    }
+
+    private List<LocalDateTime> dirtyMinutes() {
+        List<LocalDateTime> minutes = new ArrayList<>();
+        for (Document mark : mongoTemplate.getCollection(DIRTY_COLLECTION).find().projection(new Document("_id", 1))) {
+            if (mark.get("_id") instanceof Date minute) {
+                minutes.add(toLocal(minute));
+            }
+        }
+        return minutes;
+    }
+
+    private int aggregate(RollupResolution resolution, LocalDateTime from, LocalDateTime to) {
+        RollupResolution source = resolution.getSource();
+        Map<String, Bucket> buckets = source == null
+                ? aggregateRaw(from, to, resolution)
+                : aggregateRollups(source, from, to, resolution);
+        return write(resolution, buckets.values());
+    }
+
+    /**
+     * Agrège tous les intervalles complets depuis le watermark de la résolution
+     */
+    public int rollup(RollupResolution resolution) {
+        RollupResolution source = resolution.getSource();
+
+        LocalDateTime upper;
+        if (source == null) {
+            upper = truncate(LocalDateTime.now().minusSeconds(lagSeconds), resolution);
+        } else {
+            LocalDateTime sourceWatermark = getWatermark(source);
+            if (sourceWatermark == null) {
+                return 0;
+            }
+            upper = truncate(sourceWatermark, resolution);
+        }
+
+        LocalDateTime from = getWatermark(resolution);
+        if (from == null) {
+            LocalDateTime earliest = earliestSourceTimestamp(source);
+            if (earliest == null) {
+                return 0;
+            }
+            from = truncate(earliest, resolution);
+        }
+
+        long bucketSeconds = resolution.getDuration().toSeconds();
+        long chunkSeconds = Math.max(1, Duration.ofHours(maxWindowHours).toSeconds() / bucketSeconds) * bucketSeconds;
+
+        int written = 0;
+        while (from.isBefore(upper)) {
+            LocalDateTime to = from.plusSeconds(chunkSeconds);
+            if (to.isAfter(upper)) {
+                to = upper;
+            }
+            written += aggregate(resolution, from, to);
+            saveWatermark(resolution, to);
+            from = to;
+        }
+        return written;
+    }
+
+    /**
+     * Agrégats d'une VM sur une plage, triés par date
+     */
+    public List<MetricRollup> getRollups(String vmId, RollupResolution resolution, LocalDateTime start, LocalDateTime end) {
+        Query query = Query.query(Criteria.where("vmId").is(vmId).and("bucketStart").gte(start).lte(end))
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart"));
+        return mongoTemplate.find(query, MetricRollup.class, resolution.getCollectionName());
+    }
+
+    /**
+     * Résolution la plus fine dont le nombre de points sur la fenêtre tient dans le budget
+     */
+    public RollupResolution chooseResolution(Duration window, int maxPoints) {
+        for (RollupResolution resolution : RollupResolution.values()) {
+            if (window.toSeconds() / resolution.getDuration().toSeconds() <= maxPoints) {
+                return resolution;
+            }
+        }
+        return RollupResolution.ONE_DAY;
+    }
+
+    public LocalDateTime getWatermark(RollupResolution resolution) {
+        RollupWatermark watermark = mongoTemplate.findById(resolution.getCode(), RollupWatermark.class);
+        return watermark == null ? null : watermark.getWatermark();
+    }
+
+    private void saveWatermark(RollupResolution resolution, LocalDateTime value) {
+        RollupWatermark watermark = new RollupWatermark();
+        watermark.setResolution(resolution.getCode());
+        watermark.setWatermark(value);
+        watermark.setDateModification(LocalDateTime.now());
+        mongoTemplate.save(watermark);
+    }
+
+    private LocalDateTime earliestSourceTimestamp(RollupResolution source) {
+        if (source == null) {
+            Document first = mongoTemplate.getCollection(MetricsStorageService.METRICS_COLLECTION)
+                    .find()
+                    .projection(new Document("timestamp", 1))
+                    .sort(new Document("timestamp", 1))
+                    .limit(1)
+                    .first();
+            return first == null || first.getDate("timestamp") == null ? null : toLocal(first.getDate("timestamp"));
+        }
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "bucketStart")).limit(1);
+        MetricRollup first = mongoTemplate.findOne(query, MetricRollup.class, source.getCollectionName());
+        return first == null ? null : first.getBucketStart();
+    }
+
+    /**
+     * Lit une seule fois les métriques brutes de la fenêtre (projection sur les champs agrégés)
+     */
+    private Map<String, Bucket> aggregateRaw(LocalDateTime from, LocalDateTime to, RollupResolution resolution) {
+        Document filter = new Document("timestamp", new Document("$gte", toDate(from)).append("$lt", toDate(to)));
+        Document projection = new Document(MonitoringMetrics.VM_ID_FIELD, 1).append("timestamp", 1);
+        for (String field : FIELDS) {
+            projection.append(field, 1);
+        }
+
+        Map<String, Bucket> buckets = new HashMap<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(MetricsStorageService.METRICS_COLLECTION)
+                .find(filter).projection(projection).batchSize(1000).iterator()) {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                String vmId = doc.getString(MonitoringMetrics.VM_ID_FIELD);
+                if (vmId == null) {
+                    continue;
+                }
+                LocalDateTime timestamp = toLocal(doc.getDate("timestamp"));
+                Bucket bucket = bucketFor(buckets, vmId, truncate(timestamp, resolution));
+                for (int i = 0; i < FIELDS.length; i++) {
+                    if (doc.get(FIELDS[i]) instanceof Number value) {
+                        bucket.stats[i].add(value.doubleValue(), timestamp);
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Fusionne les agrégats du niveau source (jamais les métriques brutes)
+     */
+    private Map<String, Bucket> aggregateRollups(RollupResolution source, LocalDateTime from, LocalDateTime to,
+                                                 RollupResolution resolution) {
+        Query query = Query.query(Criteria.where("bucketStart").gte(from).lt(to));
+        Map<String, Bucket> buckets = new HashMap<>();
+        try (Stream<MetricRollup> rollups = mongoTemplate.stream(query, MetricRollup.class, source.getCollectionName())) {
+            rollups.forEach(rollup -> {
+                Bucket bucket = bucketFor(buckets, rollup.getVmId(), truncate(rollup.getBucketStart(), resolution));
+                MetricRollup.Stats[] stats = statsOf(rollup);
+                for (int i = 0; i < FIELDS.length; i++) {
+                    bucket.stats[i].merge(stats[i], rollup.getBucketStart());
+                }
+            });
+        }
+        return buckets;
+    }
+
+    private int write(RollupResolution resolution, Collection<Bucket> buckets) {
+        if (buckets.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                MetricRollup.class, resolution.getCollectionName());
+        for (Bucket bucket : buckets) {
+            MetricRollup rollup = bucket.toRollup(resolution);
+            // Upsert idempotent : un intervalle réagrégé après un crash écrase le précédent
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(rollup.getId())), rollup,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulk.execute();
+        return buckets.size();
+    }
+
+    private static Bucket bucketFor(Map<String, Bucket> buckets, String vmId, LocalDateTime bucketStart) {
+        return buckets.computeIfAbsent(vmId + "|" + bucketStart, k -> new Bucket(vmId, bucketStart));
+    }
+
+    private static MetricRollup.Stats[] statsOf(MetricRollup rollup) {
+        return new MetricRollup.Stats[]{rollup.getCpuUsage(), rollup.getRamUsage(), rollup.getDiskUsage(),
+                rollup.getNetworkLatency(), rollup.getNetworkThroughput()};
+    }
+
+    static LocalDateTime truncate(LocalDateTime time, RollupResolution resolution) {
+        long bucketSeconds = resolution.getDuration().toSeconds();
+        long epochSeconds = time.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochSeconds, bucketSeconds) * bucketSeconds, 0, ZoneOffset.UTC);
+    }
+
+    // Même conversion que Spring Data pour les LocalDateTime
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static LocalDateTime toLocal(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    private static final class Bucket {
+        private final String vmId;
+        private final LocalDateTime bucketStart;
+        private final Accumulator[] stats = new Accumulator[FIELDS.length];
+
+        private Bucket(String vmId, LocalDateTime bucketStart) {
+            this.vmId = vmId;
+            this.bucketStart = bucketStart;
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new Accumulator();
+            }
+        }
+
+        private MetricRollup toRollup(RollupResolution resolution) {
+            MetricRollup rollup = new MetricRollup();
+            rollup.setId(vmId + "|" + bucketStart);
+            rollup.setVmId(vmId);
+            rollup.setResolution(resolution.getCode());
+            rollup.setBucketStart(bucketStart);
+            rollup.setCpuUsage(stats[0].toStats());
+            rollup.setRamUsage(stats[1].toStats());
+            rollup.setDiskUsage(stats[2].toStats());
+            rollup.setNetworkLatency(stats[3].toStats());
+            rollup.setNetworkThroughput(stats[4].toStats());
+            return rollup;
+        }
+    }
+
+    private static final class Accumulator {
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private long count;
+        private double last;
+        private LocalDateTime lastAt;
+
+        private void add(double value, LocalDateTime at) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+            updateLast(value, at);
+        }
+
+        private void merge(MetricRollup.Stats stats, LocalDateTime at) {
+            if (stats == null || stats.getCount() == 0) {
+                return;
+            }
+            min = Math.min(min, stats.getMin());
+            max = Math.max(max, stats.getMax());
+            sum += stats.getAvg() * stats.getCount();
+            count += stats.getCount();
+            updateLast(stats.getLast(), at);
+        }
+
+        private void updateLast(double value, LocalDateTime at) {
+            if (lastAt == null || !at.isBefore(lastAt)) {
+                last = value;
+                lastAt = at;
+            }
+        }
+
+        private MetricRollup.Stats toStats() {
+            if (count == 0) {
+                return null;
+            }
+            MetricRollup.Stats stats = new MetricRollup.Stats();
+            stats.setMin(min);
+            stats.setMax(max);
+            stats.setAvg(sum / count);
+            stats.setCount(count);
+            stats.setLast(last);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.project.authetification.service;
+
+import com.mongodb.DBRef;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.project.authetification.model.MonitoringMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stockage de la collection monitoring_metrics : mode "standard" (collection classique
+ * avec index sur timestamp) ou "timeseries" (collection time-series MongoDB, opt-in).
+ * Fournit aussi la migration vers le mode time-series, la migration vers le schéma
+ * compact (noms de champs courts, métriques supplémentaires par identifiant du
+ * catalogue, vmId et résumé de VM au lieu du DBRef) et des benchmarks des layouts.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsStorageService {
+
+    public static final String METRICS_COLLECTION = "monitoring_metrics";
+    public static final String LEGACY_COLLECTION = "monitoring_metrics_legacy";
+    public static final String PRECOMPACT_COLLECTION = "monitoring_metrics_precompact";
+
+    private static final String TIME_FIELD = "timestamp";
+    private static final String META_FIELD = MonitoringMetrics.VM_ID_FIELD;
+    // Ancien schéma : DBRef vers la VM ; nouveau : résumé embarqué sous le même nom
+    private static final String VM_FIELD = "vm";
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    // Documents récents lus pour choisir les VMs du benchmark de requêtes
+    private static final int BENCHMARK_VM_SAMPLE = 1000;
+
+    // Ancien nom -> nom court (cf. MonitoringMetrics)
+    private static final Map<String, String> COMPACT_FIELD_NAMES = Map.ofEntries(
+            Map.entry("source", MonitoringMetrics.SOURCE_FIELD),
+            Map.entry("cpuUsage", MonitoringMetrics.CPU_USAGE_FIELD),
+            Map.entry("ramUsage", MonitoringMetrics.RAM_USAGE_FIELD),
+            Map.entry("diskUsage", MonitoringMetrics.DISK_USAGE_FIELD),
+            Map.entry("networkLatency", MonitoringMetrics.NETWORK_LATENCY_FIELD),
+            Map.entry("networkThroughput", MonitoringMetrics.NETWORK_THROUGHPUT_FIELD),
+            Map.entry("vmStatus", MonitoringMetrics.VM_STATUS_FIELD),
+            Map.entry("isAvailable", MonitoringMetrics.IS_AVAILABLE_FIELD),
+            Map.entry("uptime", MonitoringMetrics.UPTIME_FIELD),
+            Map.entry("hasAlerts", MonitoringMetrics.HAS_ALERTS_FIELD),
+            Map.entry("alertMessage", MonitoringMetrics.ALERT_MESSAGE_FIELD));
+    private static final String LEGACY_ADDITIONAL_METRICS = "additionalMetrics";
+
+    // Métriques supplémentaires typiques d'un agent, pour le benchmark de schéma
+    private static final List<String> BENCHMARK_EXTRA_METRICS = List.of(
+            "loadAverage1m", "processCount", "swapUsage", "diskReadBytes", "diskWriteBytes");
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricCatalog metricCatalog;
+    private final MetricsWriteBehindBuffer metricsWriteBehindBuffer;
+
+    @Value("${monitoring.metrics.storage-mode:standard}")
+    private String storageMode;
+
+    @Value("${monitoring.metrics.timeseries.granularity:minutes}")
+    private String granularity;
+
+    // 0 = pas d'expiration
+    @Value("${monitoring.metrics.expire-after-seconds:0}")
+    private long expireAfterSeconds;
+
+    /**
+     * Crée la collection et ses index avant la première écriture (sinon Mongo
+     * créerait implicitement une collection classique au premier insert)
+     */
+    @PostConstruct
+    public void initialize() {
+        try {
+            if (isTimeSeriesMode()) {
+                if (!mongoTemplate.collectionExists(METRICS_COLLECTION)) {
+                    createTimeSeriesCollection();
+                } else if (!isTimeSeries(METRICS_COLLECTION)) {
+                    log.warn("Mode time-series activé mais {} est une collection classique : lancer la migration",
+                            METRICS_COLLECTION);
+                }
+            } else {
+                ensureStandardIndexes();
+            }
+            ensureQueryIndexes();
+            if (hasLegacySchema(METRICS_COLLECTION)) {
+                log.warn("{} contient des documents à l'ancien schéma (lus incomplètement) : lancer la migration compacte",
+                        METRICS_COLLECTION);
+            }
+        } catch (Exception e) {
+            log.error("Initialisation du stockage des métriques impossible: {}", e.getMessage());
+        }
+    }
+
+    public boolean isTimeSeriesMode() {
+        return "timeseries".equalsIgnoreCase(storageMode);
+    }
+
+    /**
+     * Migre les documents existants vers une collection time-series.
+     * L'ancienne collection est renommée en monitoring_metrics_legacy et conservée
+     * (rollback / benchmark) ; la supprimer une fois la migration validée.
+     * Les écritures sont suspendues le temps du renommage et de la création, pour
+     * qu'aucun insert ne recrée entre-temps une collection classique.
+     */
+    public Map<String, Object> migrateToTimeSeries() {
+        if (isTimeSeries(METRICS_COLLECTION)) {
+            throw new RuntimeException(METRICS_COLLECTION + " est déjà une collection time-series");
+        }
+        if (mongoTemplate.collectionExists(LEGACY_COLLECTION)) {
+            throw new RuntimeException(LEGACY_COLLECTION + " existe déjà : migration précédente non terminée ?");
+        }
+
+        long start = System.nanoTime();
+        // Une collection time-series ne peut pas être renommée : on renomme l'ancienne
+        metricsWriteBehindBuffer.withWritesPaused(() -> {
+            if (mongoTemplate.collectionExists(METRICS_COLLECTION)) {
+                renameMetricsCollection(LEGACY_COLLECTION);
+            }
+            createTimeSeriesCollection();
+            return null;
+        });
+
+        long copied = 0;
+        long skipped = 0;
+        MongoCollection<Document> target = mongoTemplate.getCollection(METRICS_COLLECTION);
+        List<Document> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        if (mongoTemplate.collectionExists(LEGACY_COLLECTION)) {
+            try (MongoCursor<Document> cursor = mongoTemplate.getCollection(LEGACY_COLLECTION)
+                    .find().batchSize(MIGRATION_BATCH_SIZE).iterator()) {
+                while (cursor.hasNext()) {
+                    Document doc = cursor.next();
+                    // Le timeField est obligatoire dans une collection time-series
+                    if (!(doc.get(TIME_FIELD) instanceof Date)) {
+                        skipped++;
+                        continue;
+                    }
+                    batch.add(doc);
+                    if (batch.size() == MIGRATION_BATCH_SIZE) {
+                        target.insertMany(batch);
+                        copied += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                target.insertMany(batch);
+                copied += batch.size();
+            }
+        }
+
+        ensureQueryIndexes();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("copied", copied);
+        result.put("skipped", skipped);
+        result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Migration time-series terminée: {}", result);
+        return result;
+    }
+
+    /**
+     * Réécrit les métriques existantes au schéma compact : noms de champs courts,
+     * additionalMetrics remplacées par les métriques supplémentaires typées du catalogue
+     * (sans les doublons des champs typés), sans _class, DBRef vers la VM remplacé par
+     * vmId et un résumé de la VM. Même procédure que la migration
+     * time-series : l'ancienne collection est renommée en monitoring_metrics_precompact
+     * et conservée, la nouvelle est recréée dans le même mode.
+     */
+    public Map<String, Object> migrateToCompactSchema() {
+        if (!hasLegacySchema(METRICS_COLLECTION)) {
+            throw new RuntimeException(METRICS_COLLECTION + " est déjà au schéma compact");
+        }
+        if (mongoTemplate.collectionExists(PRECOMPACT_COLLECTION)) {
+            throw new RuntimeException(PRECOMPACT_COLLECTION + " existe déjà : migration précédente non terminée ?");
+        }
+
+        long start = System.nanoTime();
+        boolean timeSeries = isTimeSeries(METRICS_COLLECTION);
+        metricsWriteBehindBuffer.withWritesPaused(() -> {
+            renameMetricsCollection(PRECOMPACT_COLLECTION);
+            if (timeSeries) {
+                createTimeSeriesCollection();
+            } else {
+                mongoTemplate.createCollection(METRICS_COLLECTION);
+                ensureStandardIndexes();
+            }
+            return null;
+        });
+
+        Map<String, Document> vmSummaries = loadVmSummaries();
+        long copied = 0;
+        long skipped = 0;
+        MongoCollection<Document> target = mongoTemplate.getCollection(METRICS_COLLECTION);
+        List<Document> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(PRECOMPACT_COLLECTION)
+                .find().batchSize(MIGRATION_BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                if (timeSeries && !(doc.get(TIME_FIELD) instanceof Date)) {
+                    skipped++;
+                    continue;
+                }
+                batch.add(compactDocument(doc, vmSummaries));
+                if (batch.size() == MIGRATION_BATCH_SIZE) {
+                    target.insertMany(batch, new InsertManyOptions().ordered(false));
+                    copied += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            target.insertMany(batch, new InsertManyOptions().ordered(false));
+            copied += batch.size();
+        }
+
+        ensureQueryIndexes();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("copied", copied);
+        result.put("skipped", skipped);
+        result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        result.put("avgDocumentBytesBefore", collectionStats(PRECOMPACT_COLLECTION).get("avgDocumentBytes"));
+        result.put("avgDocumentBytesAfter", collectionStats(METRICS_COLLECTION).get("avgDocumentBytes"));
+        log.info("Migration vers le schéma compact terminée: {}", result);
+        return result;
+    }
+
+    /**
+     * Benchmark du schéma : les mêmes métriques (champs typés + métriques supplémentaires
+     * d'un agent) sont écrites dans deux collections temporaires, à l'ancien format et au
+     * format compact ; mesure les octets par document et le débit d'écriture
+     */
+    public Map<String, Object> benchmarkSchema(int documents) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Document> legacy = new ArrayList<>(documents);
+        List<Document> compact = new ArrayList<>(documents);
+        List<String> vmIds = new ArrayList<>();
+        Map<String, Document> vmSummaries = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            String vmId = new ObjectId().toHexString();
+            vmIds.add(vmId);
+            vmSummaries.put(vmId, new Document("vmName", "bench-vm-" + i)
+                    .append("adresseIp", "10.0.0." + (i + 1))
+                    .append("os", "Linux"));
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < documents; i++) {
+            Map<String, Object> input = new LinkedHashMap<>();
+            input.put("cpuUsage", random.nextDouble(100));
+            input.put("ramUsage", random.nextDouble(100));
+            input.put("diskUsage", random.nextDouble(100));
+            input.put("networkLatency", random.nextDouble(50));
+            input.put("networkThroughput", random.nextDouble(500));
+            input.put("vmStatus", "RUNNING");
+            input.put("isAvailable", true);
+            input.put("uptime", random.nextInt(1_000_000));
+            for (String name : BENCHMARK_EXTRA_METRICS) {
+                input.put(name, random.nextDouble(1000));
+            }
+
+            Document doc = new Document("_id", new ObjectId())
+                    .append("_class", MonitoringMetrics.class.getName())
+                    .append(VM_FIELD, new DBRef("vms", new ObjectId(vmIds.get(i % vmIds.size()))))
+                    .append(TIME_FIELD, new Date(now - i * 1000L))
+                    .append("source", "OSS Agents");
+            input.forEach((name, value) -> {
+                if (COMPACT_FIELD_NAMES.containsKey(name)) {
+                    doc.append(name, value);
+                }
+            });
+            doc.append("hasAlerts", false).append(LEGACY_ADDITIONAL_METRICS, new Document(input));
+            legacy.add(doc);
+
+            // Identifiants locaux : le benchmark n'enregistre rien dans le catalogue
+            Document extras = new Document();
+            for (int k = 0; k < BENCHMARK_EXTRA_METRICS.size(); k++) {
+                extras.append(String.valueOf(k + 1), input.get(BENCHMARK_EXTRA_METRICS.get(k)));
+            }
+            compact.add(compactFields(doc, vmSummaries).append(MonitoringMetrics.EXTRA_METRICS_FIELD, extras));
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("documents", documents);
+        results.put("legacy", benchmarkInsert("metrics_schema_benchmark_legacy", legacy));
+        results.put("compact", benchmarkInsert("metrics_schema_benchmark_compact", compact));
+        return results;
+    }
+
+    private Map<String, Object> benchmarkInsert(String collectionName, List<Document> documents) {
+        mongoTemplate.dropCollection(collectionName);
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < documents.size(); i += MIGRATION_BATCH_SIZE) {
+                collection.insertMany(documents.subList(i, Math.min(i + MIGRATION_BATCH_SIZE, documents.size())),
+                        new InsertManyOptions().ordered(false));
+            }
+            long durationNanos = System.nanoTime() - start;
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            result.put("docsPerSecond", Math.round(documents.size() / Math.max(durationNanos / 1e9, 1e-9)));
+            result.putAll(collectionStats(collectionName));
+            return result;
+        } finally {
+            mongoTemplate.dropCollection(collectionName);
+        }
+    }
+
+    /**
+     * Document à l'ancien schéma -> schéma compact
+     */
+    private Document compactDocument(Document legacy, Map<String, Document> vmSummaries) {
+        Document compact = compactFields(legacy, vmSummaries);
+        if (legacy.get(LEGACY_ADDITIONAL_METRICS) instanceof Map<?, ?> additional) {
+            Map<String, Object> byName = new LinkedHashMap<>();
+            additional.forEach((name, value) -> byName.put(String.valueOf(name), value));
+            Map<String, Object> extras = metricCatalog.encode(byName);
+            if (extras != null) {
+                compact.append(MonitoringMetrics.EXTRA_METRICS_FIELD, new Document(extras));
+            }
+        }
+        return compact;
+    }
+
+    private static Document compactFields(Document legacy, Map<String, Document> vmSummaries) {
+        Document compact = new Document();
+        legacy.forEach((name, value) -> {
+            if ("_class".equals(name) || LEGACY_ADDITIONAL_METRICS.equals(name)) {
+                return;
+            }
+            if (VM_FIELD.equals(name) && value instanceof DBRef ref) {
+                String vmId = String.valueOf(ref.getId());
+                compact.append(META_FIELD, vmId);
+                Document summary = vmSummaries.get(vmId);
+                if (summary != null) {
+                    compact.append(VM_FIELD, summary);
+                }
+                return;
+            }
+            compact.append(COMPACT_FIELD_NAMES.getOrDefault(name, name), value);
+        });
+        return compact;
+    }
+
+    /**
+     * Résumés des VMs (id -> vmName, adresseIp, os) pour remplacer les DBRef ;
+     * une VM supprimée depuis n'a pas de résumé, seul son vmId est conservé
+     */
+    private Map<String, Document> loadVmSummaries() {
+        Map<String, Document> summaries = new LinkedHashMap<>();
+        Document projection = new Document("vmName", 1).append("adresseIp", 1).append("os", 1);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection("vms")
+                .find().projection(projection).iterator()) {
+            while (cursor.hasNext()) {
+                Document vm = cursor.next();
+                Object id = vm.remove("_id");
+                summaries.put(String.valueOf(id), vm);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Vrai si le document le plus ancien est à l'ancien schéma (lecture sur l'index timestamp)
+     */
+    private boolean hasLegacySchema(String collection) {
+        if (!mongoTemplate.collectionExists(collection)) {
+            return false;
+        }
+        Document oldest = mongoTemplate.getCollection(collection)
+                .find()
+                .sort(new Document(TIME_FIELD, 1))
+                .limit(1)
+                .first();
+        if (oldest == null) {
+            return false;
+        }
+        Set<String> keys = oldest.keySet();
+        return keys.contains(LEGACY_ADDITIONAL_METRICS)
+                || oldest.get(VM_FIELD) instanceof DBRef
+                || COMPACT_FIELD_NAMES.keySet().stream().anyMatch(keys::contains);
+    }
+
+    /**
+     * État du stockage : mode configuré, type réel de la collection et statistiques
+     */
+    public Map<String, Object> getStorageStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("storageMode", isTimeSeriesMode() ? "timeseries" : "standard");
+        status.put("timeSeries", isTimeSeries(METRICS_COLLECTION));
+        status.put("expireAfterSeconds", expireAfterSeconds);
+        status.put("compactSchema", !hasLegacySchema(METRICS_COLLECTION));
+        status.put(METRICS_COLLECTION, collectionStats(METRICS_COLLECTION));
+        for (String collection : List.of(LEGACY_COLLECTION, PRECOMPACT_COLLECTION)) {
+            if (mongoTemplate.collectionExists(collection)) {
+                status.put(collection, collectionStats(collection));
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Benchmark : latence de requêtes par VM et plage de dates (même requête que
+     * findByVmIdAndTimestampBetween) et taille de stockage, pour la collection
+     * courante et pour l'ancien layout s'il a été conservé par la migration.
+     */
+    public Map<String, Object> benchmark(int queries, Duration window) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (String collection : List.of(METRICS_COLLECTION, LEGACY_COLLECTION, PRECOMPACT_COLLECTION)) {
+            if (mongoTemplate.collectionExists(collection)) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("timeSeries", isTimeSeries(collection));
+                result.putAll(benchmarkRangeQueries(collection, queries, window));
+                result.putAll(collectionStats(collection));
+                results.put(collection, result);
+            }
+        }
+        return results;
+    }
+
+    private Map<String, Object> benchmarkRangeQueries(String collectionName, int queries, Duration window) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        Document first = collection.find().sort(new Document(TIME_FIELD, 1)).limit(1).first();
+        // Collections conservées par les migrations : encore au schéma DBRef
+        String vmField = first != null && first.get(VM_FIELD) instanceof DBRef ? VM_FIELD + ".$id" : META_FIELD;
+        List<Object> vmIds = sampleVmIds(collection, vmField);
+
+        Document last = collection.find().sort(new Document(TIME_FIELD, -1)).limit(1).first();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (vmIds.isEmpty() || first == null || last == null) {
+            result.put("queries", 0);
+            return result;
+        }
+
+        long from = first.getDate(TIME_FIELD).getTime();
+        long to = Math.max(from + 1, last.getDate(TIME_FIELD).getTime() - window.toMillis());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long[] latencies = new long[queries];
+        long documents = 0;
+        for (int i = 0; i < queries; i++) {
+            Object vmId = vmIds.get(random.nextInt(vmIds.size()));
+            long startMs = random.nextLong(from, to);
+            Document filter = new Document(vmField, vmId)
+                    .append(TIME_FIELD, new Document("$gte", new Date(startMs))
+                            .append("$lte", new Date(startMs + window.toMillis())));
+
+            long start = System.nanoTime();
+            List<Document> found = collection.find(filter).into(new ArrayList<>());
+            latencies[i] = System.nanoTime() - start;
+            documents += found.size();
+        }
+
+        Arrays.sort(latencies);
+        result.put("queries", queries);
+        result.put("window", window.toString());
+        result.put("avgDocumentsPerQuery", documents / queries);
+        result.put("p50Ms", nanosToMs(latencies[queries / 2]));
+        result.put("p95Ms", nanosToMs(latencies[Math.min(queries - 1, (int) (queries * 0.95))]));
+        result.put("maxMs", nanosToMs(latencies[queries - 1]));
+        return result;
+    }
+
+    /**
+     * VMs interrogées par le benchmark : celles des documents les plus récents, lus par
+     * l'index timestamp (pas de distinct sur toute la collection)
+     */
+    private static List<Object> sampleVmIds(MongoCollection<Document> collection, String vmField) {
+        Set<Object> vmIds = new LinkedHashSet<>();
+        // "vm.$id" : le DBRef entier est projeté
+        String field = vmField.split("\\.")[0];
+        try (MongoCursor<Document> cursor = collection.find()
+                .projection(new Document(field, 1))
+                .sort(new Document(TIME_FIELD, -1))
+                .limit(BENCHMARK_VM_SAMPLE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Object value = cursor.next().get(field);
+                if (value instanceof DBRef ref) {
+                    value = ref.getId();
+                }
+                if (value != null) {
+                    vmIds.add(value);
+                }
+            }
+        }
+        return new ArrayList<>(vmIds);
+    }
+
+    private Map<String, Object> collectionStats(String collection) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (!mongoTemplate.collectionExists(collection)) {
+            return stats;
+        }
+        Document collStats = mongoTemplate.executeCommand(new Document("collStats", collection));
+        stats.put("count", collStats.get("count"));
+        stats.put("avgDocumentBytes", collStats.get("avgObjSize"));
+        stats.put("dataSizeBytes", collStats.get("size"));
+        stats.put("storageSizeBytes", collStats.get("storageSize"));
+        stats.put("indexSizeBytes", collStats.get("totalIndexSize"));
+        return stats;
+    }
+
+    private void renameMetricsCollection(String target) {
+        mongoTemplate.getCollection(METRICS_COLLECTION)
+                .renameCollection(new MongoNamespace(mongoTemplate.getDb().getName(), target));
+    }
+
+    private void createTimeSeriesCollection() {
+        CollectionOptions.TimeSeriesOptions options = CollectionOptions.TimeSeriesOptions.timeSeries(TIME_FIELD)
+                .metaField(META_FIELD)
+                .granularity(Granularity.valueOf(granularity.toUpperCase(Locale.ROOT)));
+        if (expireAfterSeconds > 0) {
+            options = options.expireAfter(Duration.ofSeconds(expireAfterSeconds));
+        }
+        mongoTemplate.createCollection(METRICS_COLLECTION, CollectionOptions.empty().timeSeries(options));
+        log.info("Collection time-series {} créée (granularité {}, expiration {} s)",
+                METRICS_COLLECTION, granularity, expireAfterSeconds);
+    }
+
+    private void ensureStandardIndexes() {
+        Index timestampIndex = new Index().on(TIME_FIELD, Sort.Direction.DESC).named("timestamp_desc");
+        if (expireAfterSeconds > 0) {
+            timestampIndex.expire(Duration.ofSeconds(expireAfterSeconds));
+        }
+        mongoTemplate.indexOps(MonitoringMetrics.class).ensureIndex(timestampIndex);
+    }
+
+    /**
+     * Index des requêtes "plus récentes d'abord" paginées par (timestamp, _id),
+     * sans filtre ou filtrées par VM, source ou présence d'alertes
+     */
+    private void ensureQueryIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(METRICS_COLLECTION);
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        prefixes.put("recent", null);
+        prefixes.put("recent_by_vm_id", META_FIELD);
+        prefixes.put("recent_by_source", MonitoringMetrics.SOURCE_FIELD);
+        prefixes.put("recent_by_alerts", MonitoringMetrics.HAS_ALERTS_FIELD);
+
+        prefixes.forEach((name, prefix) -> {
+            Index index = new Index().named(name);
+            if (prefix != null) {
+                index.on(prefix, Sort.Direction.ASC);
+            }
+            index.on(TIME_FIELD, Sort.Direction.DESC).on("_id", Sort.Direction.DESC);
+            try {
+                indexOps.ensureIndex(index);
+            } catch (Exception e) {
+                log.warn("Index {} non créé sur {}: {}", name, METRICS_COLLECTION, e.getMessage());
+            }
+        });
+    }
+
+    private boolean isTimeSeries(String collection) {
+        Document info = mongoTemplate.getDb()
+                .listCollections()
+                .filter(new Document("name", collection))
+                .first();
+        return info != null && "timeseries".equals(info.getString("type"));
+    }
+
+    private static double nanosToMs(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,431 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Écriture différée des métriques : les appelants (collecte planifiée, requêtes HTTP)
+ * déposent les métriques dans une file bornée et repartent sans attendre Mongo ;
+ * un thread dédié les écrit par paquets (taille atteinte ou intervalle écoulé).
+ * File sans verrou (ConcurrentLinkedQueue) bornée par un sémaphore de places libres.
+ * Quand la file est pleine : attente bornée (BLOCK), abandon des plus anciennes
+ * (DROP_OLDEST) ou refus (REJECT, HTTP 429) ; un lot est accepté ou refusé en entier.
+ * Un paquet en échec est réessayé sans limite si l'erreur est passagère (Mongo
+ * injoignable), sinon max-attempts fois avant d'être rangé dans metrics_dead_letter.
+ * À l'arrêt, la file est vidée avant la fermeture du client Mongo, dans la limite
+ * de shutdown-timeout-ms.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsWriteBehindBuffer implements SmartLifecycle {
+
+    public enum OverflowPolicy {
+        BLOCK, DROP_OLDEST, REJECT
+    }
+
+    /**
+     * File d'écriture pleine (politique REJECT, ou attente BLOCK dépassée), ou lot
+     * plus grand que la file
+     */
+    public static class OverflowException extends RuntimeException {
+        public OverflowException(String message) {
+            super(message);
+        }
+    }
+
+    // Code Mongo "duplicate key" : document déjà écrit lors d'une tentative précédente
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long MAX_RETRY_BACKOFF_MS = 30000;
+
+    private final MetricsBulkWriter metricsBulkWriter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitoring.write-behind.capacity:100000}")
+    private int capacity;
+
+    @Value("${monitoring.write-behind.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${monitoring.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${monitoring.write-behind.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${monitoring.write-behind.block-timeout-ms:5000}")
+    private long blockTimeoutMs;
+
+    @Value("${monitoring.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    // Tentatives pour une erreur non passagère avant mise de côté du paquet
+    @Value("${monitoring.write-behind.max-attempts:5}")
+    private int maxAttempts;
+
+    private final ConcurrentLinkedQueue<MonitoringMetrics> queue = new ConcurrentLinkedQueue<>();
+    private Semaphore freeSlots;
+    private volatile boolean running;
+    // Au-delà (arrêt en cours), les paquets en échec ne sont plus réessayés
+    private volatile long stopDeadline = Long.MAX_VALUE;
+    private volatile Thread flusher;
+    // Tenu pendant chaque écriture ; pris par les migrations pour suspendre les écritures
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private Counter dropped;
+    private Counter rejected;
+    private Counter flushFailures;
+    private Counter deadLettered;
+    private Counter lost;
+    private Timer flushTimer;
+
+    @Override
+    public void start() {
+        freeSlots = new Semaphore(Math.max(1, capacity));
+        Gauge.builder("monitoring.write_behind.depth", this, MetricsWriteBehindBuffer::depth)
+                .description("Métriques acceptées pas encore écrites (en file ou en cours d'écriture)")
+                .register(meterRegistry);
+        dropped = meterRegistry.counter("monitoring.write_behind.dropped");
+        rejected = meterRegistry.counter("monitoring.write_behind.rejected");
+        flushFailures = meterRegistry.counter("monitoring.write_behind.flush.failures");
+        deadLettered = meterRegistry.counter("monitoring.write_behind.dead_lettered");
+        lost = meterRegistry.counter("monitoring.write_behind.lost");
+        flushTimer = meterRegistry.timer("monitoring.write_behind.flush");
+
+        if (enabled) {
+            running = true;
+            flusher = Thread.ofPlatform().name("metrics-write-behind").daemon(true).start(this::flushLoop);
+            log.info("Écriture différée des métriques: file de {}, paquets de {}, toutes les {} ms, politique {}",
+                    capacity, batchSize, flushIntervalMs, overflowPolicy);
+        }
+    }
+
+    /**
+     * Vide la file : appelé après l'arrêt du serveur web et des tâches planifiées
+     * (phase plus basse), avant la destruction du client Mongo
+     */
+    @Override
+    public void stop() {
+        stopDeadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        running = false;
+        Thread thread = flusher;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.error("Arrêt: {} métriques non écrites après {} ms", depth(), shutdownTimeoutMs);
+        } else {
+            // Métriques déposées pendant l'arrêt du thread d'écriture
+            while (!queue.isEmpty()) {
+                flushBatch();
+            }
+            log.info("Arrêt: file d'écriture des métriques vidée");
+        }
+        flusher = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Arrêté après WebServerGracefulShutdownLifecycle et le planificateur
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    /**
+     * Places réservées dans la file pour un lot, avant tout effet de bord (alertes) :
+     * un lot refusé n'a rien déclenché. Les places non utilisées sont rendues à la fermeture.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private final boolean queued;
+        private int slots;
+
+        private Reservation(boolean queued, int slots) {
+            this.queued = queued;
+            this.slots = slots;
+        }
+
+        /**
+         * Dépose le lot (au plus les places réservées) ; les ids sont attribués immédiatement.
+         * Réservé hors fonctionnement (désactivé, démarrage ou arrêt), il est écrit de façon synchrone.
+         */
+        public void enqueue(Collection<MonitoringMetrics> metrics) {
+            if (metrics.size() > slots) {
+                throw new IllegalStateException("Lot de " + metrics.size() + " métriques pour " + slots + " places réservées");
+            }
+            if (metrics.isEmpty()) {
+                return;
+            }
+            for (MonitoringMetrics m : metrics) {
+                if (m.getId() == null) {
+                    m.setId(new ObjectId().toHexString());
+                }
+            }
+            if (!queued) {
+                slots -= metrics.size();
+                write(new ArrayList<>(metrics));
+                return;
+            }
+            queue.addAll(metrics);
+            // Les places appartiennent désormais aux métriques en file
+            slots -= metrics.size();
+            Thread thread = flusher;
+            if (thread != null && depth() >= batchSize) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (queued && slots > 0) {
+                freeSlots.release(slots);
+            }
+            slots = 0;
+        }
+    }
+
+    /**
+     * Réserve d'un bloc les places de count métriques
+     *
+     * @throws OverflowException si la file est pleine (REJECT, ou BLOCK au-delà du délai)
+     *                           ou si le lot est plus grand que la file
+     */
+    public Reservation reserve(int count) {
+        if (!running || count == 0) {
+            return new Reservation(false, count);
+        }
+        if (count > capacity) {
+            rejected.increment(count);
+            throw new OverflowException("Lot de " + count + " métriques plus grand que la file d'écriture (" + capacity + ")");
+        }
+        acquire(count);
+        return new Reservation(true, count);
+    }
+
+    /**
+     * Dépose des métriques à écrire, en entier ou pas du tout
+     *
+     * @throws OverflowException si la file est pleine (REJECT, ou BLOCK au-delà du délai)
+     */
+    public void enqueue(Collection<MonitoringMetrics> metrics) {
+        try (Reservation reservation = reserve(metrics.size())) {
+            reservation.enqueue(metrics);
+        }
+    }
+
+    /**
+     * Taille maximale d'un lot accepté par reserve
+     */
+    public int maxBatch() {
+        return running ? Math.max(1, capacity) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Exécute une opération sans écriture concurrente dans monitoring_metrics (renommage
+     * et recréation de la collection par une migration) : attend la fin du paquet en
+     * cours ; les métriques déposées entre-temps restent en file
+     */
+    public <T> T withWritesPaused(Supplier<T> action) {
+        writeLock.lock();
+        try {
+            return action.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Métriques acceptées pas encore écrites
+     */
+    public int depth() {
+        return freeSlots == null ? 0 : Math.max(0, capacity - freeSlots.availablePermits());
+    }
+
+    private void acquire(int slots) {
+        if (freeSlots.tryAcquire(slots)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    if (freeSlots.tryAcquire(slots, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                rejected.increment(slots);
+                throw new OverflowException("File d'écriture des métriques pleine (" + capacity + ")");
+            }
+            case DROP_OLDEST -> {
+                // Chaque place libérée par un abandon est reprise par une nouvelle métrique
+                int missing = slots;
+                while (missing > 0) {
+                    if (freeSlots.tryAcquire()) {
+                        missing--;
+                    } else if (queue.poll() != null) {
+                        dropped.increment();
+                        missing--;
+                    } else {
+                        // Places occupées par le paquet en cours d'écriture
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                    }
+                }
+            }
+            case REJECT -> {
+                rejected.increment(slots);
+                throw new OverflowException("File d'écriture des métriques pleine (" + capacity + ")");
+            }
+        }
+    }
+
+    private void flushLoop() {
+        long lastFlush = System.nanoTime();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (running || !queue.isEmpty()) {
+            long waited = System.nanoTime() - lastFlush;
+            if (running && queue.size() < batchSize && waited < intervalNanos) {
+                LockSupport.parkNanos(this, intervalNanos - waited);
+                continue;
+            }
+            flushBatch();
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    private void flushBatch() {
+        List<MonitoringMetrics> batch = new ArrayList<>(batchSize);
+        MonitoringMetrics m;
+        while (batch.size() < batchSize && (m = queue.poll()) != null) {
+            batch.add(m);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<MonitoringMetrics> pending = batch;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(pending);
+                break;
+            } catch (BulkOperationException e) {
+                // Les documents insérés ont été suivis par MetricsBulkWriter ; un "duplicate key"
+                // signale un document déjà écrit par une tentative précédente
+                List<MonitoringMetrics> failed = new ArrayList<>();
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) {
+                        failed.add(pending.get(error.getIndex()));
+                    }
+                }
+                if (failed.isEmpty()) {
+                    break;
+                }
+                pending = failed;
+                // Erreur propre aux documents (validation, taille) : nombre de tentatives borné
+                if (!retryLater(pending.size(), attempt, e, false)) {
+                    giveUp(pending, e);
+                    break;
+                }
+            } catch (RuntimeException e) {
+                if (!retryLater(pending.size(), attempt, e, isTransient(e))) {
+                    giveUp(pending, e);
+                    break;
+                }
+            }
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        freeSlots.release(batch.size());
+    }
+
+    private void write(List<MonitoringMetrics> batch) {
+        writeLock.lock();
+        try {
+            metricsBulkWriter.write(batch);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Attend avant un nouvel essai ; false s'il faut renoncer (erreur non passagère
+     * après max-attempts tentatives, ou délai d'arrêt dépassé)
+     */
+    private boolean retryLater(int size, int attempt, RuntimeException e, boolean transientError) {
+        flushFailures.increment();
+        long remaining = stopDeadline - System.currentTimeMillis();
+        if ((!transientError && attempt + 1 >= maxAttempts) || remaining <= 0) {
+            return false;
+        }
+        long backoff = Math.min(Math.min(MAX_RETRY_BACKOFF_MS, 100L << Math.min(attempt, 10)), remaining);
+        log.warn("Écriture de {} métriques impossible (tentative {}), nouvel essai dans {} ms: {}",
+                size, attempt + 1, backoff, e.getMessage());
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+        return true;
+    }
+
+    /**
+     * Met de côté un paquet qui ne sera plus réessayé : metrics_dead_letter si Mongo
+     * répond, sinon journalisé et compté comme perdu
+     */
+    private void giveUp(List<MonitoringMetrics> failed, RuntimeException e) {
+        try {
+            metricsBulkWriter.deadLetter(failed, e.getMessage());
+            deadLettered.increment(failed.size());
+            log.error("{} métriques non écrites rangées dans {}: {}",
+                    failed.size(), MetricsBulkWriter.DEAD_LETTER_COLLECTION, e.getMessage());
+        } catch (RuntimeException deadLetterError) {
+            lost.increment(failed.size());
+            log.error("{} métriques perdues ({}), mise de côté impossible: {}",
+                    failed.size(), e.getMessage(), deadLetterError.getMessage());
+        }
+    }
+
+    // Erreurs qui peuvent disparaître d'elles-mêmes : Mongo injoignable, délai dépassé, élection
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof MongoSocketException
+                || e instanceof MongoTimeoutException
+                || MongoExceptionTranslator.DEFAULT_EXCEPTION_TRANSLATOR.isTransientFailure(e);
+    }
+}
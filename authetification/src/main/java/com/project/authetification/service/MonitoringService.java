@@ -1,24 +1,36 @@
 package com.project.authetification.service;
 
-import com.azure.identity.DefaultAzureCredentialBuilder;
-import com.azure.monitor.query.MetricsQueryClient;
-import com.azure.monitor.query.MetricsQueryClientBuilder;
-import com.azure.monitor.query.models.MetricResult;
-import com.azure.monitor.query.models.MetricsQueryResult;
+import com.project.authetification.model.Alert;
+import com.project.authetification.model.CursorPage;
+import com.project.authetification.model.KeysetCursor;
+import com.project.authetification.model.MetricRollup;
+import com.project.authetification.model.MetricSample;
 import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.RollupResolution;
 import com.project.authetification.model.VM;
+import com.project.authetification.model.VmSummary;
+import com.project.authetification.repository.AlertRepository;
 import com.project.authetification.repository.MonitoringMetricsRepository;
 import com.project.authetification.repository.VMRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Slf4j
 @Service
@@ -27,84 +39,149 @@ public class MonitoringService {
 
     private final MonitoringMetricsRepository monitoringMetricsRepository;
     private final VMRepository vmRepository;
+    private final MetricsCollector metricsCollector;
+    private final MetricsWriteBehindBuffer metricsWriteBehindBuffer;
+    private final MetricsRollupService metricsRollupService;
+    private final LatestMetricsStore latestMetricsStore;
+    private final DashboardStatsService dashboardStatsService;
+    private final AlertEngine alertEngine;
+    private final AlertRepository alertRepository;
+    private final LiveMetricsBroadcaster liveMetricsBroadcaster;
 
-    // Client Azure Monitor (utilise l'identité managée du Pod ou les variables d'env)
-    private final MetricsQueryClient metricsClient = new MetricsQueryClientBuilder()
-            .credential(new DefaultAzureCredentialBuilder().build())
-            .buildClient();
+    // Client Azure Monitor (mode single ou batch, cf. AzureMonitorConfig)
+    private final AzureMetricsClient azureMetricsClient;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String VM_RESOURCE_TYPE = "Microsoft.Compute/virtualMachines";
+
+    private static final List<String> AZURE_METRIC_NAMES = List.of(
+            "Percentage CPU", "Network In", "Network Out", "Disk Read Bytes", "Disk Write Bytes");
 
     // Ton ID de souscription
-    private final String SUBSCRIPTION_ID = "aad8d067-b9af-4460-bba0-218009aa1031";
+    @Value("${monitoring.azure.subscription-id:aad8d067-b9af-4460-bba0-218009aa1031}")
+    private String subscriptionId;
+
+    // Intervalle entre deux métriques brutes d'une VM (période de collecte)
+    @Value("${monitoring.collector.fixed-rate-ms:300000}")
+    private long rawIntervalMs;
+
+    // Région des VMs provisionnées (cf. variable Terraform azure_location)
+    @Value("${monitoring.azure.region:francecentral}")
+    private String region;
 
     /**
      * TÂCHE AUTOMATIQUE : Récupère les métriques Azure toutes les 5 minutes (300000ms)
+     * Les VMs sont regroupées par souscription/région/type de ressource, puis les lots
+     * sont interrogés en parallèle par MetricsCollector.
      */
-    @Scheduled(fixedRate = 300000)
+    @Scheduled(fixedRateString = "${monitoring.collector.fixed-rate-ms:300000}")
     public void fetchMetricsFromAzureTask() {
         log.info(">>> Début de la collecte automatique des métriques Azure...");
 
-        List<VM> allVms = vmRepository.findAll();
+        // On ne monitore que les VMs RUNNING (demandes lues en lot, cf. ReferenceBatchLoader)
+        List<VM> runningVms = vmRepository.findByStatusWithReferences("RUNNING");
+
+        Queue<MonitoringMetrics> collected = new ConcurrentLinkedQueue<>();
+        MetricsCollector.RunReport report = metricsCollector.collectBatches(
+                groupByScope(runningVms), batch -> collectAzureBatch(batch, collected));
+
+        // Sauvegarde en base : écriture différée par paquets (au plus la taille de la file)
+        List<MonitoringMetrics> toWrite = new ArrayList<>(collected);
+        int queued = 0;
+        int chunk = metricsWriteBehindBuffer.maxBatch();
+        for (int i = 0; i < toWrite.size(); i += chunk) {
+            List<MonitoringMetrics> part = toWrite.subList(i, Math.min(i + chunk, toWrite.size()));
+            try {
+                evaluateAndEnqueue(part);
+            } catch (MetricsWriteBehindBuffer.OverflowException e) {
+                log.warn("{} métriques Azure non enregistrées: {}", part.size(), e.getMessage());
+                continue;
+            }
+            latestMetricsStore.addAll(part);
+            liveMetricsBroadcaster.publishMetrics(part);
+            queued += part.size();
+        }
 
-        for (VM vm : allVms) {
-            // On ne monitore que les VMs RUNNING
-            if ("RUNNING".equalsIgnoreCase(vm.getStatus())) {
-                try {
-                    String resourceId = constructResourceId(vm);
-                    log.debug("Interrogation Azure pour VM: {}", vm.getVmName());
+        log.info(">>> Fin de la collecte des métriques: {} VMs, {} collectées, {} en timeout, {} en échec, {} ignorées ({} ms), {} en file d'écriture",
+                report.total(), report.collected(), report.timedOut(), report.failed(), report.skipped(), report.durationMs(),
+                queued);
+    }
 
-                    Map<String, Object> azureData = queryAzureMetrics(resourceId);
+    /**
+     * Bilan de la dernière passe de collecte (null si aucune passe n'a encore eu lieu)
+     */
+    public MetricsCollector.RunReport getLastCollectionReport() {
+        return metricsCollector.getLastReport();
+    }
 
-                    // Sauvegarde en base
-                    collectMetrics(vm.getId(), "AzureMonitor", azureData);
+    /**
+     * Regroupe les VMs par périmètre Azure et découpe en lots de la taille acceptée par le client
+     */
+    private List<List<VM>> groupByScope(List<VM> vms) {
+        Map<AzureMetricsClient.Scope, List<VM>> byScope = new LinkedHashMap<>();
+        for (VM vm : vms) {
+            byScope.computeIfAbsent(scopeOf(constructResourceId(vm)), k -> new ArrayList<>()).add(vm);
+        }
 
-                } catch (Exception e) {
-                    log.error("Erreur monitoring pour la VM {}: {}", vm.getVmName(), e.getMessage());
-                }
+        int batchSize = Math.max(1, azureMetricsClient.maxResourcesPerCall());
+        List<List<VM>> batches = new ArrayList<>();
+        for (List<VM> scoped : byScope.values()) {
+            for (int i = 0; i < scoped.size(); i += batchSize) {
+                batches.add(scoped.subList(i, Math.min(i + batchSize, scoped.size())));
             }
         }
-        log.info(">>> Fin de la collecte des métriques.");
+        return batches;
     }
 
     /**
-     * Interroge l'API Azure Monitor pour une ressource donnée
+     * Interroge Azure Monitor pour un lot de VMs et redistribue les résultats par VM.
+     * Si l'appel échoue, les VMs sont enregistrées UNREACHABLE et le lot est compté en
+     * échec dans le bilan de la passe (l'exception est relancée vers MetricsCollector)
      */
-    private Map<String, Object> queryAzureMetrics(String resourceId) {
-        Map<String, Object> data = new HashMap<>();
+    private void collectAzureBatch(List<VM> batch, Queue<MonitoringMetrics> collected) {
+        List<String> resourceIds = batch.stream().map(this::constructResourceId).toList();
+        log.debug("Interrogation Azure pour {} VM(s)", batch.size());
+
+        Map<String, Map<String, Double>> results;
         try {
-            // On demande le % CPU et le Réseau (Entrant/Sortant)
-            MetricsQueryResult result = metricsClient.queryResource(
-                resourceId,
-                Arrays.asList("Percentage CPU", "Network In", "Network Out", "Disk Read Bytes", "Disk Write Bytes")
-            );
-
-            for (MetricResult metric : result.getMetrics()) {
-                // On prend la dernière valeur moyenne disponible
-                metric.getTimeSeries().stream()
-                        .flatMap(ts -> ts.getValues().stream())
-                        .reduce((first, second) -> second) // Prend le dernier élément
-                        .ifPresent(val -> {
-                            String name = metric.getMetricName();
-                            Double value = val.getAverage();
-
-                            if ("Percentage CPU".equals(name)) {
-                                data.put("cpuUsage", value);
-                            } else if ("Network In".equals(name) || "Network Out".equals(name)) {
-                                data.merge("networkThroughput", value, (a, b) -> (Double)a + (Double)b);
-                            } else if ("Disk Read Bytes".equals(name) || "Disk Write Bytes".equals(name)) {
-                                data.merge("diskUsage", value > 0 ? 10.0 : 0.0, (a,b) -> (Double)a);
-                            }
-                        });
-            }
+            results = azureMetricsClient.queryLatest(scopeOf(resourceIds.get(0)), resourceIds, AZURE_METRIC_NAMES);
+        } catch (RuntimeException e) {
+            log.warn("Impossible de lire les métriques Azure pour {} VM(s): {}", batch.size(), e.getMessage());
+            batch.forEach(vm -> collected.add(buildMetrics(vm, "AzureMonitor", toMetricsData(null))));
+            throw e;
+        }
 
-            data.put("isAvailable", true);
-            data.put("vmStatus", "RUNNING");
-            data.put("uptime", 300); // uptime simulé
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Double> latest = results.get(resourceIds.get(i).toLowerCase(Locale.ROOT));
+            collected.add(buildMetrics(batch.get(i), "AzureMonitor", toMetricsData(latest)));
+        }
+    }
 
-        } catch (Exception e) {
-            log.warn("Impossible de lire les métriques Azure pour {}: {}", resourceId, e.getMessage());
+    /**
+     * Convertit les métriques Azure brutes au format attendu par collectMetrics
+     */
+    private Map<String, Object> toMetricsData(Map<String, Double> latest) {
+        Map<String, Object> data = new HashMap<>();
+        if (latest == null) {
             data.put("isAvailable", false);
             data.put("vmStatus", "UNREACHABLE");
+            return data;
         }
+
+        latest.forEach((name, value) -> {
+            if ("Percentage CPU".equals(name)) {
+                data.put("cpuUsage", value);
+            } else if ("Network In".equals(name) || "Network Out".equals(name)) {
+                data.merge("networkThroughput", value, (a, b) -> (Double) a + (Double) b);
+            } else if ("Disk Read Bytes".equals(name) || "Disk Write Bytes".equals(name)) {
+                data.merge("diskUsage", value > 0 ? 10.0 : 0.0, (a, b) -> (Double) a);
+            }
+        });
+
+        data.put("isAvailable", true);
+        data.put("vmStatus", "RUNNING");
+        data.put("uptime", 300); // uptime simulé
         return data;
     }
 
@@ -114,19 +191,78 @@ public class MonitoringService {
     private String constructResourceId(VM vm) {
         String rgName = "rg-" + vm.getVmName() + "-" + vm.getDemande().getId();
         return String.format(
-            "/subscriptions/%s/resourceGroups/%s/providers/Microsoft.Compute/virtualMachines/%s",
-            SUBSCRIPTION_ID, rgName, vm.getVmName()
+            "/subscriptions/%s/resourceGroups/%s/providers/%s/%s",
+            subscriptionId, rgName, VM_RESOURCE_TYPE, vm.getVmName()
         );
     }
 
+    /**
+     * Extrait la souscription et le type de ressource d'un ID de ressource Azure
+     */
+    private AzureMetricsClient.Scope scopeOf(String resourceId) {
+        String[] parts = resourceId.split("/");
+        String subscription = subscriptionId;
+        String resourceType = VM_RESOURCE_TYPE;
+        for (int i = 0; i < parts.length - 1; i++) {
+            if ("subscriptions".equalsIgnoreCase(parts[i])) {
+                subscription = parts[i + 1];
+            } else if ("providers".equalsIgnoreCase(parts[i]) && i + 2 < parts.length) {
+                resourceType = parts[i + 1] + "/" + parts[i + 2];
+            }
+        }
+        return new AzureMetricsClient.Scope(subscription, region, resourceType);
+    }
+
     // --- MÉTHODES EXISTANTES ---
 
     public MonitoringMetrics collectMetrics(String vmId, String source, Map<String, Object> metricsData) {
         VM vm = vmRepository.findById(vmId)
                 .orElseThrow(() -> new RuntimeException("VM not found: " + vmId));
 
+        MonitoringMetrics metrics = buildMetrics(vm, source, metricsData);
+
+        // Écriture différée ; le passage de la VM en "monitored" est fait par MetricsBulkWriter
+        evaluateAndEnqueue(List.of(metrics));
+        latestMetricsStore.add(metrics);
+        liveMetricsBroadcaster.publishMetric(metrics);
+        return metrics;
+    }
+
+    /**
+     * Ingestion de métriques typées (déjà validées) dont les VMs sont connues :
+     * pas de conversion via toString, dépôt en bloc dans la file d'écriture
+     */
+    public List<MonitoringMetrics> collectSamples(List<MetricSample> samples, Map<String, VM> vmsById) {
+        LocalDateTime receivedAt = LocalDateTime.now();
+        List<MonitoringMetrics> metrics = new ArrayList<>(samples.size());
+        for (MetricSample sample : samples) {
+            MonitoringMetrics m = new MonitoringMetrics();
+            VM vm = vmsById.get(sample.getVmId());
+            m.setVmId(vm.getId());
+            m.setVm(VmSummary.of(vm));
+            m.setTimestamp(sample.getTimestamp() != null ? sample.getTimestamp() : receivedAt);
+            m.setSource(sample.getSource());
+            m.setCpuUsage(sample.getCpuUsage());
+            m.setRamUsage(sample.getRamUsage());
+            m.setDiskUsage(sample.getDiskUsage());
+            m.setNetworkLatency(sample.getNetworkLatency());
+            m.setNetworkThroughput(sample.getNetworkThroughput());
+            m.setVmStatus(sample.getVmStatus());
+            m.setIsAvailable(sample.getIsAvailable());
+            m.setUptime(sample.getUptime());
+            metrics.add(m);
+        }
+
+        evaluateAndEnqueue(metrics);
+        latestMetricsStore.addAll(metrics);
+        liveMetricsBroadcaster.publishMetrics(metrics);
+        return metrics;
+    }
+
+    private MonitoringMetrics buildMetrics(VM vm, String source, Map<String, Object> metricsData) {
         MonitoringMetrics metrics = new MonitoringMetrics();
-        metrics.setVm(vm);
+        metrics.setVmId(vm.getId());
+        metrics.setVm(VmSummary.of(vm));
         metrics.setTimestamp(LocalDateTime.now());
         metrics.setSource(source);
 
@@ -159,76 +295,148 @@ public class MonitoringService {
         }
 
         metrics.setAdditionalMetrics(metricsData);
-        checkAlerts(metrics);
+        return metrics;
+    }
 
-        if (vm.getMonitored() == null || !vm.getMonitored()) {
-            vm.setMonitored(true);
-            vmRepository.save(vm);
+    /**
+     * Réserve les places de la file, évalue les alertes puis dépose les métriques :
+     * un lot refusé (OverflowException) n'a fait avancer aucune alerte et n'est pas en
+     * file, le client peut le renvoyer tel quel
+     */
+    private void evaluateAndEnqueue(List<MonitoringMetrics> metrics) {
+        try (MetricsWriteBehindBuffer.Reservation reservation = metricsWriteBehindBuffer.reserve(metrics.size())) {
+            metrics.forEach(alertEngine::evaluate);
+            reservation.enqueue(metrics);
         }
+    }
 
-        return monitoringMetricsRepository.save(metrics);
+    /**
+     * Dernières métriques d'une VM (ordre chronologique), servies par le buffer en
+     * mémoire ; Mongo est interrogé tant que le buffer n'est pas chargé, ou s'il garde
+     * moins de métriques que demandé
+     */
+    public List<MonitoringMetrics> getMetricsByVM(String vmId, int limit) {
+        int pageSize = clampPageSize(limit);
+        return latestMetricsStore.latest(vmId, pageSize).orElseGet(() -> {
+            List<MonitoringMetrics> newestFirst = new ArrayList<>(
+                    monitoringMetricsRepository.findRecent(vmId, null, null, null, pageSize).getItems());
+            Collections.reverse(newestFirst);
+            return newestFirst;
+        });
     }
 
-    private void checkAlerts(MonitoringMetrics metrics) {
-        boolean hasAlert = false;
-        StringBuilder alertMessage = new StringBuilder();
+    public List<MonitoringMetrics> getMetricsByVMAndDateRange(String vmId, LocalDateTime start, LocalDateTime end) {
+        return monitoringMetricsRepository.findByVmIdAndTimestampBetween(vmId, start, end);
+    }
 
-        if (metrics.getCpuUsage() != null && metrics.getCpuUsage() > 90) {
-            hasAlert = true;
-            alertMessage.append("CPU usage élevé: ").append(String.format("%.2f", metrics.getCpuUsage())).append("%. ");
+    /**
+     * Choisit la résolution servant une plage : "raw" si les métriques brutes tiennent
+     * dans le budget de points, sinon la résolution d'agrégat la plus fine qui y tient
+     */
+    public String chooseResolution(LocalDateTime start, LocalDateTime end, int maxPoints) {
+        Duration window = Duration.between(start, end);
+        if (window.toMillis() / Math.max(1, rawIntervalMs) <= maxPoints) {
+            return "raw";
         }
+        return metricsRollupService.chooseResolution(window, maxPoints).getCode();
+    }
 
-        if (metrics.getRamUsage() != null && metrics.getRamUsage() > 90) {
-            hasAlert = true;
-            alertMessage.append("RAM usage élevé: ").append(String.format("%.2f", metrics.getRamUsage())).append("%. ");
-        }
+    public List<MetricRollup> getRollupsByVMAndDateRange(String vmId, String resolution,
+                                                          LocalDateTime start, LocalDateTime end) {
+        return metricsRollupService.getRollups(vmId, RollupResolution.fromCode(resolution), start, end);
+    }
 
-        if (metrics.getIsAvailable() != null && !metrics.getIsAvailable()) {
-            hasAlert = true;
-            alertMessage.append("VM non disponible. ");
-        }
+    public List<MonitoringMetrics> getMetricsBySource(String source) {
+        return monitoringMetricsRepository.findBySource(source);
+    }
 
-        metrics.setHasAlerts(hasAlert);
-        if (hasAlert) {
-            metrics.setAlertMessage(alertMessage.toString());
-        }
+    /**
+     * Historique des alertes paginé par curseur (collection alerts, index (openedAt, _id))
+     */
+    public CursorPage<Alert> getAlertsPage(String vmId, String status, String severity, String type, String cursor,
+                                           int limit) {
+        return alertRepository.findRecent(vmId, status, severity, type, cursor, clampPageSize(limit));
     }
 
-    public List<MonitoringMetrics> getMetricsByVM(String vmId) {
-        return monitoringMetricsRepository.findByVm_Id(vmId);
+    /**
+     * Nombre d'alertes actives par statut et par sévérité, lu dans le moteur d'alertes
+     */
+    public Map<String, Object> getActiveAlertCounts() {
+        return alertEngine.countActiveAlerts();
     }
 
-    public List<MonitoringMetrics> getMetricsByVMAndDateRange(String vmId, LocalDateTime start, LocalDateTime end) {
-        return monitoringMetricsRepository.findByVm_IdAndTimestampBetween(vmId, start, end);
+    /**
+     * Abonnement SSE aux métriques et alertes en direct (vmIds vide = toute la flotte)
+     */
+    public SseEmitter subscribeLive(List<String> vmIds) {
+        return liveMetricsBroadcaster.subscribe(vmIds);
     }
 
-    public List<MonitoringMetrics> getMetricsBySource(String source) {
-        return monitoringMetricsRepository.findBySource(source);
+    /**
+     * Alertes ouvertes ou acquittées (état du moteur d'alertes)
+     */
+    public List<Alert> getActiveAlerts(String vmId) {
+        return alertEngine.getActiveAlerts(vmId);
+    }
+
+    public Alert acknowledgeAlert(String alertId, String username) {
+        return alertEngine.acknowledge(alertId, username);
     }
 
-    public List<MonitoringMetrics> getAllAlerts() {
-        return monitoringMetricsRepository.findByHasAlertsTrue();
+    /**
+     * Métriques récentes paginées par curseur, servies par l'index (timestamp, _id).
+     * La première page sans filtre (ou filtrée par VM) est lue dans les buffers en mémoire
+     * quand ils contiennent toute la page ; son curseur reste valable pour lire les pages
+     * suivantes dans Mongo.
+     */
+    public CursorPage<MonitoringMetrics> getRecentMetricsPage(String vmId, String source, Boolean hasAlerts,
+                                                              String cursor, int limit) {
+        int pageSize = clampPageSize(limit);
+        if (cursor == null && source == null && hasAlerts == null) {
+            Optional<List<MonitoringMetrics>> fromMemory;
+            if (vmId == null) {
+                fromMemory = latestMetricsStore.recent(pageSize + 1);
+            } else {
+                fromMemory = latestMetricsStore.latest(vmId, pageSize + 1).map(chronological -> {
+                    List<MonitoringMetrics> newestFirst = new ArrayList<>(chronological);
+                    Collections.reverse(newestFirst);
+                    return newestFirst;
+                });
+            }
+            if (fromMemory.isPresent()) {
+                List<MonitoringMetrics> items = fromMemory.get();
+                if (items.size() > pageSize) {
+                    items = items.subList(0, pageSize);
+                    MonitoringMetrics last = items.get(pageSize - 1);
+                    return new CursorPage<>(items, KeysetCursor.encode(last.getTimestamp(), last.getId()));
+                }
+                return new CursorPage<>(items, null);
+            }
+        }
+        return monitoringMetricsRepository.findRecent(vmId, source, hasAlerts, cursor, pageSize);
     }
 
-    public List<MonitoringMetrics> getRecentMetrics(int limit) {
-        List<MonitoringMetrics> allMetrics = monitoringMetricsRepository.findAll();
-        return allMetrics.stream()
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .limit(limit)
-                .toList();
+    private static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public VM enableMonitoring(String vmId) {
         VM vm = vmRepository.findById(vmId)
                 .orElseThrow(() -> new RuntimeException("VM not found: " + vmId));
+        Boolean wasMonitored = vm.getMonitored();
         vm.setMonitored(true);
-        return vmRepository.save(vm);
+        VM saved = vmRepository.save(vm);
+        dashboardStatsService.vmMonitoringChanged(wasMonitored, true);
+        return saved;
     }
 
     public VM disableMonitoring(String vmId) {
         VM vm = vmRepository.findById(vmId)
                 .orElseThrow(() -> new RuntimeException("VM not found: " + vmId));
+        Boolean wasMonitored = vm.getMonitored();
         vm.setMonitored(false);
-        return vmRepository.save(vm);
+        VM saved = vmRepository.save(vm);
+        dashboardStatsService.vmMonitoringChanged(wasMonitored, false);
+        return saved;
     }
 }
@@ -24,10 +24,30 @@ public class NotificationService {
         notificationRepository.save(notification);
     }
 
+    /**
+     * Notification non enregistrée, à envoyer avec sendNotifications
+     */
+    public static Notification notification(User user, String titre, String message) {
+        Notification notification = new Notification();
+        notification.setUser(user);
+        notification.setTitre(titre);
+        notification.setMessage(message);
+        return notification;
+    }
+
+    /**
+     * Enregistre plusieurs notifications en une seule écriture
+     */
+    public void sendNotifications(List<Notification> notifications) {
+        if (!notifications.isEmpty()) {
+            notificationRepository.insert(notifications);
+        }
+    }
+
     public List<Notification> getNotificationsForCurrentUser(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
-        return notificationRepository.findByUser_IdOrderByDateCreationDesc(user.getId());
+        return notificationRepository.findByUserIdWithReferences(user.getId());
     }
 
     public long getUnreadNotificationsCount(String username) {
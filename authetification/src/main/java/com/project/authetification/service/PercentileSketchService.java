@@ -0,0 +1,398 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MonitoringMetrics;
+import com.project.authetification.model.PercentileSketch;
+import com.project.authetification.model.RollupResolution;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.DoubleHistogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+/**
+ * Percentiles par VM (CPU, RAM, latence) sur n'importe quelle plage, sans relire les
+ * métriques brutes. Chaque métrique écrite alimente en mémoire un histogramme
+ * HdrHistogram par VM et par heure et par jour ; ils sont fusionnés périodiquement dans
+ * metrics_sketch_1h / metrics_sketch_1d (forme compressée, quelques centaines d'octets).
+ * Une requête fusionne les jours complets de la plage et les heures restantes, bornes
+ * arrondies à l'heure.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PercentileSketchService {
+
+    // Métriques suivies, sous leur nom d'API (même ordre que get / set)
+    public static final List<String> METRICS = List.of("cpuUsage", "ramUsage", "networkLatency");
+
+    private static final List<RollupResolution> RESOLUTIONS = List.of(RollupResolution.ONE_HOUR, RollupResolution.ONE_DAY);
+    private static final int DUPLICATE_KEY = 11000;
+
+    /**
+     * Plage [from, to[ d'intervalles d'une résolution
+     */
+    private record Range(LocalDateTime from, LocalDateTime to) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.percentiles.enabled:true}")
+    private boolean enabled;
+
+    // Précision relative des percentiles : 2 chiffres = 1 %
+    @Value("${monitoring.percentiles.significant-digits:2}")
+    private int significantDigits;
+
+    // Histogrammes pas encore fusionnés en base, par résolution puis par id de sketch
+    private final Map<RollupResolution, ConcurrentHashMap<String, Pending>> pending = new EnumMap<>(RollupResolution.class);
+
+    @PostConstruct
+    public void initialize() {
+        for (RollupResolution resolution : RESOLUTIONS) {
+            pending.put(resolution, new ConcurrentHashMap<>());
+            try {
+                mongoTemplate.indexOps(collectionName(resolution))
+                        .ensureIndex(new Index().on("vmId", Sort.Direction.ASC).on("bucketStart", Sort.Direction.ASC));
+            } catch (Exception e) {
+                log.error("Création des index de {} impossible: {}", collectionName(resolution), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ajoute des métriques écrites aux histogrammes en cours
+     */
+    public void record(Collection<MonitoringMetrics> metrics) {
+        if (!enabled) {
+            return;
+        }
+        for (MonitoringMetrics m : metrics) {
+            if (m.getVmId() == null || m.getTimestamp() == null) {
+                continue;
+            }
+            double[] values = {valueOf(m.getCpuUsage()), valueOf(m.getRamUsage()), valueOf(m.getNetworkLatency())};
+            for (RollupResolution resolution : RESOLUTIONS) {
+                LocalDateTime bucketStart = MetricsRollupService.truncate(m.getTimestamp(), resolution);
+                // compute : atomique vis-à-vis du remove de flush()
+                pending.get(resolution).compute(sketchId(m.getVmId(), bucketStart), (id, p) -> {
+                    Pending target = p != null ? p : new Pending(m.getVmId(), bucketStart, significantDigits);
+                    target.record(values);
+                    return target;
+                });
+            }
+        }
+    }
+
+    /**
+     * TÂCHE AUTOMATIQUE : fusionne les histogrammes en cours dans les sketches stockés
+     */
+    @Scheduled(fixedDelayString = "${monitoring.percentiles.flush-ms:60000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        for (RollupResolution resolution : RESOLUTIONS) {
+            try {
+                flush(resolution);
+            } catch (Exception e) {
+                log.error("Écriture des sketches {} impossible: {}", resolution.getCode(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Percentiles d'une VM sur [start, end] (arrondi à l'heure englobante) : au plus une
+     * requête sur les sketches journaliers et une sur les sketches horaires
+     */
+    public Map<String, Object> getPercentiles(String vmId, LocalDateTime start, LocalDateTime end, List<Double> quantiles) {
+        LocalDateTime from = MetricsRollupService.truncate(start, RollupResolution.ONE_HOUR);
+        LocalDateTime to = ceil(end, RollupResolution.ONE_HOUR);
+        LocalDateTime firstDay = ceil(from, RollupResolution.ONE_DAY);
+        LocalDateTime lastDay = MetricsRollupService.truncate(to, RollupResolution.ONE_DAY);
+
+        DoubleHistogram[] merged = newHistograms(significantDigits);
+        if (firstDay.isBefore(lastDay)) {
+            mergeRange(merged, vmId, RollupResolution.ONE_DAY, List.of(new Range(firstDay, lastDay)));
+            mergeRange(merged, vmId, RollupResolution.ONE_HOUR,
+                    List.of(new Range(from, firstDay), new Range(lastDay, to)));
+        } else {
+            mergeRange(merged, vmId, RollupResolution.ONE_HOUR, List.of(new Range(from, to)));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("vmId", vmId);
+        result.put("start", from);
+        result.put("end", to);
+        for (int i = 0; i < METRICS.size(); i++) {
+            result.put(METRICS.get(i), summarize(merged[i], quantiles));
+        }
+        return result;
+    }
+
+    private void flush(RollupResolution resolution) {
+        ConcurrentHashMap<String, Pending> current = pending.get(resolution);
+        Map<String, Pending> taken = new LinkedHashMap<>();
+        for (String id : List.copyOf(current.keySet())) {
+            Pending p = current.remove(id);
+            if (p != null) {
+                taken.put(id, p);
+            }
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+
+        // Toute erreur remet les histogrammes non écrits en attente (fusionnés à ceux reçus depuis)
+        List<String> order = new ArrayList<>(taken.size());
+        try {
+            String collection = collectionName(resolution);
+            Map<String, PercentileSketch> stored = new LinkedHashMap<>();
+            for (PercentileSketch sketch : mongoTemplate.find(
+                    Query.query(Criteria.where("_id").in(taken.keySet())), PercentileSketch.class, collection)) {
+                stored.put(sketch.getId(), sketch);
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PercentileSketch.class, collection);
+            taken.forEach((id, p) -> {
+                PercentileSketch previous = stored.get(id);
+                PercentileSketch sketch = new PercentileSketch();
+                sketch.setId(id);
+                sketch.setVmId(p.vmId);
+                sketch.setResolution(resolution.getCode());
+                sketch.setBucketStart(p.bucketStart);
+                DoubleHistogram[] histograms = p.copy(significantDigits);
+                if (previous != null) {
+                    DoubleHistogram[] old = decode(previous);
+                    for (int i = 0; i < histograms.length; i++) {
+                        histograms[i].add(old[i]);
+                    }
+                }
+                sketch.setCpuUsage(encode(histograms[0]));
+                sketch.setRamUsage(encode(histograms[1]));
+                sketch.setNetworkLatency(encode(histograms[2]));
+
+                // Remplacement conditionné à la version lue : une fusion concurrente fait
+                // échouer l'upsert (clé dupliquée) et l'histogramme est remis en attente
+                Criteria filter = Criteria.where("_id").is(id);
+                if (previous != null) {
+                    sketch.setVersion(previous.getVersion() + 1);
+                    filter.and("version").is(previous.getVersion());
+                } else {
+                    filter.and("version").exists(false);
+                }
+                bulk.replaceOne(Query.query(filter), sketch, FindAndReplaceOptions.options().upsert());
+                order.add(id);
+            });
+
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            int conflicts = 0;
+            for (var error : e.getErrors()) {
+                String id = order.get(error.getIndex());
+                current.merge(id, taken.get(id), Pending::mergeFrom);
+                if (error.getCode() == DUPLICATE_KEY) {
+                    conflicts++;
+                }
+            }
+            meterRegistry.counter("monitoring.percentiles.flush.conflicts").increment(conflicts);
+            log.debug("Sketches {} modifiés en parallèle, {} remis en attente", resolution.getCode(), conflicts);
+            if (conflicts < e.getErrors().size()) {
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            taken.forEach((id, p) -> current.merge(id, p, Pending::mergeFrom));
+            throw e;
+        }
+    }
+
+    private void mergeRange(DoubleHistogram[] merged, String vmId, RollupResolution resolution,
+                            List<Range> ranges) {
+        List<Criteria> byRange = new ArrayList<>();
+        for (Range range : ranges) {
+            if (range.from().isBefore(range.to())) {
+                byRange.add(Criteria.where("bucketStart").gte(range.from()).lt(range.to()));
+            }
+        }
+        if (byRange.isEmpty()) {
+            return;
+        }
+        Query query = Query.query(Criteria.where("vmId").is(vmId).orOperator(byRange));
+        for (PercentileSketch sketch : mongoTemplate.find(query, PercentileSketch.class, collectionName(resolution))) {
+            DoubleHistogram[] histograms = decode(sketch);
+            for (int i = 0; i < merged.length; i++) {
+                merged[i].add(histograms[i]);
+            }
+        }
+
+        // Valeurs reçues depuis la dernière fusion en base
+        pending.get(resolution).forEach((id, p) -> {
+            if (p.vmId.equals(vmId) && ranges.stream().anyMatch(
+                    range -> !p.bucketStart.isBefore(range.from()) && p.bucketStart.isBefore(range.to()))) {
+                DoubleHistogram[] histograms = p.copy(significantDigits);
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i].add(histograms[i]);
+                }
+            }
+        });
+    }
+
+    private static Map<String, Object> summarize(DoubleHistogram histogram, List<Double> quantiles) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long count = histogram.getTotalCount();
+        summary.put("count", count);
+        if (count == 0) {
+            return summary;
+        }
+        summary.put("min", histogram.getMinValue());
+        summary.put("max", histogram.getMaxValue());
+        summary.put("mean", histogram.getMean());
+        for (Double q : quantiles) {
+            summary.put(quantileName(q), histogram.getValueAtPercentile(q * 100));
+        }
+        return summary;
+    }
+
+    // 0.5 -> p50, 0.999 -> p99.9
+    private static String quantileName(double quantile) {
+        String percent = Double.toString(quantile * 100);
+        return "p" + (percent.endsWith(".0") ? percent.substring(0, percent.length() - 2) : percent);
+    }
+
+    private static DoubleHistogram[] decode(PercentileSketch sketch) {
+        List<Function<PercentileSketch, byte[]>> getters = List.of(
+                PercentileSketch::getCpuUsage, PercentileSketch::getRamUsage, PercentileSketch::getNetworkLatency);
+        DoubleHistogram[] histograms = new DoubleHistogram[getters.size()];
+        for (int i = 0; i < histograms.length; i++) {
+            byte[] bytes = getters.get(i).apply(sketch);
+            try {
+                histograms[i] = DoubleHistogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 2);
+                histograms[i].setAutoResize(true);
+            } catch (Exception e) {
+                throw new IllegalStateException("Sketch " + sketch.getId() + " illisible: " + e.getMessage(), e);
+            }
+        }
+        return histograms;
+    }
+
+    private static byte[] encode(DoubleHistogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer, Deflater.BEST_COMPRESSION);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static DoubleHistogram[] newHistograms(int significantDigits) {
+        DoubleHistogram[] histograms = new DoubleHistogram[METRICS.size()];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new DoubleHistogram(significantDigits);
+        }
+        return histograms;
+    }
+
+    // NaN = pas de valeur
+    private static double valueOf(Double value) {
+        return value == null || !Double.isFinite(value) || value < 0 ? Double.NaN : value;
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, RollupResolution resolution) {
+        LocalDateTime floor = MetricsRollupService.truncate(time, resolution);
+        return floor.equals(time) ? floor : floor.plus(resolution.getDuration());
+    }
+
+    private static String collectionName(RollupResolution resolution) {
+        return "metrics_sketch_" + resolution.getCode();
+    }
+
+    private static String sketchId(String vmId, LocalDateTime bucketStart) {
+        return vmId + "|" + bucketStart;
+    }
+
+    /**
+     * Histogrammes en mémoire d'un sketch (verrou : lus par les requêtes pendant
+     * qu'ils sont alimentés)
+     */
+    private static final class Pending {
+        private final String vmId;
+        private final LocalDateTime bucketStart;
+        private final DoubleHistogram[] histograms;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Pending(String vmId, LocalDateTime bucketStart, int significantDigits) {
+            this.vmId = vmId;
+            this.bucketStart = bucketStart;
+            this.histograms = newHistograms(significantDigits);
+        }
+
+        private void record(double[] values) {
+            lock.lock();
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    if (!Double.isNaN(values[i])) {
+                        histograms[i].recordValue(values[i]);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Pending mergeFrom(Pending other) {
+            DoubleHistogram[] copies = other.copy(histograms[0].getNumberOfSignificantValueDigits());
+            lock.lock();
+            try {
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i].add(copies[i]);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return this;
+        }
+
+        private DoubleHistogram[] copy(int significantDigits) {
+            DoubleHistogram[] copies = newHistograms(significantDigits);
+            lock.lock();
+            try {
+                for (int i = 0; i < copies.length; i++) {
+                    copies[i].add(histograms[i]);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return copies;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.project.authetification.service;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Décodage d'un WriteRequest Prometheus (remote-write 1.0) : snappy (format bloc) puis
+ * protobuf, lu champ par champ avec CodedInputStream plutôt que par des classes générées.
+ * <pre>
+ * WriteRequest { repeated TimeSeries timeseries = 1; repeated MetricMetadata metadata = 3; }
+ * TimeSeries   { repeated Label labels = 1; repeated Sample samples = 2; ... }
+ * Label        { string name = 1; string value = 2; }
+ * Sample       { double value = 1; int64 timestamp = 2; } // timestamp en ms
+ * </pre>
+ * Les champs inconnus (métadonnées, exemplars, histogrammes natifs) sont ignorés.
+ */
+public final class RemoteWriteDecoder {
+
+    /**
+     * Une série : labels à plat (nom, valeur, nom, valeur...) et ses échantillons
+     */
+    public record TimeSeries(String[] labels, double[] values, long[] timestamps) {
+
+        public String label(String name) {
+            for (int i = 0; i < labels.length; i += 2) {
+                if (labels[i].equals(name)) {
+                    return labels[i + 1];
+                }
+            }
+            return null;
+        }
+
+        public int size() {
+            return values.length;
+        }
+    }
+
+    private static final int TIMESERIES = 1;
+    private static final int SERIES_LABELS = 1;
+    private static final int SERIES_SAMPLES = 2;
+    private static final int LABEL_NAME = 1;
+    private static final int LABEL_VALUE = 2;
+    private static final int SAMPLE_VALUE = 1;
+    private static final int SAMPLE_TIMESTAMP = 2;
+
+    private RemoteWriteDecoder() {
+    }
+
+    /**
+     * Décompresse et décode un corps de requête remote-write
+     */
+    public static List<TimeSeries> decode(byte[] compressed, int maxUncompressedBytes) throws IOException {
+        if (!Snappy.isValidCompressedBuffer(compressed)) {
+            throw new IOException("Corps snappy invalide");
+        }
+        int length = Snappy.uncompressedLength(compressed);
+        if (length > maxUncompressedBytes) {
+            throw new IOException("WriteRequest trop volumineux: " + length + " octets");
+        }
+        return parse(Snappy.uncompress(compressed));
+    }
+
+    /**
+     * Décode un WriteRequest protobuf non compressé
+     */
+    public static List<TimeSeries> parse(byte[] message) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(message);
+        List<TimeSeries> series = new ArrayList<>();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (is(tag, TIMESERIES, WireFormat.WIRETYPE_LENGTH_DELIMITED)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                series.add(readSeries(in));
+                in.popLimit(limit);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return series;
+    }
+
+    private static TimeSeries readSeries(CodedInputStream in) throws IOException {
+        List<String> labels = new ArrayList<>(16);
+        double[] values = new double[4];
+        long[] timestamps = new long[4];
+        int samples = 0;
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (is(tag, SERIES_LABELS, WireFormat.WIRETYPE_LENGTH_DELIMITED)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                readLabel(in, labels);
+                in.popLimit(limit);
+            } else if (is(tag, SERIES_SAMPLES, WireFormat.WIRETYPE_LENGTH_DELIMITED)) {
+                if (samples == values.length) {
+                    values = Arrays.copyOf(values, samples * 2);
+                    timestamps = Arrays.copyOf(timestamps, samples * 2);
+                }
+                int limit = in.pushLimit(in.readRawVarint32());
+                readSample(in, values, timestamps, samples++);
+                in.popLimit(limit);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return new TimeSeries(labels.toArray(new String[0]),
+                Arrays.copyOf(values, samples), Arrays.copyOf(timestamps, samples));
+    }
+
+    private static void readLabel(CodedInputStream in, List<String> labels) throws IOException {
+        String name = "";
+        String value = "";
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (is(tag, LABEL_NAME, WireFormat.WIRETYPE_LENGTH_DELIMITED)) {
+                name = in.readStringRequireUtf8();
+            } else if (is(tag, LABEL_VALUE, WireFormat.WIRETYPE_LENGTH_DELIMITED)) {
+                value = in.readStringRequireUtf8();
+            } else {
+                in.skipField(tag);
+            }
+        }
+        labels.add(name);
+        labels.add(value);
+    }
+
+    private static void readSample(CodedInputStream in, double[] values, long[] timestamps, int index)
+            throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (is(tag, SAMPLE_VALUE, WireFormat.WIRETYPE_FIXED64)) {
+                values[index] = in.readDouble();
+            } else if (is(tag, SAMPLE_TIMESTAMP, WireFormat.WIRETYPE_VARINT)) {
+                timestamps[index] = in.readInt64();
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private static boolean is(int tag, int field, int wireType) {
+        return tag == (field << 3 | wireType);
+    }
+}
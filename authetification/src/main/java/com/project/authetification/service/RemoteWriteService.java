@@ -0,0 +1,133 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.MetricSample;
+import com.project.authetification.model.VM;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Récepteur Prometheus remote-write : les séries sont rattachées aux VMs par leurs
+ * labels (VmLabelIndex), les échantillons d'une même VM au même instant sont regroupés
+ * en une MonitoringMetrics, puis évalués par le moteur d'alertes et écrits en masse
+ * comme l'ingestion en lot. Les séries dont le nom n'est pas reconnu sont ignorées.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RemoteWriteService {
+
+    /**
+     * Bilan d'une requête remote-write (en échantillons, sauf written = métriques écrites)
+     */
+    public record Report(int series, int samples, int accepted, int unmapped, int unknownVm,
+                         int invalid, int written) {
+    }
+
+    private static final String SOURCE = "Prometheus";
+
+    /**
+     * Champ de MonitoringMetrics alimenté par une série, avec le facteur appliqué à la valeur
+     */
+    private record Target(BiConsumer<MetricSample, Double> setter, double scale, boolean percentage) {
+    }
+
+    // Nom de métrique (__name__) -> champ ; ratios 0..1 des règles node-exporter convertis en %
+    private static final Map<String, Target> TARGETS = Map.ofEntries(
+            Map.entry("vm_cpu_usage_percent", new Target(MetricSample::setCpuUsage, 1, true)),
+            Map.entry("instance:node_cpu_utilisation:rate5m", new Target(MetricSample::setCpuUsage, 100, true)),
+            Map.entry("vm_ram_usage_percent", new Target(MetricSample::setRamUsage, 1, true)),
+            Map.entry("instance:node_memory_utilisation:ratio", new Target(MetricSample::setRamUsage, 100, true)),
+            Map.entry("vm_disk_usage_percent", new Target(MetricSample::setDiskUsage, 1, true)),
+            Map.entry("vm_network_latency_ms", new Target(MetricSample::setNetworkLatency, 1, false)),
+            Map.entry("vm_network_throughput_mbps", new Target(MetricSample::setNetworkThroughput, 1, false)),
+            Map.entry("vm_uptime_seconds", new Target((s, v) -> s.setUptime((int) Math.min(v, Integer.MAX_VALUE)), 1, false)),
+            Map.entry("up", new Target((s, v) -> s.setIsAvailable(v >= 1), 1, false)));
+
+    private final VmLabelIndex vmLabelIndex;
+    private final MonitoringService monitoringService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${monitoring.remote-write.max-uncompressed-bytes:33554432}")
+    private int maxUncompressedBytes;
+
+    public Report receive(byte[] body) throws IOException {
+        long start = System.nanoTime();
+        List<RemoteWriteDecoder.TimeSeries> series = RemoteWriteDecoder.decode(body, maxUncompressedBytes);
+
+        int samples = 0;
+        int accepted = 0;
+        int unmapped = 0;
+        int unknownVm = 0;
+        int invalid = 0;
+        // Une métrique par (VM, timestamp) : les séries cpu/ram/disque d'un même scrape fusionnent
+        Map<String, MetricSample> grouped = new HashMap<>();
+        Map<String, VM> vmsById = new HashMap<>();
+
+        for (RemoteWriteDecoder.TimeSeries s : series) {
+            samples += s.size();
+            Target target = TARGETS.get(s.label("__name__"));
+            if (target == null) {
+                unmapped += s.size();
+                continue;
+            }
+            VM vm = vmLabelIndex.resolve(s);
+            if (vm == null) {
+                unknownVm += s.size();
+                continue;
+            }
+            vmsById.put(vm.getId(), vm);
+            for (int i = 0; i < s.size(); i++) {
+                double value = s.values()[i] * target.scale();
+                // NaN = marqueur de péremption Prometheus
+                if (!Double.isFinite(value) || value < 0 || (target.percentage() && value > 100)) {
+                    invalid++;
+                    continue;
+                }
+                long timestamp = s.timestamps()[i];
+                MetricSample sample = grouped.computeIfAbsent(vm.getId() + '@' + timestamp,
+                        key -> newSample(vm.getId(), timestamp));
+                target.setter().accept(sample, value);
+                accepted++;
+            }
+        }
+
+        int written = 0;
+        if (!grouped.isEmpty()) {
+            // Ordre (VM, timestamp) : les alertes et les buffers voient chaque VM dans l'ordre chronologique
+            List<MetricSample> ordered = new ArrayList<>(grouped.values());
+            ordered.sort(Comparator.comparing(MetricSample::getVmId).thenComparing(MetricSample::getTimestamp));
+            written = monitoringService.collectSamples(ordered, vmsById).size();
+        }
+
+        meterRegistry.counter("monitoring.remote_write.samples", "outcome", "accepted").increment(accepted);
+        meterRegistry.counter("monitoring.remote_write.samples", "outcome", "unmapped").increment(unmapped);
+        meterRegistry.counter("monitoring.remote_write.samples", "outcome", "unknown_vm").increment(unknownVm);
+        meterRegistry.counter("monitoring.remote_write.samples", "outcome", "invalid").increment(invalid);
+        meterRegistry.timer("monitoring.remote_write.request").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        return new Report(series.size(), samples, accepted, unmapped, unknownVm, invalid, written);
+    }
+
+    private static MetricSample newSample(String vmId, long timestampMs) {
+        MetricSample sample = new MetricSample();
+        sample.setVmId(vmId);
+        sample.setSource(SOURCE);
+        sample.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMs), ZoneId.systemDefault()));
+        return sample;
+    }
+}
@@ -0,0 +1,333 @@
+package com.project.authetification.service;
+
+import com.mongodb.DBRef;
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.ResourcePool;
+import com.project.authetification.model.WorkOrder;
+import com.project.authetification.repository.ReferenceBatchLoader;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registre en mémoire des ressources réservées par les demandes validées : disque par
+ * datastore, adresses par réseau, vCPU et RAM par quota d'abonnement client. Chaque
+ * compteur est un AtomicLong réservé par compareAndSet sans jamais dépasser la capacité
+ * (aucun verrou) ; une demande qui touche plusieurs compteurs les réserve un par un et
+ * rend ceux déjà pris si l'un est plein. Les réservations sont rendues au refus, à
+ * l'erreur de provisionnement et à la suppression, et reconstruites depuis Mongo au
+ * démarrage (demandes validées, provisionnées ou complétées).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceLedger {
+
+    /**
+     * Une des ressources demandées n'a plus la capacité suffisante
+     */
+    public static class InsufficientResourcesException extends RuntimeException {
+        public InsufficientResourcesException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Jeton d'une réservation : seul son détenteur peut la rendre avec {@link #release(String, Reservation)}
+     */
+    public static final class Reservation {
+        private final List<Charge> charges;
+
+        private Reservation(List<Charge> charges) {
+            this.charges = charges;
+        }
+
+        private void undo() {
+            charges.forEach(charge -> charge.counter.used.addAndGet(-charge.amount));
+        }
+    }
+
+    // Statuts de demande qui occupent des ressources
+    public static final List<String> RESERVED_STATUSES = List.of("VALIDE", "EN_PROVISIONNEMENT", "PROVISIONNEE", "COMPLETEE");
+
+    private static final String DIM_DISK = "diskGb";
+    private static final String DIM_ADDRESSES = "addresses";
+    private static final String DIM_VCPU = "vcpu";
+    private static final String DIM_RAM = "ramMib";
+
+    private final MongoTemplate mongoTemplate;
+    private final ReferenceBatchLoader referenceBatchLoader;
+
+    // true : datastore ou réseau sans ResourcePool refusé ; false : non limité (mais comptabilisé)
+    @Value("${resources.ledger.strict:false}")
+    private boolean strict;
+
+    // type:nom:dimension -> compteur
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    // demandeId -> ressources réservées
+    private final ConcurrentHashMap<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            mongoTemplate.indexOps(ResourcePool.class).ensureIndex(new Index()
+                    .on("type", Sort.Direction.ASC).on("name", Sort.Direction.ASC).unique().named("pool_by_type_name"));
+        } catch (Exception e) {
+            log.warn("Index pool_by_type_name non créé: {}", e.getMessage());
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Reconstruction du registre des ressources impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recharge capacités et réservations depuis Mongo (démarrage)
+     */
+    public void rebuild() {
+        counters.clear();
+        reservations.clear();
+        mongoTemplate.findAll(ResourcePool.class).forEach(this::applyPool);
+
+        // Demandes dont le provisionnement a échoué : ressources déjà rendues
+        Set<Object> failed = new HashSet<>();
+        Query failedQuery = Query.query(Criteria.where("status").is("ERREUR"));
+        failedQuery.fields().include("demande");
+        for (Document workOrder : mongoTemplate.find(failedQuery, Document.class, mongoTemplate.getCollectionName(WorkOrder.class))) {
+            if (workOrder.get("demande") instanceof DBRef ref) {
+                failed.add(String.valueOf(ref.getId()));
+            }
+        }
+
+        List<Demande> demandes = referenceBatchLoader.find(
+                Query.query(Criteria.where("status").in(RESERVED_STATUSES)), Demande.class);
+        int restored = 0;
+        for (Demande demande : demandes) {
+            if (failed.contains(demande.getId())) {
+                continue;
+            }
+            List<Charge> charges = chargesFor(demande, demande.getReseau(), demande.getDatastore(), false);
+            // Déjà validées : comptées même au-delà d'une capacité réduite depuis
+            charges.forEach(charge -> charge.counter.used.addAndGet(charge.amount));
+            reservations.put(demande.getId(), new Reservation(charges));
+            restored++;
+        }
+        log.info("Registre des ressources reconstruit: {} pool(s), {} réservation(s)",
+                counters.values().stream().filter(c -> c.configured).count(), restored);
+    }
+
+    /**
+     * Réserve les ressources d'une demande sur le datastore, le réseau et le quota de son
+     * client. Une nouvelle réservation pour la même demande remplace l'ancienne (qui reste
+     * comptée jusqu'à ce que la nouvelle soit acquise)
+     */
+    public Reservation reserve(String demandeId, Demande demande, String reseau, String datastore) {
+        Reservation reservation = acquire(demande, reseau, datastore);
+        Reservation previous = reservations.put(demandeId, reservation);
+        if (previous != null) {
+            previous.undo();
+        }
+        return reservation;
+    }
+
+    /**
+     * Comme {@link #reserve} mais sans remplacer : null si la demande a déjà une réservation
+     * (validation concurrente en cours), rien n'est alors réservé
+     */
+    public Reservation reserveIfAbsent(String demandeId, Demande demande, String reseau, String datastore) {
+        Reservation reservation = acquire(demande, reseau, datastore);
+        if (reservations.putIfAbsent(demandeId, reservation) != null) {
+            reservation.undo();
+            return null;
+        }
+        return reservation;
+    }
+
+    /**
+     * Rend les ressources réservées par une demande (sans effet si elle n'en a pas)
+     */
+    public void release(String demandeId) {
+        if (demandeId == null) {
+            return;
+        }
+        Reservation reservation = reservations.remove(demandeId);
+        if (reservation != null) {
+            reservation.undo();
+        }
+    }
+
+    /**
+     * Rend une réservation seulement si elle est toujours celle de la demande : sans effet
+     * si une autre décision l'a remplacée ou rendue entre-temps
+     */
+    public boolean release(String demandeId, Reservation reservation) {
+        if (demandeId == null || reservation == null || !reservations.remove(demandeId, reservation)) {
+            return false;
+        }
+        reservation.undo();
+        return true;
+    }
+
+    private Reservation acquire(Demande demande, String reseau, String datastore) {
+        List<Charge> charges = chargesFor(demande, reseau, datastore, strict);
+        for (int i = 0; i < charges.size(); i++) {
+            Charge charge = charges.get(i);
+            if (!charge.counter.tryAdd(charge.amount)) {
+                for (int j = 0; j < i; j++) {
+                    charges.get(j).counter.used.addAndGet(-charges.get(j).amount);
+                }
+                throw new InsufficientResourcesException("Ressources insuffisantes: " + charge.describe());
+            }
+        }
+        return new Reservation(charges);
+    }
+
+    /**
+     * Applique les capacités d'un pool (création ou modification)
+     */
+    public void applyPool(ResourcePool pool) {
+        switch (pool.getType()) {
+            case ResourcePool.TYPE_DATASTORE -> configure(pool.getType(), pool.getName(), DIM_DISK, pool.getDiskGb());
+            case ResourcePool.TYPE_NETWORK -> configure(pool.getType(), pool.getName(), DIM_ADDRESSES, pool.getAddresses());
+            case ResourcePool.TYPE_SUBSCRIPTION -> {
+                configure(pool.getType(), pool.getName(), DIM_VCPU, pool.getVcpu());
+                configure(pool.getType(), pool.getName(), DIM_RAM, pool.getRamGb() == null ? null : pool.getRamGb() * 1024);
+            }
+            default -> throw new IllegalArgumentException("Type de pool inconnu: " + pool.getType());
+        }
+    }
+
+    /**
+     * Retire les limites d'un pool supprimé ; ses réservations restent comptées
+     */
+    public void removePool(ResourcePool pool) {
+        for (String dimension : List.of(DIM_DISK, DIM_ADDRESSES, DIM_VCPU, DIM_RAM)) {
+            Counter counter = counters.get(key(pool.getType(), pool.getName(), dimension));
+            if (counter != null) {
+                counter.capacity = Long.MAX_VALUE;
+                counter.configured = false;
+            }
+        }
+    }
+
+    /**
+     * Utilisation de chaque compteur (capacité null = non limité)
+     */
+    public List<Map<String, Object>> getUsage() {
+        List<Map<String, Object>> usage = new ArrayList<>(counters.size());
+        counters.values().stream()
+                .sorted((a, b) -> a.key.compareTo(b.key))
+                .forEach(counter -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("type", counter.type);
+                    entry.put("name", counter.name);
+                    entry.put("dimension", counter.dimension);
+                    entry.put("used", counter.used.get());
+                    entry.put("capacity", counter.capacity == Long.MAX_VALUE ? null : counter.capacity);
+                    usage.add(entry);
+                });
+        return usage;
+    }
+
+    private List<Charge> chargesFor(Demande demande, String reseau, String datastore, boolean requirePools) {
+        List<Charge> charges = new ArrayList<>(4);
+        if (datastore != null && !datastore.isBlank()) {
+            charges.add(new Charge(counter(ResourcePool.TYPE_DATASTORE, datastore, DIM_DISK, requirePools),
+                    orZero(ResourceQuantities.disqueGib(demande))));
+        }
+        if (reseau != null && !reseau.isBlank()) {
+            charges.add(new Charge(counter(ResourcePool.TYPE_NETWORK, reseau, DIM_ADDRESSES, requirePools), 1));
+        }
+        String client = demande.getDemandeur() == null ? null : demande.getDemandeur().getUsername();
+        if (client != null) {
+            charges.add(new Charge(counter(ResourcePool.TYPE_SUBSCRIPTION, client, DIM_VCPU, false),
+                    orZero(ResourceQuantities.vcpu(demande))));
+            charges.add(new Charge(counter(ResourcePool.TYPE_SUBSCRIPTION, client, DIM_RAM, false),
+                    orZero(ResourceQuantities.ramMib(demande))));
+        }
+        charges.removeIf(charge -> charge.amount <= 0);
+        return charges;
+    }
+
+    private static long orZero(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+
+    private Counter counter(String type, String name, String dimension, boolean requirePool) {
+        Counter counter = counters.computeIfAbsent(key(type, name, dimension), k -> new Counter(type, name, dimension));
+        if (requirePool && !counter.configured) {
+            throw new InsufficientResourcesException("Ressource inconnue: " + type.toLowerCase() + " " + name);
+        }
+        return counter;
+    }
+
+    private void configure(String type, String name, String dimension, Long capacity) {
+        Counter counter = counters.computeIfAbsent(key(type, name, dimension), k -> new Counter(type, name, dimension));
+        counter.capacity = capacity == null ? Long.MAX_VALUE : capacity;
+        counter.configured = true;
+    }
+
+    private static String key(String type, String name, String dimension) {
+        return type + ":" + name + ":" + dimension;
+    }
+
+    /**
+     * Quantité réservée sur un compteur
+     */
+    private record Charge(Counter counter, long amount) {
+        private String describe() {
+            return counter.type.toLowerCase() + " " + counter.name + " (" + counter.dimension + ": "
+                    + amount + " demandé(s), " + counter.used.get() + "/" + counter.capacity + " utilisé(s))";
+        }
+    }
+
+    /**
+     * Une dimension d'un pool : utilisation toujours <= capacité pour les réservations
+     * faites par reserve
+     */
+    private static final class Counter {
+        private final String type;
+        private final String name;
+        private final String dimension;
+        private final String key;
+        private final AtomicLong used = new AtomicLong();
+        private volatile long capacity = Long.MAX_VALUE;
+        private volatile boolean configured;
+
+        private Counter(String type, String name, String dimension) {
+            this.type = type;
+            this.name = name;
+            this.dimension = dimension;
+            this.key = key(type, name, dimension);
+        }
+
+        private boolean tryAdd(long amount) {
+            long current;
+            do {
+                current = used.get();
+                if (amount > capacity - current) {
+                    return false;
+                }
+            } while (!used.compareAndSet(current, current + amount));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.project.authetification.service;
+
+import com.mongodb.client.MongoCursor;
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.VM;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Quantités de ressources normalisées : le CPU, la RAM et le disque saisis en texte
+ * libre ("8 Go", "8192MB", "1,5 To", "4 vCPU") sont convertis une fois, à l'écriture,
+ * en vcpu, ramMib et disqueGib (sans unité : Go). Les champs typés sont indexés avec le
+ * statut, pour filtrer côté Mongo ("demandes en attente de plus de 16 Go"). Les documents
+ * antérieurs sont complétés par backfill (au démarrage et via l'API d'administration).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceQuantities {
+
+    public static final String VCPU_FIELD = "vcpu";
+    public static final String RAM_FIELD = "ramMib";
+    public static final String DISK_FIELD = "disqueGib";
+
+    // Premier nombre (décimales avec . ou ,) et l'unité collée ou séparée par des espaces
+    private static final Pattern QUANTITY = Pattern.compile("(\\d+(?:[.,]\\d+)?)\\s*([\\p{L}]*)");
+    private static final int BACKFILL_BATCH = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${resources.quantities.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            for (Class<?> type : List.of(Demande.class, VM.class)) {
+                for (String field : List.of(VCPU_FIELD, RAM_FIELD, DISK_FIELD)) {
+                    mongoTemplate.indexOps(type).ensureIndex(new Index()
+                            .on("status", Sort.Direction.ASC).on(field, Sort.Direction.ASC)
+                            .named("status_" + field));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Index des quantités de ressources non créés: {}", e.getMessage());
+        }
+        if (backfillOnStartup) {
+            try {
+                backfill(false);
+            } catch (Exception e) {
+                log.error("Backfill des quantités de ressources impossible: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Renseigne vcpu / ramMib / disqueGib d'une demande depuis ses champs texte
+     */
+    public static void apply(Demande demande) {
+        demande.setVcpu(parseVcpu(demande.getCpu()));
+        demande.setRamMib(parseRamMib(demande.getRam()));
+        demande.setDisqueGib(parseDiskGib(demande.getDisque()));
+    }
+
+    /**
+     * Renseigne vcpu / ramMib / disqueGib d'une VM depuis ses champs texte
+     */
+    public static void apply(VM vm) {
+        vm.setVcpu(parseVcpu(vm.getCpu()));
+        vm.setRamMib(parseRamMib(vm.getRam()));
+        vm.setDisqueGib(parseDiskGib(vm.getDisque()));
+    }
+
+    /**
+     * vCPU d'une demande (champ typé, ou texte si la demande n'a pas encore été migrée)
+     */
+    public static Integer vcpu(Demande demande) {
+        return demande.getVcpu() != null ? demande.getVcpu() : parseVcpu(demande.getCpu());
+    }
+
+    public static Long ramMib(Demande demande) {
+        return demande.getRamMib() != null ? demande.getRamMib() : parseRamMib(demande.getRam());
+    }
+
+    public static Long disqueGib(Demande demande) {
+        return demande.getDisqueGib() != null ? demande.getDisqueGib() : parseDiskGib(demande.getDisque());
+    }
+
+    /**
+     * Nombre de vCPU ("4", "4 vCPU", "4 cœurs") ; null si illisible ou nul
+     */
+    public static Integer parseVcpu(String value) {
+        Matcher matcher = match(value);
+        if (matcher == null) {
+            return null;
+        }
+        double count = Math.ceil(number(matcher));
+        return count >= 1 && count <= Integer.MAX_VALUE ? (int) count : null;
+    }
+
+    /**
+     * RAM en MiB ("8", "8 Go", "8GB", "8192 Mo", "1 To") ; sans unité : Go
+     */
+    public static Long parseRamMib(String value) {
+        return scaled(value, 1024);
+    }
+
+    /**
+     * Disque en GiB ("100", "100 Go", "2 To", "512 Mo" arrondi au Go supérieur) ; sans unité : Go
+     */
+    public static Long parseDiskGib(String value) {
+        return scaled(value, 1);
+    }
+
+    /**
+     * Complète les demandes et VMs sans quantités typées (toutes si force), par lots
+     */
+    public Map<String, Object> backfill(boolean force) {
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("demandes", backfillCollection(mongoTemplate.getCollectionName(Demande.class), force));
+        result.put("vms", backfillCollection(mongoTemplate.getCollectionName(VM.class), force));
+        result.put("durationMs", System.currentTimeMillis() - start);
+        log.info("Backfill des quantités de ressources: {}", result);
+        return result;
+    }
+
+    private long backfillCollection(String collection, boolean force) {
+        Document filter = force ? new Document() : new Document("$or", List.of(
+                new Document(VCPU_FIELD, new Document("$exists", false)),
+                new Document(RAM_FIELD, new Document("$exists", false)),
+                new Document(DISK_FIELD, new Document("$exists", false))));
+        Document projection = new Document("cpu", 1).append("ram", 1).append("disque", 1);
+
+        long updated = 0;
+        BulkOperations bulk = null;
+        int pending = 0;
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collection)
+                .find(filter).projection(projection).batchSize(BACKFILL_BATCH).iterator()) {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+                }
+                // Valeur illisible : champ à null, pour ne pas être relu au prochain backfill
+                Update update = new Update()
+                        .set(VCPU_FIELD, parseVcpu(doc.getString("cpu")))
+                        .set(RAM_FIELD, parseRamMib(doc.getString("ram")))
+                        .set(DISK_FIELD, parseDiskGib(doc.getString("disque")));
+                bulk.updateOne(Query.query(Criteria.where("_id").is(doc.get("_id"))), update);
+                if (++pending == BACKFILL_BATCH) {
+                    updated += bulk.execute().getModifiedCount();
+                    bulk = null;
+                    pending = 0;
+                }
+            }
+        }
+        if (bulk != null) {
+            updated += bulk.execute().getModifiedCount();
+        }
+        return updated;
+    }
+
+    /**
+     * Quantité dans l'unité cible, exprimée en MiB multiplié par mibPerUnit / 1024 :
+     * mibPerUnit = 1024 pour un résultat en MiB, 1 pour un résultat en GiB
+     */
+    private static Long scaled(String value, long mibPerUnit) {
+        Matcher matcher = match(value);
+        if (matcher == null) {
+            return null;
+        }
+        double factor = switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+            case "m", "mo", "mb", "mib", "mio" -> 1.0 / 1024;
+            case "t", "to", "tb", "tib", "tio" -> 1024;
+            default -> 1; // g, go, gb, gib, gio ou sans unité
+        };
+        double result = Math.ceil(number(matcher) * factor * mibPerUnit);
+        return result >= 1 && result < Long.MAX_VALUE ? (long) result : null;
+    }
+
+    private static Matcher match(String value) {
+        if (value == null) {
+            return null;
+        }
+        Matcher matcher = QUANTITY.matcher(value);
+        return matcher.find() ? matcher : null;
+    }
+
+    private static double number(Matcher matcher) {
+        return Double.parseDouble(matcher.group(1).replace(',', '.'));
+    }
+}
@@ -0,0 +1,53 @@
+package com.project.authetification.service;
+
+import com.azure.monitor.query.MetricsQueryClient;
+import com.azure.monitor.query.models.MetricResult;
+import com.azure.monitor.query.models.MetricsQueryResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mode historique : un appel queryResource du SDK Azure par VM.
+ * L'erreur est relancée si aucune des ressources n'a pu être lue.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SdkAzureMetricsClient implements AzureMetricsClient {
+
+    private final MetricsQueryClient metricsClient;
+
+    @Override
+    public Map<String, Map<String, Double>> queryLatest(Scope scope, List<String> resourceIds, List<String> metricNames) {
+        Map<String, Map<String, Double>> results = new HashMap<>();
+        RuntimeException lastError = null;
+        for (String resourceId : resourceIds) {
+            try {
+                MetricsQueryResult result = metricsClient.queryResource(resourceId, metricNames);
+
+                Map<String, Double> latest = new HashMap<>();
+                for (MetricResult metric : result.getMetrics()) {
+                    // On prend la dernière valeur moyenne disponible
+                    metric.getTimeSeries().stream()
+                            .flatMap(ts -> ts.getValues().stream())
+                            .filter(val -> val.getAverage() != null)
+                            .reduce((first, second) -> second)
+                            .ifPresent(val -> latest.put(metric.getMetricName(), val.getAverage()));
+                }
+                results.put(resourceId.toLowerCase(Locale.ROOT), latest);
+            } catch (RuntimeException e) {
+                log.warn("Impossible de lire les métriques Azure pour {}: {}", resourceId, e.getMessage());
+                lastError = e;
+            }
+        }
+        // Aucune ressource lue : l'appel est en échec (compté comme tel dans le bilan de collecte)
+        if (results.isEmpty() && lastError != null) {
+            throw lastError;
+        }
+        return results;
+    }
+}
@@ -17,25 +17,27 @@ public class SupportSystemService {
     private final DemandeRepository demandeRepository;
     private final VMRepository vmRepository;
     private final UserRepository userRepository;
+    private final DashboardStatsService dashboardStatsService;
+    private final ResourceLedger resourceLedger;
 
     // --- METHODES DE LECTURE ---
 
     public List<WorkOrder> getWorkOrdersEnAttente() {
-        return workOrderRepository.findByStatus("EN_ATTENTE");
+        return workOrderRepository.findByStatusWithReferences("EN_ATTENTE");
     }
 
     public List<WorkOrder> getWorkOrdersByAssigne(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé: " + username));
-        return workOrderRepository.findByAssigne_Id(user.getId());
+        return workOrderRepository.findByAssigneIdWithReferences(user.getId());
     }
 
     public List<VM> getAllVMs() {
-        return vmRepository.findAll();
+        return vmRepository.findAllWithReferences();
     }
 
     public List<VM> getVMsByDemande(String demandeId) {
-        return vmRepository.findByDemande_Id(demandeId);
+        return vmRepository.findByDemandeIdWithReferences(demandeId);
     }
 
     // --- METHODES D'ACTION ---
@@ -80,18 +82,24 @@ public class SupportSystemService {
              vm.setDisque(demande.getDisque());
         }
 
+        ResourceQuantities.apply(vm);
+
         vm.setStatus("CREATING"); // On met CREATING en attendant Terraform
         vm.setDemande(demande);
-        
-        return vmRepository.save(vm);
+
+        VM savedVm = vmRepository.save(vm);
+        dashboardStatsService.vmCreated(savedVm);
+        return savedVm;
     }
 
     public void updateVmIp(String vmId, String ipAddress) {
         VM vm = vmRepository.findById(vmId).orElse(null);
         if (vm != null) {
+            String oldStatus = vm.getStatus();
             vm.setAdresseIp(ipAddress);
             vm.setStatus("RUNNING");
             vmRepository.save(vm);
+            dashboardStatsService.vmStatusChanged(oldStatus, vm.getStatus());
         }
     }
     
@@ -115,8 +123,10 @@ public class SupportSystemService {
         wo.setResultat(resultat);
         wo.setDateCompletion(LocalDateTime.now());
         if(wo.getDemande() != null) {
+            String oldStatus = wo.getDemande().getStatus();
             wo.getDemande().setStatus("PROVISIONNEE");
             demandeRepository.save(wo.getDemande());
+            dashboardStatsService.demandeStatusChanged(oldStatus, "PROVISIONNEE");
         }
         return workOrderRepository.save(wo);
     }
@@ -125,12 +135,20 @@ public class SupportSystemService {
         WorkOrder wo = workOrderRepository.findById(id).orElseThrow();
         wo.setStatus("ERREUR");
         wo.setErreur(erreur);
-        return workOrderRepository.save(wo);
+        WorkOrder saved = workOrderRepository.save(wo);
+        // Provisionnement échoué : ressources rendues
+        if (wo.getDemande() != null) {
+            resourceLedger.release(wo.getDemande().getId());
+        }
+        return saved;
     }
 
     public VM updateVMStatus(String id, String status) {
         VM vm = vmRepository.findById(id).orElseThrow();
+        String oldStatus = vm.getStatus();
         vm.setStatus(status);
-        return vmRepository.save(vm);
+        VM savedVm = vmRepository.save(vm);
+        dashboardStatsService.vmStatusChanged(oldStatus, status);
+        return savedVm;
     }
 }
@@ -0,0 +1,187 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.VM;
+import com.project.authetification.repository.VMRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index en mémoire des VMs par label Prometheus : vm_id (id ou identifiant vSphere),
+ * vm_name, instance (adresse IP ou nom, port retiré), hostname / nodename.
+ * Reconstruit périodiquement et, au plus une fois par intervalle, quand des labels
+ * jamais vus ne sont pas trouvés (VM créée depuis la dernière reconstruction). Les
+ * labels restés inconnus après une reconstruction (cibles qui ne sont pas des VMs)
+ * ne déclenchent plus de reconstruction ; seule la reconstruction périodique les revoit.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VmLabelIndex {
+
+    private final VMRepository vmRepository;
+
+    // Délai minimal entre deux reconstructions déclenchées par un label inconnu
+    @Value("${monitoring.remote-write.index-miss-refresh-ms:30000}")
+    private long missRefreshMs;
+
+    // Nombre maximal de jeux de labels inconnus mémorisés (vidé au-delà)
+    private static final int MAX_UNKNOWN = 100_000;
+
+    private volatile Map<String, VM> index = Map.of();
+    private final Set<String> unknown = ConcurrentHashMap.newKeySet();
+    private volatile long lastRefresh;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Construction de l'index des VMs par label impossible: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${monitoring.remote-write.index-refresh-ms:300000}",
+            fixedDelayString = "${monitoring.remote-write.index-refresh-ms:300000}")
+    public void refreshTask() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Rafraîchissement de l'index des VMs par label impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reconstruit l'index puis le remplace d'un bloc (les lectures ne sont jamais bloquées)
+     */
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            Map<String, VM> fresh = new HashMap<>();
+            // Projection : la demande (et ses utilisateurs) n'est pas chargée
+            for (VM vm : vmRepository.findAllSummaries()) {
+                put(fresh, "id:", vm.getId(), vm);
+                put(fresh, "id:", vm.getVmId(), vm);
+                put(fresh, "name:", vm.getVmName(), vm);
+                put(fresh, "addr:", vm.getAdresseIp(), vm);
+            }
+            index = fresh;
+            lastRefresh = System.currentTimeMillis();
+            log.debug("Index des VMs par label reconstruit: {} clés", fresh.size());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * VM désignée par les labels d'une série, ou null
+     */
+    public VM resolve(RemoteWriteDecoder.TimeSeries series) {
+        VM vm = lookup(index, series);
+        if (vm != null) {
+            return vm;
+        }
+        String labels = labelsKey(series);
+        if (unknown.contains(labels)) {
+            return null;
+        }
+        if (System.currentTimeMillis() - lastRefresh >= missRefreshMs && refreshLock.tryLock()) {
+            // Un seul thread reconstruit ; les autres ignorent la série en attendant
+            boolean refreshed = false;
+            try {
+                if (System.currentTimeMillis() - lastRefresh >= missRefreshMs) {
+                    refresh();
+                    refreshed = true;
+                }
+            } catch (Exception e) {
+                log.warn("Rafraîchissement de l'index des VMs par label impossible: {}", e.getMessage());
+                lastRefresh = System.currentTimeMillis();
+            } finally {
+                refreshLock.unlock();
+            }
+            vm = lookup(index, series);
+            if (vm == null && refreshed) {
+                rememberUnknown(labels);
+            }
+        }
+        return vm;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private void rememberUnknown(String labels) {
+        if (unknown.size() >= MAX_UNKNOWN) {
+            unknown.clear();
+        }
+        unknown.add(labels);
+    }
+
+    // Labels servant à la résolution, hors __name__ : toutes les séries d'une cible partagent la clé
+    private static String labelsKey(RemoteWriteDecoder.TimeSeries series) {
+        return series.label("vm_id") + "\u0000" + series.label("vm_name") + "\u0000" + series.label("instance")
+                + "\u0000" + series.label("hostname") + "\u0000" + series.label("nodename");
+    }
+
+    private static VM lookup(Map<String, VM> index, RemoteWriteDecoder.TimeSeries series) {
+        VM vm = get(index, "id:", series.label("vm_id"));
+        if (vm == null) {
+            vm = get(index, "name:", series.label("vm_name"));
+        }
+        if (vm == null) {
+            String host = stripPort(series.label("instance"));
+            vm = get(index, "addr:", host);
+            if (vm == null) {
+                vm = get(index, "name:", host);
+            }
+        }
+        if (vm == null) {
+            vm = get(index, "name:", series.label("hostname"));
+        }
+        if (vm == null) {
+            vm = get(index, "name:", series.label("nodename"));
+        }
+        return vm;
+    }
+
+    private static void put(Map<String, VM> index, String prefix, String value, VM vm) {
+        if (value != null && !value.isBlank()) {
+            index.putIfAbsent(prefix + normalize(prefix, value), vm);
+        }
+    }
+
+    private static VM get(Map<String, VM> index, String prefix, String value) {
+        return value == null || value.isEmpty() ? null : index.get(prefix + normalize(prefix, value));
+    }
+
+    // Les noms sont comparés sans tenir compte de la casse
+    private static String normalize(String prefix, String value) {
+        return "name:".equals(prefix) ? value.trim().toLowerCase(Locale.ROOT) : value.trim();
+    }
+
+    // "10.0.0.5:9100" -> "10.0.0.5", "[::1]:9100" -> "::1"
+    private static String stripPort(String instance) {
+        if (instance == null) {
+            return null;
+        }
+        if (instance.startsWith("[")) {
+            int end = instance.indexOf(']');
+            return end > 0 ? instance.substring(1, end) : instance;
+        }
+        int colon = instance.lastIndexOf(':');
+        return colon > 0 && instance.indexOf(':') == colon ? instance.substring(0, colon) : instance;
+    }
+}
@@ -0,0 +1,197 @@
+package com.project.authetification.loadtest;
+
+import com.google.protobuf.CodedOutputStream;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Générateur de charge pour POST /api/monitoring/remote-write : envoie des WriteRequest
+ * snappy + protobuf comme le ferait Prometheus et vérifie le débit soutenu.
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *   com.project.authetification.loadtest.RemoteWriteLoadGenerator \
+ *   --token=JWT --vm-prefix=vm- --vm-count=500 --rate=60000 --duration=60 --min-rate=50000
+ * </pre>
+ * Les VMs (vm_name = préfixe + 1..N) doivent exister. Code de sortie 1 si le débit
+ * accepté par le serveur est inférieur à --min-rate.
+ */
+public final class RemoteWriteLoadGenerator {
+
+    private static final String[] METRICS = {
+            "vm_cpu_usage_percent", "vm_ram_usage_percent", "vm_disk_usage_percent",
+            "vm_network_latency_ms", "vm_network_throughput_mbps"
+    };
+
+    private RemoteWriteLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8080/api/monitoring/remote-write");
+        String token = options.get("token");
+        String prefix = options.getOrDefault("vm-prefix", "vm-");
+        int vmCount = Integer.parseInt(options.getOrDefault("vm-count", "500"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "60000"));
+        int minRate = Integer.parseInt(options.getOrDefault("min-rate", "50000"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        // max_samples_per_send par défaut de Prometheus
+        int samplesPerRequest = Integer.parseInt(options.getOrDefault("samples-per-request", "2000"));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong failedRequests = new AtomicLong();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicLong vmCursor = new AtomicLong();
+
+        // Chaque émetteur tient son propre rythme pour viser le débit global demandé
+        long intervalNanos = (long) (1e9 * concurrency * samplesPerRequest / rate);
+        long start = System.nanoTime();
+        long end = start + Duration.ofSeconds(durationSeconds).toNanos();
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        for (int w = 0; w < concurrency; w++) {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    long next = System.nanoTime();
+                    while (System.nanoTime() < end) {
+                        byte[] body = Snappy.compress(buildRequest(prefix, vmCount, vmCursor, samplesPerRequest));
+                        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                                .header("Content-Type", "application/x-protobuf")
+                                .header("Content-Encoding", "snappy")
+                                .header("X-Prometheus-Remote-Write-Version", "0.1.0")
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+                        if (token != null) {
+                            request.header("Authorization", "Bearer " + token);
+                        }
+                        long sentAt = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+                        latencies.add(System.nanoTime() - sentAt);
+                        if (response.statusCode() / 100 == 2) {
+                            accepted.addAndGet(samplesPerRequest);
+                        } else {
+                            failedRequests.incrementAndGet();
+                        }
+                        next += intervalNanos;
+                        long sleep = next - System.nanoTime();
+                        if (sleep > 0) {
+                            Thread.sleep(Duration.ofNanos(sleep));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    failedRequests.incrementAndGet();
+                    System.err.println("Erreur d'envoi: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        while (!done.await(5, TimeUnit.SECONDS)) {
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%5.0fs  %,10.0f échantillons/s acceptés  %d requêtes en échec%n",
+                    elapsed, accepted.get() / elapsed, failedRequests.get());
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double achieved = accepted.get() / elapsed;
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Total: %,d échantillons en %.1fs = %,.0f échantillons/s ; %d requêtes en échec%n",
+                accepted.get(), elapsed, achieved, failedRequests.get());
+        if (sorted.length > 0) {
+            System.out.printf("Latence par requête: p50 %.1f ms, p99 %.1f ms%n",
+                    sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6);
+        }
+        if (achieved < minRate) {
+            System.out.printf("ÉCHEC: débit inférieur à %,d échantillons/s%n", minRate);
+            System.exit(1);
+        }
+        System.out.printf("OK: débit supérieur à %,d échantillons/s%n", minRate);
+    }
+
+    /**
+     * WriteRequest non compressé : une série par (VM, métrique), un échantillon chacune
+     */
+    public static byte[] buildRequest(String prefix, int vmCount, AtomicLong vmCursor, int samples) throws IOException {
+        long now = System.currentTimeMillis();
+        List<Series> series = new ArrayList<>(samples);
+        while (series.size() < samples) {
+            String vmName = prefix + (vmCursor.getAndIncrement() % vmCount + 1);
+            for (int m = 0; m < METRICS.length && series.size() < samples; m++) {
+                double value = METRICS[m].endsWith("_percent") ? Math.random() * 100 : Math.random() * 50;
+                series.add(new Series(new String[]{"__name__", METRICS[m], "vm_name", vmName, "job", "loadgen"},
+                        new double[]{value}, new long[]{now}));
+            }
+        }
+        return encode(series);
+    }
+
+    /**
+     * Série à encoder : labels à plat (nom, valeur...) et échantillons
+     */
+    public record Series(String[] labels, double[] values, long[] timestamps) {
+    }
+
+    /**
+     * Encode un WriteRequest protobuf (non compressé)
+     */
+    public static byte[] encode(List<Series> series) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+        for (Series s : series) {
+            out.writeByteArray(1, encodeSeries(s));
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] encodeSeries(Series s) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+        for (int i = 0; i < s.labels().length; i += 2) {
+            ByteArrayOutputStream label = new ByteArrayOutputStream();
+            CodedOutputStream labelOut = CodedOutputStream.newInstance(label);
+            labelOut.writeString(1, s.labels()[i]);
+            labelOut.writeString(2, s.labels()[i + 1]);
+            labelOut.flush();
+            out.writeByteArray(1, label.toByteArray());
+        }
+        for (int i = 0; i < s.values().length; i++) {
+            ByteArrayOutputStream sample = new ByteArrayOutputStream();
+            CodedOutputStream sampleOut = CodedOutputStream.newInstance(sample);
+            sampleOut.writeDouble(1, s.values()[i]);
+            sampleOut.writeInt64(2, s.timestamps()[i]);
+            sampleOut.flush();
+            out.writeByteArray(2, sample.toByteArray());
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && arg.contains("="))
+                .forEach(arg -> options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1)));
+        return options;
+    }
+}
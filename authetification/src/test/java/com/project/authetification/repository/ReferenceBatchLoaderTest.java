@@ -0,0 +1,157 @@
+package com.project.authetification.repository;
+
+import com.mongodb.DBRef;
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.VM;
+import com.project.authetification.model.WorkOrder;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compte les requêtes Mongo d'une liste : constant quel que soit le nombre de documents.
+ * Le convertisseur refuse toute résolution de DBRef unitaire.
+ */
+class ReferenceBatchLoaderTest {
+
+    private final Map<String, Map<Object, Document>> collections = new LinkedHashMap<>();
+    private final List<String> queriedCollections = new ArrayList<>();
+    private ReferenceBatchLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        DbRefResolver forbidden = mock(DbRefResolver.class, invocation -> {
+            throw new AssertionError("Résolution unitaire d'un DBRef: " + invocation);
+        });
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(forbidden, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(WorkOrder.class)).thenReturn("workorders");
+        when(mongoTemplate.getCollectionName(Demande.class)).thenReturn("demandes");
+        when(mongoTemplate.getCollectionName(VM.class)).thenReturn("vms");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), anyString())).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            String collection = invocation.getArgument(2);
+            queriedCollections.add(collection);
+            Map<Object, Document> documents = collections.getOrDefault(collection, Map.of());
+            Object in = query.getQueryObject().get("_id") instanceof Document id ? id.get("$in") : null;
+            List<Document> found = new ArrayList<>();
+            for (Document document : documents.values()) {
+                if (in == null || ((Collection<?>) in).contains(document.get("_id"))) {
+                    // Copie : le chargeur modifie les documents qu'il reçoit
+                    found.add(copy(document));
+                }
+            }
+            return found;
+        });
+        loader = new ReferenceBatchLoader(mongoTemplate);
+    }
+
+    @Test
+    void workOrderListUsesOneQueryPerCollectionAndLevel() {
+        seedWorkOrders(10);
+        List<WorkOrder> small = loader.find(new Query(), WorkOrder.class);
+        int smallQueries = queriedCollections.size();
+
+        collections.clear();
+        queriedCollections.clear();
+        seedWorkOrders(500);
+        List<WorkOrder> large = loader.find(new Query(), WorkOrder.class);
+
+        assertThat(small).hasSize(10);
+        assertThat(large).hasSize(500);
+        // workorders, puis demandes + users + vms, puis users des demandes (demande des VMs déjà lue)
+        assertThat(queriedCollections).containsExactly("workorders", "demandes", "users", "vms", "users");
+        assertThat(smallQueries).isEqualTo(queriedCollections.size());
+
+        WorkOrder workOrder = large.get(42);
+        assertThat(workOrder.getAssigne().getUsername()).isEqualTo("support-42");
+        assertThat(workOrder.getDemande().getName()).isEqualTo("demande-42");
+        assertThat(workOrder.getDemande().getDemandeur().getUsername()).isEqualTo("client-42");
+        assertThat(workOrder.getDemande().getValidateurCloud().getUsername()).isEqualTo("cloud");
+        assertThat(workOrder.getVmsCreees()).extracting(VM::getVmName).containsExactly("vm-42-a", "vm-42-b");
+        assertThat(workOrder.getVmsCreees().get(0).getDemande().getId()).isEqualTo(workOrder.getDemande().getId());
+    }
+
+    @Test
+    void demandeListUsesTwoQueries() {
+        seedWorkOrders(300);
+        List<Demande> demandes = loader.find(new Query(), Demande.class);
+
+        assertThat(demandes).hasSize(300);
+        assertThat(queriedCollections).containsExactly("demandes", "users");
+        assertThat(demandes.get(7).getDemandeur().getUsername()).isEqualTo("client-7");
+        assertThat(demandes.get(7).getAssigneSupport().getUsername()).isEqualTo("support-7");
+    }
+
+    @Test
+    void missingReferencesAreDropped() {
+        seedWorkOrders(3);
+        collections.get("vms").values().removeIf(vm -> "vm-1-b".equals(vm.getString("vmName")));
+        collections.get("users").values().removeIf(user -> "support-1".equals(user.getString("username")));
+
+        WorkOrder workOrder = loader.find(new Query(), WorkOrder.class).get(1);
+
+        assertThat(workOrder.getAssigne()).isNull();
+        assertThat(workOrder.getVmsCreees()).extracting(VM::getVmName).containsExactly("vm-1-a");
+    }
+
+    private void seedWorkOrders(int count) {
+        ObjectId cloud = insert("users", new Document("username", "cloud"));
+        for (int i = 0; i < count; i++) {
+            ObjectId client = insert("users", new Document("username", "client-" + i));
+            ObjectId support = insert("users", new Document("username", "support-" + i));
+            ObjectId demande = insert("demandes", new Document("name", "demande-" + i)
+                    .append("demandeur", new DBRef("users", client))
+                    .append("validateurCloud", new DBRef("users", cloud))
+                    .append("assigneSupport", new DBRef("users", support)));
+            List<DBRef> vms = new ArrayList<>();
+            for (String suffix : List.of("a", "b")) {
+                vms.add(new DBRef("vms", insert("vms", new Document("vmName", "vm-" + i + "-" + suffix)
+                        .append("demande", new DBRef("demandes", demande)))));
+            }
+            insert("workorders", new Document("titre", "wo-" + i)
+                    .append("demande", new DBRef("demandes", demande))
+                    .append("assigne", new DBRef("users", support))
+                    .append("vmsCreees", vms));
+        }
+    }
+
+    private static Document copy(Document document) {
+        Document copy = new Document();
+        document.forEach((name, value) -> copy.append(name, value instanceof List<?> list ? new ArrayList<>(list) : value));
+        return copy;
+    }
+
+    private ObjectId insert(String collection, Document document) {
+        ObjectId id = new ObjectId();
+        collections.computeIfAbsent(collection, c -> new LinkedHashMap<>()).put(id, document.append("_id", id));
+        return id;
+    }
+}
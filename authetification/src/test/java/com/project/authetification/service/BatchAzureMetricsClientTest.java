@@ -0,0 +1,88 @@
+package com.project.authetification.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Teste le mode batch contre un faux serveur de métriques local
+ */
+class BatchAzureMetricsClientTest {
+
+    private static final String VM1 = "/subscriptions/sub/resourceGroups/rg-vm1-d1/providers/Microsoft.Compute/virtualMachines/vm1";
+    private static final String VM2 = "/subscriptions/sub/resourceGroups/rg-vm2-d2/providers/Microsoft.Compute/virtualMachines/vm2";
+    private static final String VM3 = "/subscriptions/sub/resourceGroups/rg-vm3-d3/providers/Microsoft.Compute/virtualMachines/vm3";
+
+    private HttpServer server;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<String> lastPath = new AtomicReference<>();
+    private final AtomicReference<String> lastBody = new AtomicReference<>();
+
+    @BeforeEach
+    void startFakeServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            calls.incrementAndGet();
+            lastPath.set(exchange.getRequestURI().getPath());
+            lastBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+            // VM3 absente de la réponse : elle doit être considérée comme injoignable
+            String response = """
+                    {"values": [
+                      {"resourceid": "%s", "value": [
+                        {"name": {"value": "Percentage CPU"}, "timeseries": [{"data": [{"average": 12.5}, {"average": 40.0}]}]},
+                        {"name": {"value": "Network In"}, "timeseries": [{"data": [{"average": 3.0}]}]}
+                      ]},
+                      {"resourceid": "%s", "value": [
+                        {"name": {"value": "Percentage CPU"}, "timeseries": [{"data": [{"average": 77.0}, {}]}]}
+                      ]}
+                    ]}
+                    """.formatted(VM1.toUpperCase(), VM2);
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopFakeServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void queriesAllResourcesInOneCallAndSplitsResultsPerResource() {
+        BatchAzureMetricsClient client = new BatchAzureMetricsClient(new RestTemplate(), null,
+                "http://localhost:" + server.getAddress().getPort(), 15);
+
+        Map<String, Map<String, Double>> results = client.queryLatest(
+                new AzureMetricsClient.Scope("sub", "francecentral", "Microsoft.Compute/virtualMachines"),
+                List.of(VM1, VM2, VM3),
+                List.of("Percentage CPU", "Network In"));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(lastPath.get()).isEqualTo("/subscriptions/sub/metrics:getBatch");
+        assertThat(lastBody.get()).contains(VM1, VM2, VM3);
+
+        assertThat(results).containsOnlyKeys(VM1.toLowerCase(), VM2.toLowerCase());
+        assertThat(results.get(VM1.toLowerCase()))
+                .containsEntry("Percentage CPU", 40.0)
+                .containsEntry("Network In", 3.0);
+        assertThat(results.get(VM2.toLowerCase())).containsEntry("Percentage CPU", 77.0);
+    }
+}
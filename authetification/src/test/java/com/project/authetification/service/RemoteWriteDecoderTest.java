@@ -0,0 +1,61 @@
+package com.project.authetification.service;
+
+import com.project.authetification.loadtest.RemoteWriteLoadGenerator;
+import org.junit.jupiter.api.Test;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Décodage des WriteRequest produits par le générateur de charge
+ */
+class RemoteWriteDecoderTest {
+
+    @Test
+    void decodesLabelsAndSamples() throws IOException {
+        byte[] message = RemoteWriteLoadGenerator.encode(List.of(
+                new RemoteWriteLoadGenerator.Series(
+                        new String[]{"__name__", "vm_cpu_usage_percent", "instance", "10.0.0.5:9100"},
+                        new double[]{12.5, 40.0, Double.NaN}, new long[]{1000L, 2000L, 3000L}),
+                new RemoteWriteLoadGenerator.Series(
+                        new String[]{"__name__", "up", "vm_name", "web-01"},
+                        new double[]{1.0}, new long[]{1000L})));
+
+        List<RemoteWriteDecoder.TimeSeries> series = RemoteWriteDecoder.decode(Snappy.compress(message), 1 << 20);
+
+        assertThat(series).hasSize(2);
+        assertThat(series.get(0).label("__name__")).isEqualTo("vm_cpu_usage_percent");
+        assertThat(series.get(0).label("instance")).isEqualTo("10.0.0.5:9100");
+        assertThat(series.get(0).label("vm_name")).isNull();
+        assertThat(series.get(0).values()).containsExactly(12.5, 40.0, Double.NaN);
+        assertThat(series.get(0).timestamps()).containsExactly(1000L, 2000L, 3000L);
+        assertThat(series.get(1).label("vm_name")).isEqualTo("web-01");
+        assertThat(series.get(1).size()).isEqualTo(1);
+    }
+
+    @Test
+    void decodesFullSizeRequest() throws IOException {
+        byte[] message = RemoteWriteLoadGenerator.buildRequest("vm-", 400, new AtomicLong(), 2000);
+
+        List<RemoteWriteDecoder.TimeSeries> series = RemoteWriteDecoder.decode(Snappy.compress(message), 1 << 24);
+
+        assertThat(series).hasSize(2000);
+        assertThat(series.stream().mapToInt(RemoteWriteDecoder.TimeSeries::size).sum()).isEqualTo(2000);
+        assertThat(series.get(5).label("vm_name")).isEqualTo("vm-2");
+    }
+
+    @Test
+    void rejectsInvalidOrOversizedBodies() throws IOException {
+        byte[] message = RemoteWriteLoadGenerator.buildRequest("vm-", 10, new AtomicLong(), 100);
+
+        assertThatThrownBy(() -> RemoteWriteDecoder.decode(message, 1 << 20))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> RemoteWriteDecoder.decode(Snappy.compress(message), 16))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,213 @@
+package com.project.authetification.service;
+
+import com.project.authetification.model.Demande;
+import com.project.authetification.model.ResourcePool;
+import com.project.authetification.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Réservations concurrentes avec des centaines de validations simultanées : jamais
+ * de dépassement de capacité, rien de perdu au retour arrière
+ */
+class ResourceLedgerTest {
+
+    private static final int THREADS = 256;
+
+    private ResourceLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new ResourceLedger(null, null);
+        ledger.applyPool(pool(ResourcePool.TYPE_DATASTORE, "ds1", p -> p.setDiskGb(1000L)));
+        ledger.applyPool(pool(ResourcePool.TYPE_NETWORK, "lan1", p -> p.setAddresses(100_000L)));
+    }
+
+    @Test
+    void concurrentValidationsNeverOvercommit() throws Exception {
+        int perThread = 20;
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < perThread; i++) {
+                String demandeId = thread + "-" + i;
+                try {
+                    ledger.reserve(demandeId, demande("client-" + thread, "2", "4 Go", "7 Go"), "lan1", "ds1");
+                    accepted.incrementAndGet();
+                } catch (ResourceLedger.InsufficientResourcesException e) {
+                    refused.incrementAndGet();
+                }
+            }
+        });
+
+        // 1000 Go / 7 Go : 142 demandes exactement, quel que soit l'entrelacement
+        assertThat(accepted.get()).isEqualTo(142);
+        assertThat(refused.get()).isEqualTo(THREADS * perThread - 142);
+        assertThat(used("DATASTORE", "ds1")).isEqualTo(994);
+        // Les demandes refusées ont rendu leur adresse réseau
+        assertThat(used("NETWORK", "lan1")).isEqualTo(142);
+    }
+
+    @Test
+    void concurrentReserveAndReleaseStayWithinCapacity() throws Exception {
+        ledger.applyPool(pool(ResourcePool.TYPE_DATASTORE, "small", p -> p.setDiskGb(50L)));
+        AtomicBoolean overcommitted = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread monitor = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                if (used("DATASTORE", "small") > 50) {
+                    overcommitted.set(true);
+                }
+            }
+        });
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < 200; i++) {
+                String demandeId = thread + "-" + i;
+                try {
+                    ledger.reserve(demandeId, demande("client-" + thread, "1", "1", "5"), null, "small");
+                    ledger.release(demandeId);
+                    ledger.release(demandeId); // sans effet
+                } catch (ResourceLedger.InsufficientResourcesException e) {
+                    // plein : réessaie avec la demande suivante
+                }
+            }
+        });
+        running.set(false);
+        monitor.join();
+
+        assertThat(overcommitted).isFalse();
+        assertThat(used("DATASTORE", "small")).isZero();
+    }
+
+    @Test
+    void refusedReservationReleasesEarlierCounters() {
+        ledger.applyPool(pool(ResourcePool.TYPE_SUBSCRIPTION, "alice", p -> p.setVcpu(4L)));
+
+        assertThatThrownBy(() -> ledger.reserve("d1", demande("alice", "8", "16", "100"), "lan1", "ds1"))
+                .isInstanceOf(ResourceLedger.InsufficientResourcesException.class)
+                .hasMessageContaining("alice");
+
+        assertThat(used("DATASTORE", "ds1")).isZero();
+        assertThat(used("NETWORK", "lan1")).isZero();
+    }
+
+    @Test
+    void revalidationReplacesPreviousReservation() {
+        ledger.reserve("d1", demande("bob", "2", "4", "300"), "lan1", "ds1");
+        ledger.reserve("d1", demande("bob", "2", "4", "500"), "lan1", "ds1");
+
+        assertThat(used("DATASTORE", "ds1")).isEqualTo(500);
+        assertThat(used("NETWORK", "lan1")).isEqualTo(1);
+
+        ledger.release("d1");
+        assertThat(used("DATASTORE", "ds1")).isZero();
+        assertThat(used("SUBSCRIPTION", "bob")).isZero();
+    }
+
+    @Test
+    void staleReservationCannotReleaseItsReplacement() {
+        ResourceLedger.Reservation first = ledger.reserve("d1", demande("bob", "2", "4", "300"), "lan1", "ds1");
+        ResourceLedger.Reservation second = ledger.reserve("d1", demande("bob", "2", "4", "500"), "lan1", "ds1");
+
+        assertThat(ledger.release("d1", first)).isFalse();
+        assertThat(used("DATASTORE", "ds1")).isEqualTo(500);
+        assertThat(ledger.reserveIfAbsent("d1", demande("bob", "2", "4", "100"), "lan1", "ds1")).isNull();
+        assertThat(used("DATASTORE", "ds1")).isEqualTo(500);
+
+        assertThat(ledger.release("d1", second)).isTrue();
+        assertThat(used("DATASTORE", "ds1")).isZero();
+        assertThat(used("NETWORK", "lan1")).isZero();
+    }
+
+    @Test
+    void racingReservationsOnSameDemandeKeepExactlyOne() throws Exception {
+        ResourceLedger.Reservation[] tokens = new ResourceLedger.Reservation[THREADS];
+        runConcurrently(thread -> tokens[thread] = ledger.reserve("d1", demande("bob", "1", "1", "5"), "lan1", "ds1"));
+
+        // Une seule réservation reste comptée, quel que soit l'ordre des remplacements
+        assertThat(used("DATASTORE", "ds1")).isEqualTo(5);
+        assertThat(used("NETWORK", "lan1")).isEqualTo(1);
+
+        AtomicInteger released = new AtomicInteger();
+        runConcurrently(thread -> {
+            if (ledger.release("d1", tokens[thread])) {
+                released.incrementAndGet();
+            }
+        });
+
+        // Seul le détenteur de la réservation courante la rend
+        assertThat(released.get()).isEqualTo(1);
+        assertThat(used("DATASTORE", "ds1")).isZero();
+        assertThat(used("SUBSCRIPTION", "bob")).isZero();
+    }
+
+    private void runConcurrently(ThreadBody body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Somme des dimensions d'un pool
+    private long used(String type, String name) {
+        return ledger.getUsage().stream()
+                .filter(entry -> type.equals(entry.get("type")) && name.equals(entry.get("name")))
+                .mapToLong(entry -> (Long) entry.get("used"))
+                .sum();
+    }
+
+    private static Demande demande(String client, String cpu, String ram, String disque) {
+        User demandeur = new User();
+        demandeur.setUsername(client);
+        Demande demande = new Demande();
+        demande.setDemandeur(demandeur);
+        demande.setCpu(cpu);
+        demande.setRam(ram);
+        demande.setDisque(disque);
+        return demande;
+    }
+
+    private static ResourcePool pool(String type, String name, Consumer<ResourcePool> limits) {
+        ResourcePool pool = new ResourcePool();
+        pool.setType(type);
+        pool.setName(name);
+        limits.accept(pool);
+        return pool;
+    }
+
+    @FunctionalInterface
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+}